@@ -0,0 +1,101 @@
+package searcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of finding the terms close to a misspelled token, the extra cost of an unknown query term with --fuzzy
+ * The vocabulary is made of random syllables, a consonant, a vowel and maybe another consonant, so like natural words
+ * some trigrams are much more common than others and most terms have neighbors a couple of edits away.
+ * Tokens are terms of the vocabulary with one random edit, fragments the first 3 chars or more of a term.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ExpandBenchmark {
+    private static final String CONSONANTS = "bcdfghjklmnprstvwz";
+    private static final String VOWELS = "aeiouy";
+
+    @Param({"100000", "1000000", "4000000"})
+    public int vocabularySize;
+
+    @Param({"1", "2"})
+    public int maxDistance;
+
+    private TermDictionary dictionary;
+    private TermTrigrams trigrams;
+    private final char[][] tokens = new char[64][];
+    private final char[][] fragments = new char[64][];
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42L);
+        dictionary = new TermDictionary();
+        StringBuilder word = new StringBuilder();
+        while (dictionary.size() < vocabularySize) {
+            word.setLength(0);
+            for (int syllables = 1 + random.nextInt(4); syllables > 0; syllables--) {
+                word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+                word.append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+                if (random.nextBoolean()) {
+                    word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+                }
+            }
+            dictionary.intern(word.toString().toCharArray(), word.length());
+        }
+        trigrams = new TermTrigrams(maxDistance);
+        trigrams.add(dictionary);
+
+        for (int i = 0; i < tokens.length; i++) {
+            StringBuilder token = new StringBuilder(dictionary.term(random.nextInt(dictionary.size())));
+            int position = random.nextInt(token.length());
+            char letter = (char) ('a' + random.nextInt(26));
+            switch (random.nextInt(3)) {
+                case 0:
+                    token.setCharAt(position, letter);
+                    break;
+                case 1:
+                    token.insert(position, letter);
+                    break;
+                default:
+                    token.deleteCharAt(position);
+            }
+            tokens[i] = token.toString().toCharArray();
+        }
+        for (int i = 0; i < fragments.length; i++) {
+            String term;
+            do {
+                term = dictionary.term(random.nextInt(dictionary.size()));
+            } while (term.length() < 4);
+            fragments[i] = term.substring(0, 3 + random.nextInt(term.length() - 3)).toCharArray();
+        }
+    }
+
+    @Benchmark
+    public long[] expand() {
+        next = (next + 1) % tokens.length;
+        return trigrams.expand(dictionary, tokens[next], tokens[next].length);
+    }
+
+    @Benchmark
+    public long[] complete() {
+        next = (next + 1) % fragments.length;
+        return trigrams.complete(dictionary, fragments[next], fragments[next].length);
+    }
+}
@@ -0,0 +1,93 @@
+package searcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index build throughput from files on disk, divide documentCount by the time per operation to get docs/s
+ * Files are written once per trial, after the first iteration they are in the page cache, so this measures
+ * the cpu side of reading (copies, decoding, tokenizing) rather than the disk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexBuildBenchmark {
+
+    @Param({"1000", "10000"})
+    public int documentCount;
+
+    @Param({"100", "10000"})
+    public int documentSize;
+
+    @Param({"100000"})
+    public int vocabularySize;
+
+    @Param({"ZIPF"})
+    public SyntheticCorpus.Distribution distribution;
+
+    @Param({"HEAP", "MMAP"})
+    public InMemoryFileReader.ReadStrategy readStrategy;
+
+    private Path directory;
+    private List<String> paths;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cli-searcher-bench");
+        paths = new SyntheticCorpus(documentCount, documentSize, vocabularySize, distribution, 42L).writeTo(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticCorpus.delete(directory);
+    }
+
+    @Benchmark
+    public InvertedIndex buildFromPaths() {
+        return InvertedIndex.build(paths, readStrategy);
+    }
+
+    @Benchmark
+    public InvertedIndex buildFromCrawler() {
+        return InvertedIndex.build(new FilesystemCrawler(directory.toString(), new FilesystemCrawler.Options()), readStrategy).get();
+    }
+
+    @Benchmark
+    public InvertedIndex buildWithPipeline() {
+        InvertedIndex index = new InvertedIndex();
+        new IndexPipeline(index, readStrategy, 32, Runtime.getRuntime().availableProcessors())
+                .run(new FilesystemCrawler(directory.toString(), new FilesystemCrawler.Options())).get();
+        return index;
+    }
+
+    @Benchmark
+    public void readFileContent(Blackhole blackhole) throws IOException {
+        // the read alone, no tokenizing, only meaningful for HEAP
+        for (String path : paths) {
+            try (InMemoryFileReader reader = InMemoryFileReader.newInstance(path).get()) {
+                blackhole.consume(reader.readFileContent());
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package searcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a query over the whole corpus, what a user waits for after pressing enter
+ * rankEveryDocument is the pre index approach (minus the I/O), scoring every document from its text
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    @Param({"1000", "100000"})
+    public int documentCount;
+
+    @Param({"100"})
+    public int documentSize;
+
+    @Param({"10000"})
+    public int vocabularySize;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public SyntheticCorpus.Distribution distribution;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param({"jaccard", "tfidf", "bm25"})
+    public String scorer;
+
+    private SyntheticCorpus corpus;
+    private InvertedIndex index;
+    private ForkJoinPool pool;
+    private final List<String> queries = new ArrayList<>();
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = new SyntheticCorpus(documentCount, documentSize, vocabularySize, distribution, 42L);
+        index = new InvertedIndex();
+        for (int i = 0; i < corpus.documents.size(); i++) {
+            index.addDocument("doc" + i, corpus.documents.get(i));
+        }
+        for (int i = 0; i < 16; i++) {
+            queries.add(corpus.query(5));
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private String nextQuery() {
+        next = (next + 1) % queries.size();
+        return queries.get(next);
+    }
+
+    @Benchmark
+    public List<Algorithm.Result> parallelSearch() {
+        return ParallelSearch.search(index, nextQuery(), Scorer.byName(scorer).get(), Searcher.LIMIT_QUERY_RESULT, pool);
+    }
+
+    @Benchmark
+    public List<List<Algorithm.Result>> batchSearch() {
+        // all the queries at once, divide by their number to compare with parallelSearch
+        return BatchSearch.search(index, queries, Scorer.byName(scorer).get(), Searcher.LIMIT_QUERY_RESULT, pool);
+    }
+
+    @Benchmark
+    public List<Algorithm.Result> rankEveryDocument() {
+        Algorithm.Input query = new Algorithm.Input("", nextQuery());
+        List<Algorithm.Result> results = new ArrayList<>(corpus.documents.size());
+        for (String document : corpus.documents) {
+            results.add(Algorithm.rankSimilarity(query, new Algorithm.Input("", document)));
+        }
+        return results;
+    }
+}
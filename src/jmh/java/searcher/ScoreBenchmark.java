@@ -0,0 +1,68 @@
+package searcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring a single (query, document) pair
+ * rankSimilarity is the whole thing from raw text, intersectionSize only the jaccard of already tokenized sets
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScoreBenchmark {
+
+    @Param({"100", "10000"})
+    public int documentSize;
+
+    @Param({"10"})
+    public int queryTerms;
+
+    @Param({"10000"})
+    public int vocabularySize;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public SyntheticCorpus.Distribution distribution;
+
+    private Algorithm.Input query;
+    private Algorithm.Input document;
+    private int[] queryTermIds;
+    private int[] documentTermIds;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(1, documentSize, vocabularySize, distribution, 42L);
+        query = new Algorithm.Input("", corpus.query(queryTerms));
+        document = new Algorithm.Input("doc", corpus.documents.get(0));
+
+        TermDictionary dictionary = new TermDictionary();
+        Tokenizer tokenizer = new Tokenizer();
+        queryTermIds = dictionary.internAll(query.document, tokenizer);
+        documentTermIds = dictionary.internAll(document.document, tokenizer);
+    }
+
+    @Benchmark
+    public Algorithm.Result rankSimilarity() {
+        return Algorithm.rankSimilarity(query, document);
+    }
+
+    @Benchmark
+    public int intersectionSize() {
+        return Algorithm.jaccard(Algorithm.intersectionSize(queryTermIds, documentTermIds),
+                queryTermIds.length, documentTermIds.length);
+    }
+}
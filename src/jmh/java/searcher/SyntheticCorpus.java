@@ -0,0 +1,118 @@
+package searcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class SyntheticCorpus {
+
+    /**
+     * UNIFORM every term is as likely as any other, documents barely share terms on big vocabularies
+     * ZIPF the term of rank r shows up with probability ~ 1 / r, like words in natural text, a few terms are in
+     * almost every document and their posting lists are huge
+     */
+    public enum Distribution {
+        UNIFORM,
+        ZIPF
+    }
+
+    public final List<String> documents;
+    private final String[] vocabulary;
+    private final double[] cumulative;
+    private final Random random;
+
+    /**
+     * A SyntheticCorpus generates documents out of a fixed vocabulary, same seed same corpus, so runs of different
+     * versions of the code can be compared. Terms are separated by a mix of spaces and punctuation and randomly
+     * capitalized, so normalization / tokenization have some work to do like with real files.
+     *
+     * @param documentCount  number of documents
+     * @param documentSize   terms per document
+     * @param vocabularySize distinct terms in the whole corpus
+     * @param distribution   how terms are picked
+     * @param seed           of the random generator
+     */
+    public SyntheticCorpus(int documentCount, int documentSize, int vocabularySize, Distribution distribution, long seed) {
+        this.random = new Random(seed);
+        this.vocabulary = new String[vocabularySize];
+        for (int i = 0; i < vocabularySize; i++) {
+            vocabulary[i] = word(i);
+        }
+
+        this.cumulative = new double[vocabularySize];
+        double total = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            total += distribution == Distribution.ZIPF ? 1.0 / (rank + 1) : 1.0;
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            cumulative[rank] /= total;
+        }
+
+        this.documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            documents.add(document(documentSize));
+        }
+    }
+
+    /**
+     * @return a query of the given number of terms, picked with the same distribution as the documents
+     */
+    public String query(int terms) {
+        return document(terms);
+    }
+
+    /**
+     * Writes every document as a file under directory, 100 files per subdirectory
+     *
+     * @return paths of the files in the same order as documents
+     */
+    public List<String> writeTo(Path directory) throws IOException {
+        List<String> paths = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Path subdirectory = Files.createDirectories(directory.resolve("d" + (i / 100)));
+            Path file = Files.writeString(subdirectory.resolve("doc" + i + ".txt"), documents.get(i));
+            paths.add(file.toString());
+        }
+        return paths;
+    }
+
+    public static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted((a, b) -> b.compareTo(a))::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private String document(int size) {
+        StringBuilder document = new StringBuilder(size * 8);
+        for (int i = 0; i < size; i++) {
+            String term = vocabulary[nextRank()];
+            document.append(random.nextInt(10) == 0 ? term.toUpperCase() : term);
+            int separator = random.nextInt(20);
+            document.append(separator == 0 ? ", " : separator == 1 ? ".\n" : " ");
+        }
+        return document.toString();
+    }
+
+    private int nextRank() {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(rank < 0 ? -rank - 1 : rank, vocabulary.length - 1);
+    }
+
+    // a, b, ..., z, ba, bb, ... letters only, so terms survive normalization as they are
+    private static String word(int id) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append((char) ('a' + id % 26));
+            id /= 26;
+        } while (id > 0);
+        return word.reverse().toString();
+    }
+}
@@ -0,0 +1,78 @@
+package searcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalization and set construction of a single document, the per document cost of building the index
+ * Run with -prof gc, allocations per operation are as important as the time here
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenizeBenchmark {
+
+    @Param({"100", "10000"})
+    public int documentSize;
+
+    @Param({"1000", "100000"})
+    public int vocabularySize;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public SyntheticCorpus.Distribution distribution;
+
+    private SyntheticCorpus corpus;
+    private int next = 0;
+    private final Tokenizer tokenizer = new Tokenizer();
+    private final TermDictionary dictionary = new TermDictionary();
+
+    @Setup
+    public void setUp() {
+        corpus = new SyntheticCorpus(64, documentSize, vocabularySize, distribution, 42L);
+        // terms already known, like once the index is warm
+        for (String document : corpus.documents) {
+            dictionary.internAll(document, tokenizer);
+        }
+    }
+
+    private String nextDocument() {
+        next = (next + 1) % corpus.documents.size();
+        return corpus.documents.get(next);
+    }
+
+    @Benchmark
+    public String normalizeText() {
+        return Algorithm.normalizeText(nextDocument());
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        tokenizer.tokenize(nextDocument(), (buffer, length) -> blackhole.consume(length));
+    }
+
+    @Benchmark
+    public Set<String> distinctTerms() {
+        return Algorithm.distinctTerms(nextDocument());
+    }
+
+    @Benchmark
+    public int[] internAll() {
+        return dictionary.internAll(nextDocument(), tokenizer);
+    }
+}
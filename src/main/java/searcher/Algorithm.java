@@ -1,8 +1,6 @@
 package searcher;
 
-import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Locale;
 import java.util.Set;
 
 public class Algorithm {
@@ -24,15 +22,25 @@ public class Algorithm {
     static class Result implements Comparable<Result> {
         public String fileName;
         public int ranking;
+        // exact score given by the Scorer, ranking is the score rounded down, enough for jaccard / tfidf percentages
+        // not for bm25
+        public float score;
 
         public Result(String fileName, int ranking) {
+            this(fileName, (float) ranking);
+        }
+
+        public Result(String fileName, float score) {
             this.fileName = fileName;
-            this.ranking = ranking;
+            this.ranking = (int) score;
+            this.score = score;
         }
 
         @Override
         public int compareTo(Result o) {
-            return -Integer.compare(ranking, o.ranking);
+            int byRanking = -Float.compare(score, o.score);
+            // ties ordered by file name, otherwise the order would depend on who scored the document first
+            return byRanking != 0 ? byRanking : fileName.compareTo(o.fileName);
         }
 
         @Override
@@ -40,6 +48,7 @@ public class Algorithm {
             return "Result{" +
                     "fileName='" + fileName + '\'' +
                     ", ranking=" + ranking +
+                    (score != ranking ? ", score=" + score : "") +
                     '}';
         }
     }
@@ -55,35 +64,87 @@ public class Algorithm {
      * @return a Result data struct containing the fileName and its score
      */
     public static Result rankSimilarity(Algorithm.Input userInput, Algorithm.Input fileInput) {
-        String textInputByUser = userInput.document;
-        String textDocumentToEvaluate = fileInput.document;
-
-        //  This should be precached
-        Set<String> setByUser = new HashSet<>(Arrays.asList(textInputByUser.split(" ")));
-        Set<String> setByDocument = new HashSet<>(Arrays.asList(textDocumentToEvaluate.split(" ")));
+        //  This should be precached, the InvertedIndex keeps a dictionary and the ids of every document
+        TermDictionary dictionary = new TermDictionary();
+        Tokenizer tokenizer = new Tokenizer();
+        int[] setByUser = dictionary.internAll(userInput.document, tokenizer);
+        int[] setByDocument = dictionary.internAll(fileInput.document, tokenizer);
 
-        Set<String> union = new HashSet<>();
-        union.addAll(setByDocument);
-        union.addAll(setByUser);
+        int intersection = intersectionSize(setByUser, setByDocument);
+        return new Result(fileInput.fileName, jaccard(intersection, setByUser.length, setByDocument.length));
+    }
 
-        // intersection stored in setByDocument reference
-        setByDocument.retainAll(setByUser);
-        int score = (setByDocument.size() * 100) / union.size();
+    /**
+     * |A n B| of two sorted sets of term ids, a merge like in merge sort, nothing is allocated
+     */
+    public static int intersectionSize(int[] a, int[] b) {
+        int intersection = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                intersection++;
+                i++;
+                j++;
+            }
+        }
+        return intersection;
+    }
 
-        return new Result(fileInput.fileName, (int) score);
+    /**
+     * Jaccard similarity as a percentage, the union comes for free as |A u B| = |A| + |B| - |A n B|
+     *
+     * @return score from 0 to 100, two documents without a single term have nothing in common so 0
+     */
+    public static int jaccard(int intersection, int sizeA, int sizeB) {
+        int union = sizeA + sizeB - intersection;
+        return union == 0 ? 0 : (intersection * 100) / union;
     }
 
     /**
      * Depending on the algorithm we need to apply a normalization
      * For algorithms similar to TF-IDF a vectorization
      * Also ML algorithms will expect a full document as an input, we won't be able to process them in chunks
+     * Same output as the old replaceAll("[^a-zA-Z0-9]", " ").toLowerCase() in a single pass without a regex.
+     * Ranking does not need it anymore, the Tokenizer folds and splits by itself, it is kept for display/debug
      *
      * @param rawInput original string to normalize
      * @return normalized document according to some rules, this rules can be algorithm depedent
      */
     public static String normalizeText(String rawInput) {
-        String alphaText = rawInput.replaceAll("[^a-zA-Z0-9]", " ");
-        return alphaText.toLowerCase(Locale.ROOT);
+        char[] normalized = new char[rawInput.length()];
+        int length = 0;
+        for (int i = 0; i < rawInput.length(); i++) {
+            char c = rawInput.charAt(i);
+            if (Tokenizer.isTokenChar(c)) {
+                normalized[length++] = Tokenizer.fold(c);
+            } else {
+                // the regex replaced code points, a surrogate pair is a single space
+                if (Character.isHighSurrogate(c) && i + 1 < rawInput.length()
+                        && Character.isLowSurrogate(rawInput.charAt(i + 1))) {
+                    i++;
+                }
+                normalized[length++] = ' ';
+            }
+        }
+        return new String(normalized, 0, length);
+    }
+
+    /**
+     * Splits a document into its set of terms, this is what the InvertedIndex stores per document
+     * Unlike the raw split(" ") consecutive separators do not produce an empty "" term
+     *
+     * @param text raw or normalized, the Tokenizer gives the same terms for both
+     * @return distinct terms of the document
+     */
+    public static Set<String> distinctTerms(CharSequence text) {
+        Set<String> terms = new HashSet<>();
+        new Tokenizer().tokenize(text, (buffer, length) -> terms.add(new String(buffer, 0, length)));
+        return terms;
     }
 
 }
@@ -0,0 +1,181 @@
+package searcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class BatchSearch {
+    // doc ids per worker range, a range keeps batch size * range size accumulators alive
+    static final int MAX_RANGE_SIZE = 4096;
+    // accumulators of a range at most, an int and a float each, ranges get narrower as batches get bigger
+    static final int MAX_RANGE_SLOTS = 1 << 20;
+    // queries per batch at most, see SearcherOptions, past that ranges are a single doc id and the batch is only slower
+    static final int MAX_BATCH_SIZE = MAX_RANGE_SLOTS;
+
+    /**
+     * Runs many queries at once, in a single pass over the posting list of every term of the batch
+     * A term shared by several queries, the usual case, is walked once instead of once per query, and documents
+     * are scored for all the queries while they are still in cache.
+     * Work is split by doc id ranges among the workers of the pool like ParallelSearch, each range keeps a TopK
+     * per query, heaps are merged while joining back.
+     * Results are the same as running ParallelSearch.search for every query, one by one.
+     *
+     * @param index           to query, its read lock is held for the whole batch
+     * @param textInputsByUser raw queries
+     * @param scorer          ranking of every query
+     * @param limit           number of results per query
+     * @param pool            workers
+     * @return the best `limit` results of every query, same order as the queries
+     */
+    public static List<List<Algorithm.Result>> search(InvertedIndex index, List<String> textInputsByUser, Scorer scorer,
+                                                      int limit, ForkJoinPool pool) {
+        index.readLock().lock();
+        try {
+            InvertedIndex.Batch batch = index.prepareBatch(textInputsByUser, scorer);
+            int rangeSize = Math.max(1, Math.min(Math.min(MAX_RANGE_SIZE, MAX_RANGE_SLOTS / Math.max(1, batch.queries.length)),
+                    index.size() / (pool.getParallelism() * 4)));
+
+            long start = Metrics.start();
+            TopK[] topKs = pool.invoke(new RangeTask(index, batch, 0, index.size(), rangeSize, limit, index.nameRanks()));
+            Metrics.stop(Metrics.Stage.SCORE, start);
+
+            start = Metrics.start();
+            List<List<Algorithm.Result>> results = new ArrayList<>(topKs.length);
+            for (TopK topK : topKs) {
+                List<Algorithm.Result> queryResults = new ArrayList<>(topK.size());
+                for (long entry : topK.sorted()) {
+                    queryResults.add(new Algorithm.Result(index.fileName(TopK.docId(entry)), TopK.score(entry)));
+                }
+                results.add(queryResults);
+            }
+            Metrics.stop(Metrics.Stage.SELECT, start);
+            return results;
+        } finally {
+            index.readLock().unlock();
+        }
+    }
+
+    /**
+     * Non interactive mode, reads one query per line and writes a json line of results per query, in order
+     * Reading is pipelined with the search, a thread reads the next batch while the current one is evaluated.
+     * Output is buffered and only flushed once per batch. Empty lines are skipped.
+     *
+     * @param input     queries, one per line
+     * @param output    receives a Json.results line per query
+     * @param batchSize queries evaluated together
+     * @return number of queries run
+     * @throws IOException if reading the queries or writing the results fails
+     */
+    public static long run(InvertedIndex index, BufferedReader input, Writer output, Scorer scorer, int limit,
+                           int batchSize, ForkJoinPool pool) throws IOException {
+        // an empty batch marks the end of the input, two batches in flight at most
+        BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(2);
+        List<IOException> readFailure = Collections.synchronizedList(new ArrayList<>());
+        Thread reader = new Thread(() -> {
+            try {
+                List<String> batch = new ArrayList<>(batchSize);
+                for (String line = input.readLine(); line != null; line = input.readLine()) {
+                    String query = line.strip();
+                    if (query.isEmpty()) {
+                        continue;
+                    }
+                    batch.add(query);
+                    if (batch.size() == batchSize) {
+                        batches.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+            } catch (IOException e) {
+                readFailure.add(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    batches.put(List.of());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "batch-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long queries = 0;
+        try {
+            for (List<String> batch = batches.take(); !batch.isEmpty(); batch = batches.take()) {
+                List<List<Algorithm.Result>> results = search(index, batch, scorer, limit, pool);
+                for (int i = 0; i < batch.size(); i++) {
+                    output.write(Json.results(batch.get(i), results.get(i)));
+                    output.write('\n');
+                }
+                output.flush();
+                queries += batch.size();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for queries", e);
+        }
+        if (!readFailure.isEmpty()) {
+            throw readFailure.get(0);
+        }
+        return queries;
+    }
+
+    private static class RangeTask extends RecursiveTask<TopK[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final InvertedIndex index;
+        private final InvertedIndex.Batch batch;
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+        private final int limit;
+        // ties broken by file name, see InvertedIndex.nameRanks
+        private final int[] ranks;
+
+        RangeTask(InvertedIndex index, InvertedIndex.Batch batch, int from, int to, int rangeSize, int limit, int[] ranks) {
+            this.index = index;
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+            this.limit = limit;
+            this.ranks = ranks;
+        }
+
+        @Override
+        protected TopK[] compute() {
+            if (to - from <= rangeSize) {
+                TopK[] topKs = new TopK[batch.queries.length];
+                TopK.ScoreConsumer[] outputs = new TopK.ScoreConsumer[topKs.length];
+                for (int q = 0; q < topKs.length; q++) {
+                    topKs[q] = new TopK(limit, ranks);
+                    outputs[q] = topKs[q]::offer;
+                }
+                index.scoreBatchRange(batch, from, to, outputs);
+                return topKs;
+            }
+
+            int middle = (from + to) >>> 1;
+            RangeTask left = new RangeTask(index, batch, from, middle, rangeSize, limit, ranks);
+            RangeTask right = new RangeTask(index, batch, middle, to, rangeSize, limit, ranks);
+            left.fork();
+            TopK[] topKs = right.compute();
+            TopK[] leftTopKs = left.join();
+            for (int q = 0; q < topKs.length; q++) {
+                topKs[q].merge(leftTopKs[q]);
+            }
+            return topKs;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package searcher;
+
+/**
+ * Okapi BM25, term frequency saturates (k1) and long documents are penalized relative to the average length (b)
+ * https://en.wikipedia.org/wiki/Okapi_BM25
+ * Unbounded score, only comparable between documents of the same query
+ */
+public class Bm25Scorer implements Scorer {
+    static final float K1 = 1.2f;
+    static final float B = 0.75f;
+
+    @Override
+    public String name() {
+        return "bm25";
+    }
+
+    @Override
+    public float[] queryWeights(InvertedIndex index, InvertedIndex.Query query) {
+        float[] weights = new float[query.termIds.length];
+        int documents = index.liveSize();
+        for (int i = 0; i < weights.length; i++) {
+            int documentFrequency = index.documentFrequency(query.termIds[i]);
+            // the +1 keeps the idf positive for terms in more than half the documents
+            double idf = Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            // a term repeated in the query counts as many times, a term expanded from a misspelled one less
+            weights[i] = (float) idf * query.termFrequencies[i] * query.similarities[i];
+        }
+        return weights;
+    }
+
+    @Override
+    public float termScore(InvertedIndex index, float queryWeight, int frequency, int docId) {
+        float lengthRatio = index.documentLength(docId) / index.averageDocumentLength();
+        return queryWeight * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * lengthRatio));
+    }
+
+    @Override
+    public float documentScore(InvertedIndex index, InvertedIndex.Query query, float sum, int matchedTerms, int docId) {
+        return sum;
+    }
+}
@@ -0,0 +1,272 @@
+package searcher;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class DocumentCache {
+
+    /**
+     * How entries hold the term ids, SOFT lets the gc reclaim them before running out of memory
+     */
+    public enum References {
+        STRONG,
+        SOFT
+    }
+
+    // int[] header plus the entry, its key and its LinkedHashMap node, roughly
+    static final int ENTRY_OVERHEAD = 96;
+    // terms the dictionary may hold besides the ones of the cached documents before it is rebuilt
+    static final int MIN_UNUSED_TERMS = 4096;
+
+    private final long maxBytes;
+    private final References references;
+    private final InMemoryFileReader.ReadStrategy strategy;
+
+    // term ids of every cached document are ids of this dictionary, rebuilt when most of its terms are not theirs
+    private TermDictionary terms = new TermDictionary();
+    private final Tokenizer tokenizer = new Tokenizer();
+    // access ordered, the first entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // SOFT term ids cleared by the gc, their entries no longer count
+    private final ReferenceQueue<int[]> cleared = new ReferenceQueue<>();
+    private long bytes = 0;
+    // term ids held by the entries, at least as many as the distinct terms they use
+    private long cachedTermIds = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static class Entry {
+        final long modifiedTime;
+        final long fileSize;
+        final long bytes;
+        final int termCount;
+        // one of them is set, depending on the References of the cache
+        final int[] termIds;
+        final SoftTermIds softTermIds;
+
+        Entry(String fileName, long modifiedTime, long fileSize, int[] termIds, References references, ReferenceQueue<int[]> cleared) {
+            this.modifiedTime = modifiedTime;
+            this.fileSize = fileSize;
+            this.bytes = ENTRY_OVERHEAD + 4L * termIds.length;
+            this.termCount = termIds.length;
+            this.termIds = references == References.STRONG ? termIds : null;
+            this.softTermIds = references == References.SOFT ? new SoftTermIds(fileName, termIds, cleared) : null;
+        }
+
+        int[] termIds() {
+            return termIds != null ? termIds : softTermIds.get();
+        }
+    }
+
+    /**
+     * Knows the file of the term ids, so the entry can be dropped once the gc clears them
+     */
+    private static class SoftTermIds extends SoftReference<int[]> {
+        final String fileName;
+
+        SoftTermIds(String fileName, int[] termIds, ReferenceQueue<int[]> cleared) {
+            super(termIds, cleared);
+            this.fileName = fileName;
+        }
+    }
+
+    /**
+     * A DocumentCache keeps the tokenized form of the files the full scan reads, their sorted distinct term ids,
+     * so hot documents are not read and tokenized again on every query.
+     * A document as int[] is usually a fraction of its text, a term id takes 4 bytes and every term is stored once.
+     * Bounded by an estimate of the bytes it holds, the least recently used documents are evicted first.
+     * With SOFT references the term ids can also be reclaimed by the gc under memory pressure, a cleared entry is
+     * just a miss and stops counting as soon as the gc tells us, so a corpus bigger than the heap still runs and
+     * keeps in memory what fits.
+     * The dictionary keeps the terms of evicted documents and of past queries, it is rebuilt with the terms of the
+     * cached documents only when it has more than twice as many, at the start of a query, so it never outgrows the
+     * cache by much. With the cache disabled it only keeps the terms of the last few queries and what they read.
+     * Entries are checked against the mtime and size of the file, a modified file is read again.
+     * Thread safe, every method is synchronized. Ids are only comparable within a query: the ids of the query and of
+     * the documents it reads, until the next query starts.
+     *
+     * @param maxBytes       memory budget, estimated, 0 disables the cache
+     * @param references how entries hold the term ids
+     * @param strategy   how files are read on a miss
+     */
+    public DocumentCache(long maxBytes, References references, InMemoryFileReader.ReadStrategy strategy) {
+        this.maxBytes = maxBytes;
+        this.references = references;
+        this.strategy = strategy;
+    }
+
+    /**
+     * @param reader open file, it is only read on a miss
+     * @return sorted distinct term ids of the file, ids of the current query, must not be modified
+     * @throws IOException if the file has to be read and can not be
+     */
+    public synchronized int[] termIds(InMemoryFileReader reader) throws IOException {
+        expungeCleared();
+        BasicFileAttributes attributes = Files.readAttributes(Paths.get(reader.fileName), BasicFileAttributes.class);
+        long modifiedTime = attributes.lastModifiedTime().toMillis();
+
+        Entry entry = entries.get(reader.fileName);
+        if (entry != null && entry.modifiedTime == modifiedTime && entry.fileSize == attributes.size()) {
+            int[] termIds = entry.termIds();
+            if (termIds != null) {
+                hits++;
+                Metrics.add(Metrics.Counter.DOCUMENT_CACHE_HITS, 1);
+                return termIds;
+            }
+        }
+        misses++;
+        Metrics.add(Metrics.Counter.DOCUMENT_CACHE_MISSES, 1);
+
+        int[] termIds = terms.internAll(reader, strategy, tokenizer);
+        put(reader.fileName, new Entry(reader.fileName, modifiedTime, attributes.size(), termIds, references, cleared));
+        return termIds;
+    }
+
+    /**
+     * Starts a query, the dictionary may be rebuilt first, ids returned before are then meaningless
+     * The terms of the query are interned, not just looked up: one no cached document has may be in the next file
+     * read, both need the same id. Terms only queries used are dropped by the next rebuild.
+     *
+     * @return sorted distinct term ids of the text, against the same dictionary as the cached documents
+     */
+    public synchronized int[] termIds(CharSequence text) {
+        expungeCleared();
+        if (terms.size() > 2 * cachedTermIds + MIN_UNUSED_TERMS) {
+            rebuildTerms();
+        }
+        return terms.internAll(text, tokenizer);
+    }
+
+    /**
+     * Moves the term ids of the cached documents to a new dictionary of their terms only
+     * Costs a pass over the cached ids, less than half the terms interned since the last rebuild
+     */
+    private void rebuildTerms() {
+        TermDictionary rebuilt = new TermDictionary();
+        int[] ids = new int[terms.size()];
+        Arrays.fill(ids, -1);
+        char[] term = new char[64];
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> cached = iterator.next();
+            Entry entry = cached.getValue();
+            int[] termIds = entry.termIds();
+            if (termIds == null) {
+                remove(iterator, entry);
+                continue;
+            }
+            int[] remapped = new int[termIds.length];
+            for (int i = 0; i < termIds.length; i++) {
+                int id = termIds[i];
+                if (ids[id] < 0) {
+                    int length = terms.length(id);
+                    if (length > term.length) {
+                        term = new char[Math.max(term.length * 2, length)];
+                    }
+                    terms.copy(id, term);
+                    ids[id] = rebuilt.intern(term, length);
+                }
+                remapped[i] = ids[id];
+            }
+            Arrays.sort(remapped);
+            // same size, the accounting does not change, nor does the access order
+            cached.setValue(new Entry(cached.getKey(), entry.modifiedTime, entry.fileSize, remapped, references, cleared));
+        }
+        terms = rebuilt;
+    }
+
+    /**
+     * Drops the entries whose SOFT term ids the gc cleared, so they no longer take room in the budget
+     */
+    private void expungeCleared() {
+        for (Reference<? extends int[]> reference = cleared.poll(); reference != null; reference = cleared.poll()) {
+            String fileName = ((SoftTermIds) reference).fileName;
+            Entry entry = entries.get(fileName);
+            // the entry may have been replaced since, by a fresh read of the file
+            if (entry != null && entry.softTermIds == reference) {
+                entries.remove(fileName);
+                bytes -= entry.bytes;
+                cachedTermIds -= entry.termCount;
+            }
+        }
+    }
+
+    private void put(String fileName, Entry entry) {
+        Entry previous = entries.remove(fileName);
+        if (previous != null) {
+            bytes -= previous.bytes;
+            cachedTermIds -= previous.termCount;
+        }
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        entries.put(fileName, entry);
+        bytes += entry.bytes;
+        cachedTermIds += entry.termCount;
+
+        Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            remove(leastRecentlyUsed, leastRecentlyUsed.next().getValue());
+            evictions++;
+        }
+    }
+
+    private void remove(Iterator<Map.Entry<String, Entry>> iterator, Entry entry) {
+        iterator.remove();
+        bytes -= entry.bytes;
+        cachedTermIds -= entry.termCount;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        expungeCleared();
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        expungeCleared();
+        return bytes;
+    }
+
+    /**
+     * @return terms of the dictionary, the ones of the cached documents plus the ones not dropped yet
+     */
+    public synchronized int terms() {
+        return terms.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DocumentCache{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", entries=" + entries.size() +
+                ", bytes=" + bytes +
+                ", maxBytes=" + maxBytes +
+                ", references=" + references +
+                '}';
+    }
+}
@@ -0,0 +1,294 @@
+package searcher;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class FilesystemCrawler {
+
+    /**
+     * SKIP ignores every symbolic link
+     * FILES follows links to files but does not enter linked directories, same as the old Files.walk listing
+     * FOLLOW follows everything, directories already visited through another link are not visited twice
+     */
+    public enum SymlinkPolicy {
+        SKIP,
+        FILES,
+        FOLLOW
+    }
+
+    /**
+     * What gets crawled, the defaults crawl everything like listAllFilesRecursively did
+     * Globs are matched against the path relative to the root and against the bare file name, so "*.log"
+     * excludes logs at any depth and "build/**" only the build directory at the root
+     */
+    public static class Options {
+        public List<String> includes = new ArrayList<>();
+        public List<String> excludes = new ArrayList<>();
+        public int maxDepth = Integer.MAX_VALUE;
+        public long maxFileSize = Long.MAX_VALUE;
+        public SymlinkPolicy symlinks = SymlinkPolicy.FILES;
+        public int parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    // discovered files waiting for the consumer, crawler threads block when it is full
+    static final int QUEUE_CAPACITY = 1024;
+    // pushed once every directory has been listed, never a real path
+    private static final String END_OF_CRAWL = "";
+
+    private final Path root;
+    private final Options options;
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+
+    /**
+     * A FilesystemCrawler lists a tree with several threads, one directory per task, and hands every file found
+     * to the consumer as soon as it is found, so indexing starts with the first file instead of after the last.
+     * A bounded queue sits between both, if indexing is slower than listing the crawler threads wait for it.
+     *
+     * @param root    directory to crawl
+     * @param options filters and parallelism
+     */
+    public FilesystemCrawler(String root, Options options) {
+        this.root = Paths.get(root);
+        this.options = options;
+        for (String glob : options.includes) {
+            includes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        for (String glob : options.excludes) {
+            excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+    }
+
+    public String root() {
+        return root.toString();
+    }
+
+    /**
+     * Crawls the whole tree, the consumer runs on the calling thread while crawler threads keep listing
+     * NOTE: same as listAllFilesRecursively, Optional-like boolean instead of throwing, I'd rather have a Result
+     *
+     * @param consumer receives the path of every accepted file, same format as listAllFilesRecursively
+     * @return false if root is not a readable directory, nothing was crawled
+     */
+    public boolean crawl(Consumer<String> consumer) {
+        return crawl(consumer, directory -> {
+        });
+    }
+
+    /**
+     * Same as crawl(Consumer) telling which directories could not be listed, the files under them are missing from
+     * the crawl, they may as well be there: callers comparing the crawl to what they know must not take it for gone
+     *
+     * @param unlisted receives every directory that failed to list, or only partly, on the calling thread at the end
+     * @return false if root is not a readable directory or failed to list, the crawl tells nothing
+     */
+    public boolean crawl(Consumer<String> consumer, Consumer<Path> unlisted) {
+        if (!Files.isDirectory(root)) {
+            new IOException("Not a directory " + root).printStackTrace();
+            return false;
+        }
+
+        BlockingQueue<String> discovered = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        ExecutorService workers = Executors.newFixedThreadPool(options.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "crawler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // directories submitted but not listed yet, the last one to finish signals the end of the crawl
+        AtomicInteger pendingDirectories = new AtomicInteger();
+        Set<Object> visitedDirectories = ConcurrentHashMap.newKeySet();
+        Set<Path> failedDirectories = ConcurrentHashMap.newKeySet();
+        try {
+            firstVisit(Files.readAttributes(root, BasicFileAttributes.class), root, visitedDirectories);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        submit(workers, root, 0, discovered, pendingDirectories, visitedDirectories, failedDirectories);
+        try {
+            for (String path = discovered.take(); !path.equals(END_OF_CRAWL); path = discovered.take()) {
+                consumer.accept(path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+        failedDirectories.forEach(unlisted);
+        return !failedDirectories.contains(root);
+    }
+
+    private void submit(ExecutorService workers, Path directory, int depth, BlockingQueue<String> discovered,
+                        AtomicInteger pendingDirectories, Set<Object> visitedDirectories, Set<Path> failedDirectories) {
+        pendingDirectories.incrementAndGet();
+        workers.execute(() -> {
+            try {
+                try (DirectoryStream<Path> entries = list(directory)) {
+                    for (Path entry : entries) {
+                        BasicFileAttributes attributes = attributesOf(entry);
+                        if (attributes == null) {
+                            continue;
+                        }
+                        if (attributes.isDirectory()) {
+                            if (depth + 1 < options.maxDepth && !isExcluded(entry)
+                                    && firstVisit(attributes, entry, visitedDirectories)) {
+                                submit(workers, entry, depth + 1, discovered, pendingDirectories, visitedDirectories,
+                                        failedDirectories);
+                            }
+                        } else if (attributes.isRegularFile() && accepts(entry, attributes.size())) {
+                            discovered.put(entry.toString());
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // an unreadable directory does not stop the crawl, we just do not know what is inside
+                    e.printStackTrace();
+                    failedDirectories.add(directory);
+                }
+                if (pendingDirectories.decrementAndGet() == 0) {
+                    discovered.put(END_OF_CRAWL);
+                }
+            } catch (InterruptedException e) {
+                // the consumer is gone, nobody is waiting for more files
+            }
+        });
+    }
+
+    /**
+     * Directories under start a crawl goes into, start included: excluded ones, the ones past maxDepth and linked
+     * ones the SymlinkPolicy does not follow are left out, like their whole subtree. The IndexWatcher watches them
+     * Single threaded, a directory failing to list is printed and skipped
+     *
+     * @param start root or a directory under it
+     * @return nothing if start itself would not be crawled
+     */
+    public List<Path> directories(Path start) {
+        List<Path> directories = new ArrayList<>();
+        boolean isRoot = start.equals(root);
+        int startDepth = isRoot ? 0 : root.relativize(start).getNameCount();
+        BasicFileAttributes startAttributes;
+        try {
+            startAttributes = isRoot ? Files.readAttributes(root, BasicFileAttributes.class) : attributesOf(start);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return directories;
+        }
+        if (startAttributes == null || !startAttributes.isDirectory() || startDepth >= options.maxDepth
+                || (!isRoot && isExcluded(start))) {
+            return directories;
+        }
+
+        Set<Object> visitedDirectories = new HashSet<>();
+        firstVisit(startAttributes, start, visitedDirectories);
+        // depth first with our own stack, trees can be deeper than the thread stack
+        Deque<Path> pending = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        pending.push(start);
+        depths.push(startDepth);
+        while (!pending.isEmpty()) {
+            Path directory = pending.pop();
+            int depth = depths.pop();
+            directories.add(directory);
+            try (DirectoryStream<Path> entries = list(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = attributesOf(entry);
+                    if (attributes != null && attributes.isDirectory() && depth + 1 < options.maxDepth
+                            && !isExcluded(entry) && firstVisit(attributes, entry, visitedDirectories)) {
+                        pending.push(entry);
+                        depths.push(depth + 1);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Entries of a directory, overridden by tests to make a listing fail
+     */
+    DirectoryStream<Path> list(Path directory) throws IOException {
+        return Files.newDirectoryStream(directory);
+    }
+
+    /**
+     * @return attributes according to the SymlinkPolicy, null if the entry has to be skipped
+     */
+    private BasicFileAttributes attributesOf(Path entry) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isSymbolicLink()) {
+                return attributes;
+            }
+            if (options.symlinks == SymlinkPolicy.SKIP) {
+                return null;
+            }
+            BasicFileAttributes target = Files.readAttributes(entry, BasicFileAttributes.class);
+            if (target.isDirectory() && options.symlinks == SymlinkPolicy.FILES) {
+                return null;
+            }
+            return target;
+        } catch (IOException e) {
+            // broken link or deleted while crawling
+            return null;
+        }
+    }
+
+    private boolean firstVisit(BasicFileAttributes attributes, Path directory, Set<Object> visitedDirectories) {
+        if (options.symlinks != SymlinkPolicy.FOLLOW) {
+            // without following links a directory can only be reached once
+            return true;
+        }
+        Object key = attributes.fileKey();
+        return visitedDirectories.add(key != null ? key : directory.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Whether a file found under root would be crawled, the IndexWatcher uses it to filter its events
+     */
+    public boolean accepts(Path file, long size) {
+        Path relative = root.relativize(file);
+        if (relative.getNameCount() > options.maxDepth || size > options.maxFileSize || isExcluded(file)) {
+            return false;
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (PathMatcher include : includes) {
+            if (include.matches(relative) || include.matches(relative.getFileName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExcluded(Path path) {
+        Path relative = root.relativize(path);
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(relative) || exclude.matches(relative.getFileName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
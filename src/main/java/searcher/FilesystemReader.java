@@ -14,13 +14,15 @@ public class FilesystemReader {
      * Attempts to list all files in the directory provided by parameter.
      * NOTE: Since java does not have a Result type and I did not want to use one, I return an optional
      * A Result<T, Err> would be more explicit and nicer
+     * It lists the whole tree before returning, FilesystemCrawler streams the files as it finds them instead
      *
      * @param dir full directory path to look into recursively
      * @return list of available files on path
      */
     public static Optional<List<String>> listAllFilesRecursively(String dir) {
-        try {
-            return Optional.of(Files.walk(Paths.get(dir))
+        // the walk keeps directories open until the stream is closed
+        try (Stream<Path> stream = Files.walk(Paths.get(dir))) {
+            return Optional.of(stream
                     .filter(Files::isRegularFile)
                     .map(Path::toString)
                     .collect(Collectors.toList()));
@@ -0,0 +1,143 @@
+package searcher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ForwardIndex {
+    // doc id -> where its record starts off heap, (segment << 32) | offset
+    private long[] addresses = new long[16];
+    // doc id -> bytes of its record and number of distinct terms
+    private int[] lengths = new int[16];
+    private int[] termCounts = new int[16];
+    private int size = 0;
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private int segmentEnd = 0;
+    private long bytes = 0;
+    // the record being encoded, copied off heap once its size is known
+    private byte[] encoded = new byte[PostingLists.MAX_BLOCK_BYTES];
+
+    /**
+     * A ForwardIndex keeps the sorted distinct term ids of every document with their frequencies, what the
+     * InvertedIndex needs to remove a document, save it to a snapshot or copy it, off heap.
+     * A document is a record of blocks of PostingLists.BLOCK_SIZE terms in the block format of the PostingLists, gaps
+     * between term ids then frequencies with the fewest bytes that fit, written once when the document is added and
+     * never modified. Records go one after the other in direct ByteBuffers, what is left on heap is a long and two
+     * ints per document, the term ids themselves take ~ 3 bytes per term instead of the 8 of two int[].
+     * Reading a document decodes its whole record, it is only done off the scoring loops.
+     * Not thread safe for writes, like the InvertedIndex that holds it, reads are safe while nobody writes.
+     */
+    public ForwardIndex() {
+    }
+
+    /**
+     * @param docId       the next one, documents are added in doc id order
+     * @param termIds     sorted and distinct
+     * @param frequencies same positions as termIds
+     */
+    public void add(int docId, int[] termIds, int[] frequencies) {
+        if (docId != size) {
+            throw new IllegalArgumentException("Doc id " + docId + " added after " + size + " documents");
+        }
+        int blocks = (termIds.length + PostingLists.BLOCK_SIZE - 1) / PostingLists.BLOCK_SIZE;
+        if (blocks * PostingLists.MAX_BLOCK_BYTES > encoded.length) {
+            encoded = new byte[blocks * PostingLists.MAX_BLOCK_BYTES];
+        }
+        int length = 0;
+        for (int from = 0; from < termIds.length; from += PostingLists.BLOCK_SIZE) {
+            int count = Math.min(PostingLists.BLOCK_SIZE, termIds.length - from);
+            length = PostingLists.encode(termIds, frequencies, from, count, from == 0 ? 0 : termIds[from - 1], encoded, length);
+        }
+        append(encoded, length, termIds.length);
+    }
+
+    /**
+     * Copies the records of the documents as they are, nothing is decoded
+     *
+     * @param docIds documents to copy, they get doc ids 0, 1, 2... in the copy
+     */
+    public ForwardIndex copy(int[] docIds) {
+        ForwardIndex copy = new ForwardIndex();
+        for (int docId : docIds) {
+            copy.append(record(docId), lengths[docId], termCounts[docId]);
+        }
+        return copy;
+    }
+
+    private void append(byte[] record, int length, int termCount) {
+        int docId = size;
+        if (segments.isEmpty() || segmentEnd + length > segments.get(segments.size() - 1).capacity()) {
+            int capacity = segments.isEmpty() ? PostingLists.MIN_SEGMENT_SIZE
+                    : Math.min(PostingLists.MAX_SEGMENT_SIZE, segments.get(segments.size() - 1).capacity() * 2);
+            // a document with more terms than a segment holds gets one of its own
+            segments.add(ByteBuffer.allocateDirect(Math.max(capacity, length)));
+            segmentEnd = 0;
+        }
+        segments.get(segments.size() - 1).duplicate().position(segmentEnd).put(record, 0, length);
+
+        if (docId == addresses.length) {
+            addresses = Arrays.copyOf(addresses, docId * 2);
+            lengths = Arrays.copyOf(lengths, docId * 2);
+            termCounts = Arrays.copyOf(termCounts, docId * 2);
+        }
+        addresses[docId] = ((long) (segments.size() - 1) << 32) | segmentEnd;
+        lengths[docId] = length;
+        termCounts[docId] = termCount;
+        segmentEnd += length;
+        bytes += length;
+        size++;
+    }
+
+    /**
+     * @return number of documents, deleted ones included
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of distinct terms of the document
+     */
+    public int termCount(int docId) {
+        return termCounts[docId];
+    }
+
+    /**
+     * @return sorted distinct term ids of the document and their frequencies, decoded into new arrays
+     */
+    public TermDictionary.TermCounts counts(int docId) {
+        int count = termCounts[docId];
+        int[] termIds = new int[count];
+        int[] frequencies = new int[count];
+        byte[] record = record(docId);
+        for (int from = 0, offset = 0; from < count; from += PostingLists.BLOCK_SIZE) {
+            offset = PostingLists.decode(record, offset, Math.min(PostingLists.BLOCK_SIZE, count - from),
+                    from == 0 ? 0 : termIds[from - 1], termIds, frequencies, from);
+        }
+        return new TermDictionary.TermCounts(termIds, frequencies);
+    }
+
+    private byte[] record(int docId) {
+        byte[] record = new byte[lengths[docId]];
+        segments.get((int) (addresses[docId] >>> 32)).get((int) addresses[docId], record, 0, record.length);
+        return record;
+    }
+
+    /**
+     * @return bytes taken by the records off heap
+     */
+    public long offHeapBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ForwardIndex{" +
+                "documents=" + size +
+                ", segments=" + segments.size() +
+                ", offHeapBytes=" + bytes +
+                '}';
+    }
+}
@@ -7,11 +7,39 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.Optional;
 
 public class InMemoryFileReader implements Closeable {
+
+    /**
+     * How the content of the file gets to the Tokenizer
+     * HEAP is the original readFileContent(): heap buffer -> ByteArrayOutputStream -> String
+     * MMAP maps the file and tokenizes the mapped bytes directly, files too small to be worth a mapping are streamed
+     * STREAM reads the file in CHUNK_SIZE chunks into a direct buffer pooled per thread and tokenizes each chunk
+     * before reading the next one, whatever the size of the file only one chunk is in memory.
+     * No copy to the heap and no String with MMAP and STREAM.
+     */
+    public enum ReadStrategy {
+        HEAP,
+        MMAP,
+        STREAM
+    }
+
+    // under this size mapping costs more than reading, the file is streamed, in a single chunk
+    static final int MMAP_THRESHOLD = 64 * 1024;
+    // bytes read at once by STREAM, big enough to amortize the read syscall, small enough to stay in L2
+    static final int CHUNK_SIZE = 64 * 1024;
+    // a single mapping can not be bigger than Integer.MAX_VALUE bytes, bigger files are mapped in regions
+    static final long MAX_MAPPED_REGION = Integer.MAX_VALUE;
+    // files bigger than that are streamed even with HEAP, a multi GB log is never read whole into a String
+    static final long MAX_HEAP_READ_SIZE = 4L * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> POOLED_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHUNK_SIZE));
+
     public final String fileName;
 
     // fd
@@ -33,13 +61,26 @@ public class InMemoryFileReader implements Closeable {
      * modifying the readFileContent() method.
      *
      * @param path to hold in memory and open a fd FileReader to
-     * @throws IOException if path is invalid or inaccessible
+     * @throws IOException                  if path is invalid or inaccessible, or another process holds a lock on it
+     * @throws OverlappingFileLockException if this process already holds a lock on it
      */
     private InMemoryFileReader(String path) throws IOException {
         fileName = path;
         reader = new RandomAccessFile(path, "r");
         channel = reader.getChannel();
-        lock = channel.tryLock(0L, Long.MAX_VALUE, true);
+        FileLock acquired;
+        try {
+            acquired = channel.tryLock(0L, Long.MAX_VALUE, true);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        // null when another process holds an exclusive lock on the file, nothing to close it with later
+        if (acquired == null) {
+            reader.close();
+            throw new IOException(path + " is locked by another process");
+        }
+        lock = acquired;
     }
 
     /**
@@ -85,6 +126,74 @@ public class InMemoryFileReader implements Closeable {
         }
     }
 
+    /**
+     * Tokenizes the whole file content with the given strategy
+     * Reads do not move the channel position with MMAP and STREAM, with HEAP the position is reset after reading
+     * HEAP only reads files up to MAX_HEAP_READ_SIZE, bigger ones are streamed, so every caller, the build, the
+     * IndexWatcher and the DocumentCache, has memory bounded by the chunk size whatever the strategy asked for
+     *
+     * @param strategy  see ReadStrategy
+     * @param tokenizer reused between files, it must not be shared between threads
+     * @param consumer  receives every token of the file
+     * @throws IOException
+     */
+    public void tokenize(ReadStrategy strategy, Tokenizer tokenizer, Tokenizer.TokenConsumer consumer) throws IOException {
+        long size = channel.size();
+        Metrics.add(Metrics.Counter.BYTES_READ, size);
+        long start = Metrics.start();
+        if (strategy == ReadStrategy.HEAP && size <= MAX_HEAP_READ_SIZE) {
+            String content = readFileContent();
+            resetPosition();
+            Metrics.stop(Metrics.Stage.READ, start);
+
+            start = Metrics.start();
+            tokenizer.tokenize(content, consumer);
+            Metrics.stop(Metrics.Stage.TOKENIZE, start);
+            return;
+        }
+
+        if (strategy != ReadStrategy.MMAP || size <= MMAP_THRESHOLD) {
+            stream(size, tokenizer, consumer);
+            return;
+        }
+        // the mapping stays valid after the channel is closed, it is released once the buffer is collected
+        for (long position = 0; position < size; position += MAX_MAPPED_REGION) {
+            long regionSize = Math.min(MAX_MAPPED_REGION, size - position);
+            tokenizer.feed(channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize), consumer);
+        }
+        tokenizer.finish(consumer);
+        Metrics.stop(Metrics.Stage.TOKENIZE, start);
+    }
+
+    /**
+     * Reads the first size bytes chunk by chunk into the pooled buffer, each chunk is tokenized before the next one
+     * is read. A token cut by the end of a chunk stays in the Tokenizer until the next chunk completes it.
+     * Bytes appended to the file while we read it are left for the next time it is indexed.
+     */
+    private void stream(long size, Tokenizer tokenizer, Tokenizer.TokenConsumer consumer) throws IOException {
+        ByteBuffer chunk = POOLED_BUFFER.get();
+        long reading = 0;
+        long tokenizing = 0;
+        for (long position = 0; position < size; ) {
+            long start = Metrics.start();
+            chunk.clear().limit((int) Math.min(CHUNK_SIZE, size - position));
+            int bytes = channel.read(chunk, position);
+            long tokenizeStart = Metrics.start();
+            reading += tokenizeStart - start;
+            if (bytes < 0) {
+                // the file shrunk while we were reading it, tokenize what we got
+                break;
+            }
+            position += bytes;
+            chunk.flip();
+            tokenizer.feed(chunk, consumer);
+            tokenizing += Metrics.start() - tokenizeStart;
+        }
+        tokenizer.finish(consumer);
+        Metrics.record(Metrics.Stage.READ, reading);
+        Metrics.record(Metrics.Stage.TOKENIZE, tokenizing);
+    }
+
     /**
      * resetPosition sets the FileChannel buffer pointer back to the start (0).
      *
@@ -0,0 +1,367 @@
+package searcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IndexPipeline {
+    // files up to this size are read whole by the read stage, bigger ones are streamed by the tokenizer that gets them
+    static final long MAX_READ_SIZE = InMemoryFileReader.MAX_HEAP_READ_SIZE;
+    // tokenized documents waiting for the writer, per tokenizer
+    static final int QUEUE_PER_TOKENIZER = 4;
+
+    private static final Read END_OF_READS = new Read(null, 0, 0, null);
+
+    private final InvertedIndex index;
+    private final InMemoryFileReader.ReadStrategy strategy;
+    private final int readAhead;
+    private final int tokenizers;
+
+    /**
+     * Throughput of a build, what the cli prints once the index is built
+     */
+    public static class Stats {
+        public final long documents;
+        public final long bytes;
+        public final long nanos;
+
+        Stats(long documents, long bytes, long nanos) {
+            this.documents = documents;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public double megabytesPerSecond() {
+            return bytes / 1e6 / seconds();
+        }
+
+        public double documentsPerSecond() {
+            return documents / seconds();
+        }
+
+        private double seconds() {
+            return Math.max(nanos, 1L) / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d files, %.1f MB in %.3f s, %.1f MB/s, %.1f docs/s",
+                    documents, bytes / 1e6, seconds(), megabytesPerSecond(), documentsPerSecond());
+        }
+    }
+
+    // a file read by the read stage, bytes is null for a file too big to be read whole
+    private static class Read {
+        final String path;
+        final long modifiedTime;
+        final long size;
+        final ByteBuffer bytes;
+
+        Read(String path, long modifiedTime, long size, ByteBuffer bytes) {
+            this.path = path;
+            this.modifiedTime = modifiedTime;
+            this.size = size;
+            this.bytes = bytes;
+        }
+    }
+
+    // a document tokenized against the dictionary of its tokenizer, counts is null once the tokenizer is done
+    private static class Tokenized {
+        final int tokenizer;
+        final Read read;
+        final TermDictionary.TermCounts counts;
+        // terms of the tokenizer dictionary first seen in this document, in id order
+        final List<String> newTerms;
+
+        Tokenized(int tokenizer, Read read, TermDictionary.TermCounts counts, List<String> newTerms) {
+            this.tokenizer = tokenizer;
+            this.read = read;
+            this.counts = counts;
+            this.newTerms = newTerms;
+        }
+    }
+
+    /**
+     * An IndexPipeline builds an index in three stages running at the same time, joined by bounded queues:
+     * - read: the crawler thread opens every file it finds with an AsynchronousFileChannel and goes on with the next
+     *   one while the read is in flight, at most readAhead reads are in flight or waiting for a tokenizer, the
+     *   crawler waits for a permit before starting a new one. Reads run on a pool of readAhead threads, the jdk has
+     *   no asynchronous file io on linux, what matters is that the disk always has readAhead requests queued.
+     * - tokenize: the tokenizer threads take the files read and tokenize them, each against its own TermDictionary,
+     *   so they never wait for each other nor for the writer. Files bigger than MAX_READ_SIZE are not read whole,
+     *   the tokenizer streams them itself like InMemoryFileReader does.
+     * - index: the calling thread is the only writer, it interns the terms each tokenizer found for the first time,
+     *   maps the ids of every document to the ids of the index and adds it. A tokenizer only sends its new terms
+     *   once, so the writer does a lookup per distinct term of the corpus, not per document.
+     * When the writer is the bottleneck the tokenizers wait on the full queue, and the reads wait for them, memory
+     * stays bounded by readAhead files plus a few tokenized documents per tokenizer whatever the corpus.
+     * Files are not locked while read, the IndexWatcher re-reads a file whose mtime or size changed since.
+     *
+     * @param index      to add the documents to, usually empty
+     * @param strategy   how files bigger than MAX_READ_SIZE are streamed, HEAP streams them too
+     * @param readAhead  reads in flight at most, > 0
+     * @param tokenizers tokenizer threads, > 0
+     */
+    public IndexPipeline(InvertedIndex index, InMemoryFileReader.ReadStrategy strategy, int readAhead, int tokenizers) {
+        this.index = index;
+        this.strategy = strategy == InMemoryFileReader.ReadStrategy.HEAP ? InMemoryFileReader.ReadStrategy.STREAM : strategy;
+        this.readAhead = readAhead;
+        this.tokenizers = tokenizers;
+    }
+
+    /**
+     * Indexes every file the crawler finds, a file that can not be read is skipped like InvertedIndex.build does
+     *
+     * @return how fast it went, empty if the root directory can not be read or the thread was interrupted
+     */
+    public Optional<Stats> run(FilesystemCrawler crawler) {
+        long start = System.nanoTime();
+        Semaphore permits = new Semaphore(readAhead);
+        // room for every permit and the end markers, adding to it never blocks
+        BlockingQueue<Read> reads = new ArrayBlockingQueue<>(readAhead + tokenizers);
+        BlockingQueue<Tokenized> tokenized = new ArrayBlockingQueue<>(tokenizers * QUEUE_PER_TOKENIZER);
+
+        AtomicInteger readers = new AtomicInteger();
+        ExecutorService io = Executors.newFixedThreadPool(readAhead, runnable -> {
+            Thread thread = new Thread(runnable, "index-reader-" + readers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicBoolean crawled = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            try {
+                crawled.set(crawler.crawl(path -> read(path, io, permits, reads)));
+                // all the permits are back once every read is done and taken by a tokenizer
+                permits.acquire(readAhead);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (int i = 0; i < tokenizers; i++) {
+                    reads.add(END_OF_READS);
+                }
+            }
+        }, "index-pipeline-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < tokenizers; i++) {
+            int worker = i;
+            Thread thread = new Thread(() -> tokenize(worker, permits, reads, tokenized), "index-pipeline-tokenizer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+
+        try {
+            Stats stats = write(tokenized, start);
+            reader.join();
+            io.shutdown();
+            return crawled.get() ? Optional.of(stats) : Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reader.interrupt();
+            workers.forEach(Thread::interrupt);
+            io.shutdownNow();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Read stage, runs on the crawler thread, only waits for a permit, the read itself completes on the io pool
+     */
+    private void read(String path, ExecutorService io, Semaphore permits, BlockingQueue<Read> reads) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long start = Metrics.start();
+        AsynchronousFileChannel channel = null;
+        try {
+            // attributes first, if the file changes while we read it the next check will see a newer one
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+            if (attributes.size() > MAX_READ_SIZE) {
+                reads.add(new Read(path, attributes.lastModifiedTime().toMillis(), attributes.size(), null));
+                return;
+            }
+            channel = AsynchronousFileChannel.open(Paths.get(path), Set.of(StandardOpenOption.READ), io);
+            ByteBuffer buffer = ByteBuffer.allocate((int) attributes.size());
+            channel.read(buffer, 0, null, new ReadHandler(path, attributes, channel, buffer, permits, reads, start));
+        } catch (IOException | RuntimeException e) {
+            // the permit only comes back through a tokenizer once the Read is queued, a file that never gets there
+            // gives it back here, or the crawler would wait for it forever
+            e.printStackTrace();
+            if (channel != null) {
+                close(channel);
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Completes the read of a whole file on the io pool, one read call after the other until the buffer is full
+     */
+    private static class ReadHandler implements CompletionHandler<Integer, Void> {
+        private final String path;
+        private final BasicFileAttributes attributes;
+        private final AsynchronousFileChannel channel;
+        private final ByteBuffer buffer;
+        private final Semaphore permits;
+        private final BlockingQueue<Read> reads;
+        private final long start;
+
+        ReadHandler(String path, BasicFileAttributes attributes, AsynchronousFileChannel channel, ByteBuffer buffer,
+                    Semaphore permits, BlockingQueue<Read> reads, long start) {
+            this.path = path;
+            this.attributes = attributes;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.permits = permits;
+            this.reads = reads;
+            this.start = start;
+        }
+
+        @Override
+        public void completed(Integer bytes, Void attachment) {
+            try {
+                if (bytes >= 0 && buffer.hasRemaining()) {
+                    channel.read(buffer, buffer.position(), null, this);
+                    return;
+                }
+            } catch (RuntimeException e) {
+                failed(e, attachment);
+                return;
+            }
+            // a file that shrunk while we read it is indexed with what we got
+            close(channel);
+            buffer.flip();
+            Metrics.add(Metrics.Counter.BYTES_READ, buffer.remaining());
+            Metrics.stop(Metrics.Stage.READ, start);
+            reads.add(new Read(path, attributes.lastModifiedTime().toMillis(), attributes.size(), buffer));
+        }
+
+        @Override
+        public void failed(Throwable e, Void attachment) {
+            e.printStackTrace();
+            close(channel);
+            permits.release();
+        }
+    }
+
+    private static void close(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tokenize stage, one per tokenizer thread, until it takes an END_OF_READS
+     */
+    private void tokenize(int worker, Semaphore permits, BlockingQueue<Read> reads, BlockingQueue<Tokenized> tokenized) {
+        TermDictionary dictionary = new TermDictionary();
+        Tokenizer tokenizer = new Tokenizer();
+        // terms of the dictionary the writer already knows about, ids below it
+        int sent = 0;
+        try {
+            for (Read read = reads.take(); read != END_OF_READS; read = reads.take()) {
+                permits.release();
+                Optional<TermDictionary.TermCounts> counts = tokenize(read, dictionary, tokenizer);
+                if (counts.isEmpty()) {
+                    continue;
+                }
+                List<String> newTerms = new ArrayList<>(dictionary.size() - sent);
+                for (; sent < dictionary.size(); sent++) {
+                    newTerms.add(dictionary.term(sent));
+                }
+                tokenized.put(new Tokenized(worker, read, counts.get(), newTerms));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // whatever ended this tokenizer, the writer waits for its end marker
+            try {
+                tokenized.put(new Tokenized(worker, null, null, List.of()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Optional<TermDictionary.TermCounts> tokenize(Read read, TermDictionary dictionary, Tokenizer tokenizer) {
+        if (read.bytes != null) {
+            long start = Metrics.start();
+            TermDictionary.TermCounts counts = dictionary.countAll(read.bytes, tokenizer);
+            Metrics.stop(Metrics.Stage.TOKENIZE, start);
+            return Optional.of(counts);
+        }
+        // a file failing here, i.e. locked by this process, is skipped, the dictionary is ready for the next one
+        try {
+            Optional<InMemoryFileReader> reader = InMemoryFileReader.newInstance(read.path);
+            if (reader.isEmpty()) {
+                return Optional.empty();
+            }
+            try (InMemoryFileReader inMemoryFileReader = reader.get()) {
+                return Optional.of(dictionary.countAll(inMemoryFileReader, strategy, tokenizer));
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Index stage, the only writer, until every tokenizer is done
+     */
+    private Stats write(BlockingQueue<Tokenized> tokenized, long start) throws InterruptedException {
+        // tokenizer -> its term ids -> term ids of the index
+        int[][] termIds = new int[tokenizers][16];
+        int[] known = new int[tokenizers];
+        long documents = 0;
+        long bytes = 0;
+        for (int running = tokenizers; running > 0; ) {
+            Tokenized document = tokenized.take();
+            int worker = document.tokenizer;
+            if (document.counts == null) {
+                running--;
+                continue;
+            }
+            if (!document.newTerms.isEmpty()) {
+                int[] interned = index.internTerms(document.newTerms);
+                if (known[worker] + interned.length > termIds[worker].length) {
+                    termIds[worker] = Arrays.copyOf(termIds[worker], Math.max(termIds[worker].length * 2, known[worker] + interned.length));
+                }
+                System.arraycopy(interned, 0, termIds[worker], known[worker], interned.length);
+                known[worker] += interned.length;
+            }
+
+            // ids of the index are not in the order of the ids of the tokenizer, sorted again
+            index.restoreDocument(document.read.path, document.counts.remap(termIds[worker]),
+                    document.read.modifiedTime, document.read.size);
+            documents++;
+            bytes += document.read.size;
+        }
+        return new Stats(documents, bytes, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,269 @@
+package searcher;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+public class IndexSnapshotFile {
+    // "SRCH" in ascii
+    static final int MAGIC = 0x53524348;
+    // bump it on every change of the layout, older snapshots are then rebuilt instead of misread
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 8;
+
+    /**
+     * An IndexSnapshotFile stores an InvertedIndex on disk so the next launch does not have to read the whole tree.
+     * Layout, all numbers big endian:
+     * <pre>
+     * header   int magic, int version
+     * payload  int termCount, termCount * (int length, utf-8 bytes)                   term id = position
+     *          int documentCount, documentCount * (int length, utf-8 bytes of the file name,
+     *                                              long mtime millis, long size,
+     *                                              int termCount, termCount * (int term id, int frequency))
+     * trailer  long crc32 of the payload
+     * </pre>
+     * Posting lists are not stored, they are rebuilt from the per document term ids which is a cheap loop,
+     * so are the statistics the Scorers need (document frequencies, lengths, norms).
+     * Only live documents are written, deleted ones are dropped, so saving also compacts the index.
+     */
+    private IndexSnapshotFile() {
+    }
+
+    /**
+     * Writes the index to a temporary file next to path and then moves it over path, a crash in the middle never
+     * leaves a half written snapshot behind
+     *
+     * @param index to save, its read lock is held while writing
+     * @param path  of the snapshot
+     * @throws IOException if it can not be written, a previous snapshot at path is left untouched
+     */
+    public static void save(InvertedIndex index, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temporary)) {
+            DataOutputStream header = new DataOutputStream(file);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+
+            CRC32 crc = new CRC32();
+            DataOutputStream payload = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), 64 * 1024));
+            index.readLock().lock();
+            try {
+                TermDictionary terms = index.terms();
+                payload.writeInt(terms.size());
+                for (int termId = 0; termId < terms.size(); termId++) {
+                    writeString(payload, terms.term(termId));
+                }
+
+                // in file name order, so are the doc ids of the loaded index
+                int[] liveDocIds = index.liveDocIdsByName();
+                payload.writeInt(liveDocIds.length);
+                for (int docId : liveDocIds) {
+                    writeString(payload, index.fileName(docId));
+                    payload.writeLong(index.modifiedTime(docId));
+                    payload.writeLong(index.fileSize(docId));
+                    TermDictionary.TermCounts counts = index.documentCounts(docId);
+                    int[] termIds = counts.termIds;
+                    int[] frequencies = counts.frequencies;
+                    payload.writeInt(termIds.length);
+                    for (int i = 0; i < termIds.length; i++) {
+                        payload.writeInt(termIds[i]);
+                        payload.writeInt(frequencies[i]);
+                    }
+                }
+            } finally {
+                index.readLock().unlock();
+            }
+            payload.flush();
+
+            header.writeLong(crc.getValue());
+            header.flush();
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Loads a snapshot, the checksum is verified first mapping the file region by region, then the payload is read
+     * through a buffer refilled from the channel: whatever save wrote can be loaded back, even over 2 GB
+     * The index may be stale, files changed since the snapshot was taken are found comparing mtime and size,
+     * see IndexWatcher.rescan
+     *
+     * @param path of the snapshot
+     * @return the index, empty if there is no snapshot or it is corrupt / from another version, then rebuild it
+     */
+    public static Optional<InvertedIndex> load(Path path) {
+        return load(path, InMemoryFileReader.MAX_MAPPED_REGION);
+    }
+
+    /**
+     * Same as load(Path) mapping and reading at most regionSize bytes at a time, tests use tiny regions
+     */
+    static Optional<InvertedIndex> load(Path path, long regionSize) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                return invalid(path, "unexpected size " + size);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            readFully(channel, header, 0);
+            readFully(channel, trailer, size - TRAILER_SIZE);
+
+            if (header.getInt(0) != MAGIC) {
+                return invalid(path, "not a snapshot");
+            }
+            int version = header.getInt(4);
+            if (version != VERSION) {
+                return invalid(path, "version " + version + ", expected " + VERSION);
+            }
+
+            long payloadEnd = size - TRAILER_SIZE;
+            CRC32 crc = new CRC32();
+            for (long position = HEADER_SIZE; position < payloadEnd; position += regionSize) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, payloadEnd - position)));
+            }
+            if (crc.getValue() != trailer.getLong(0)) {
+                return invalid(path, "checksum mismatch");
+            }
+
+            return Optional.of(read(new PayloadReader(channel, HEADER_SIZE, payloadEnd, (int) Math.min(regionSize, 1 << 20))));
+        } catch (NoSuchFileException e) {
+            // first launch, nothing to load
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            // unreadable, or the checksum matched but the content does not make sense, i.e. written by a buggy version
+            return invalid(path, e.toString());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static InvertedIndex read(PayloadReader payload) throws IOException {
+        InvertedIndex index = new InvertedIndex();
+        TermDictionary terms = index.terms();
+
+        int termCount = payload.readInt();
+        for (int termId = 0; termId < termCount; termId++) {
+            char[] term = readString(payload).toCharArray();
+            if (terms.intern(term, term.length) != termId) {
+                throw new IllegalArgumentException("Duplicated term " + new String(term));
+            }
+        }
+
+        int documentCount = payload.readInt();
+        for (int i = 0; i < documentCount; i++) {
+            String fileName = readString(payload);
+            long modifiedTime = payload.readLong();
+            long fileSize = payload.readLong();
+            int[] termIds = new int[payload.readInt()];
+            int[] frequencies = new int[termIds.length];
+            for (int j = 0; j < termIds.length; j++) {
+                termIds[j] = payload.readInt();
+                if (termIds[j] < 0 || termIds[j] >= termCount) {
+                    throw new IllegalArgumentException("Unknown term id " + termIds[j]);
+                }
+                frequencies[j] = payload.readInt();
+                if (frequencies[j] <= 0) {
+                    throw new IllegalArgumentException("Invalid frequency " + frequencies[j]);
+                }
+            }
+            index.restoreDocument(fileName, new TermDictionary.TermCounts(termIds, frequencies), modifiedTime, fileSize);
+        }
+        return index;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(PayloadReader payload) throws IOException {
+        return new String(payload.readBytes(payload.readInt()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the payload a window at a time, big endian like DataOutputStream wrote it, without the per byte
+     * overhead of a DataInputStream
+     */
+    private static class PayloadReader {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+        private ByteBuffer window;
+
+        PayloadReader(FileChannel channel, long start, long end, int windowSize) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.window = ByteBuffer.allocate(windowSize).limit(0);
+        }
+
+        int readInt() throws IOException {
+            require(Integer.BYTES);
+            return window.getInt();
+        }
+
+        long readLong() throws IOException {
+            require(Long.BYTES);
+            return window.getLong();
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            require(length);
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            return bytes;
+        }
+
+        private void require(int length) throws IOException {
+            if (window.remaining() >= length) {
+                return;
+            }
+            if (length < 0 || length > end - position + window.remaining()) {
+                throw new EOFException("Payload ends before " + length + " more bytes");
+            }
+            if (length > window.capacity()) {
+                window = ByteBuffer.allocate(length).put(window).flip();
+            }
+            window.compact();
+            while (window.position() < length) {
+                int read = channel.read(window.limit((int) Math.min(window.capacity(), window.position() + end - position)), position);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                position += read;
+            }
+            window.flip();
+        }
+    }
+
+    private static Optional<InvertedIndex> invalid(Path path, String reason) {
+        System.out.println("Searcher> Ignoring snapshot " + path + ": " + reason + ", rebuilding the index");
+        return Optional.empty();
+    }
+}
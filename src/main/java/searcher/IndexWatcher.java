@@ -0,0 +1,310 @@
+package searcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class IndexWatcher implements Closeable {
+
+    /**
+     * NATIVE uses the WatchService of the os (inotify on linux), falling back to POLL if it is not available
+     * POLL lists the tree every POLL_INTERVAL_MILLIS and compares mtime / size of every file with the index
+     * OFF never updates the index, same as before: what was there on startup is what we query
+     */
+    public enum Mode {
+        NATIVE,
+        POLL,
+        OFF
+    }
+
+    static final long POLL_INTERVAL_MILLIS = 2000L;
+
+    private final Path root;
+    private final FilesystemCrawler crawler;
+    private final IndexedFiles index;
+    private final InMemoryFileReader.ReadStrategy strategy;
+    // watch key -> directory it watches, events only carry the path relative to it
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    // every directory registered and not deleted since, kept after its key is cancelled: the DELETE event in its
+    // parent may come after that. Any other deleted path that is not indexed (editor temp files, excluded files) has
+    // nothing under it either, no need to go through every file name of the index
+    private final Set<Path> knownDirectories = new HashSet<>();
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean running = true;
+    // the tree was just compared with the index, the background thread starts with waiting for changes
+    private boolean rescanned = false;
+
+    /**
+     * An IndexWatcher keeps the InvertedIndex (or every shard of a ShardedIndex) in sync with the tree under root.
+     * Only files that were created, modified or deleted get re-read and re-tokenized, and like when the index is
+     * built, a file is only open (and its shared lock held) while it is being read, so writers are not blocked
+     * and we do not run out of descriptors on big trees.
+     * Events are applied from a single daemon thread, the index takes care of not mixing them with queries.
+     *
+     * @param crawler  same one the index was built with, its filters apply to changes too
+     * @param index    to keep up to date
+     * @param strategy how changed files are read
+     */
+    IndexWatcher(FilesystemCrawler crawler, IndexedFiles index, InMemoryFileReader.ReadStrategy strategy) {
+        this.root = Paths.get(crawler.root());
+        this.crawler = crawler;
+        this.index = index;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Starts watching root in the background, changes between the index build and this call are caught by an
+     * initial rescan
+     *
+     * @return the running watcher, close it to stop it
+     */
+    public static IndexWatcher start(FilesystemCrawler crawler, IndexedFiles index, InMemoryFileReader.ReadStrategy strategy, Mode mode) {
+        return start(crawler, index, strategy, mode, false);
+    }
+
+    /**
+     * Same as start(..., Mode) for an index that may be far behind the tree, i.e. loaded from a snapshot: the
+     * initial rescan runs on the calling thread, once the watches are registered so no change falls in between,
+     * and queries never see the stale index. It is the only comparison with the tree, OFF included, the background
+     * thread does not repeat it
+     *
+     * @param stale whether the index has to be brought up to date before this returns
+     */
+    public static IndexWatcher start(FilesystemCrawler crawler, IndexedFiles index, InMemoryFileReader.ReadStrategy strategy,
+                                     Mode mode, boolean stale) {
+        IndexWatcher watcher = new IndexWatcher(crawler, index, strategy);
+        if (mode == Mode.OFF) {
+            if (stale) {
+                watcher.rescan();
+            }
+            return watcher;
+        }
+
+        Runnable loop = watcher::pollLoop;
+        if (mode == Mode.NATIVE) {
+            try {
+                watcher.watchService = FileSystems.getDefault().newWatchService();
+                watcher.registerAll(watcher.root);
+                loop = watcher::watchLoop;
+            } catch (IOException | UnsupportedOperationException e) {
+                // i.e. the inotify watch limit, polling is slower to notice changes but works everywhere
+                System.out.println("Searcher> Can not watch " + crawler.root() + " (" + e.getMessage() + "), polling instead");
+                watcher.closeWatchService();
+            }
+        }
+
+        if (stale) {
+            watcher.rescan();
+            watcher.rescanned = true;
+        }
+        watcher.thread = new Thread(loop, "index-watcher");
+        watcher.thread.setDaemon(true);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    private void watchLoop() {
+        if (!rescanned) {
+            rescan();
+        }
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // we lost events, the only way to know what changed is to compare everything
+                    rescan();
+                    continue;
+                }
+                if (directory != null) {
+                    onEvent(event.kind(), directory.resolve((Path) event.context()));
+                }
+            }
+            if (!key.reset()) {
+                // the directory is gone, its files were removed by its DELETE event
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    private void onEvent(WatchEvent.Kind<?> kind, Path path) {
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            if (!index.removeDocument(path.toString()) && knownDirectories.contains(path)) {
+                removeAllUnder(path);
+            }
+        } else if (Files.isDirectory(path)) {
+            // a new directory, files may have been written in it before we registered it
+            List<Path> directories;
+            try {
+                directories = registerAll(path);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            for (Path directory : directories) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        if (Files.isRegularFile(entry)) {
+                            refresh(entry);
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        } else if (Files.isRegularFile(path)) {
+            refresh(path);
+        }
+    }
+
+    private void pollLoop() {
+        while (running) {
+            if (!rescanned) {
+                rescan();
+            }
+            rescanned = false;
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compares the tree with the index and applies the differences: new files and files whose mtime or size
+     * changed are re-indexed, files no longer there are removed
+     * A directory that failed to list tells nothing about its files, the ones under it are kept until a later
+     * rescan lists it again
+     * Runs on every POLL_INTERVAL_MILLIS when polling, and on startup and overflows when watching
+     */
+    void rescan() {
+        Set<String> existing = new HashSet<>();
+        List<String> unlistedPrefixes = new ArrayList<>();
+        // refreshing while crawling, the crawler threads keep listing meanwhile
+        boolean crawled = crawler.crawl(fileName -> {
+            existing.add(fileName);
+            refresh(Paths.get(fileName));
+        }, directory -> unlistedPrefixes.add(directory.toString() + directory.getFileSystem().getSeparator()));
+        if (!crawled) {
+            // the root itself is gone or unreadable, better to keep serving what we have than to drop everything
+            return;
+        }
+
+        for (String fileName : index.liveFileNames()) {
+            if (!existing.contains(fileName) && !startsWithAny(fileName, unlistedPrefixes)) {
+                index.removeDocument(fileName);
+            }
+        }
+    }
+
+    private static boolean startsWithAny(String fileName, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (fileName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Re-indexes the file only if it changed since it was indexed, several MODIFY events usually arrive for a
+     * single write and only the first one finds something new
+     */
+    private void refresh(Path path) {
+        String fileName = path.toString();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!crawler.accepts(path, attributes.size())) {
+                // i.e. grew over the max file size
+                index.removeDocument(fileName);
+                return;
+            }
+            if (index.isUpToDate(fileName, attributes.lastModifiedTime().toMillis(), attributes.size())) {
+                return;
+            }
+            index.reindex(fileName, strategy);
+        } catch (NoSuchFileException e) {
+            // deleted before we could read it, its DELETE event may still be on its way
+            index.removeDocument(fileName);
+        } catch (IOException | RuntimeException e) {
+            // i.e. OverlappingFileLockException, the file is skipped until its next change, the watcher keeps going
+            e.printStackTrace();
+        }
+    }
+
+    private void removeAllUnder(Path directory) {
+        String prefix = directory.toString() + directory.getFileSystem().getSeparator();
+        knownDirectories.removeIf(known -> known.equals(directory) || known.toString().startsWith(prefix));
+        List<String> fileNames = index.liveFileNames();
+        for (String fileName : fileNames) {
+            if (fileName.startsWith(prefix)) {
+                index.removeDocument(fileName);
+            }
+        }
+    }
+
+    /**
+     * Watches start and the directories under it the crawler goes into, excluded trees get no watch
+     *
+     * @return directories registered
+     */
+    private List<Path> registerAll(Path start) throws IOException {
+        List<Path> directories = crawler.directories(start);
+        for (Path directory : directories) {
+            WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, directory);
+            knownDirectories.add(directory);
+        }
+        return directories;
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread, the index keeps whatever it had at that point
+     */
+    @Override
+    public void close() {
+        running = false;
+        closeWatchService();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
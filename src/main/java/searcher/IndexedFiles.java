@@ -0,0 +1,33 @@
+package searcher;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * What the IndexWatcher needs from an index to keep it in sync with the files, implemented by the InvertedIndex
+ * and by the ShardedIndex, which routes every file to its shard
+ */
+public interface IndexedFiles {
+
+    /**
+     * Reads and (re)indexes the file, see InvertedIndex.indexFile
+     *
+     * @throws IOException if the file can not be read, the index is left untouched
+     */
+    void reindex(String path, InMemoryFileReader.ReadStrategy strategy) throws IOException;
+
+    /**
+     * @return false if there was no such document
+     */
+    boolean removeDocument(String fileName);
+
+    /**
+     * @return a copy of the file names of every live document
+     */
+    List<String> liveFileNames();
+
+    /**
+     * @return true if the file is indexed with that mtime and size, nothing to read again
+     */
+    boolean isUpToDate(String fileName, long modifiedTime, long fileSize);
+}
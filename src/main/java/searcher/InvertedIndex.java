@@ -0,0 +1,1228 @@
+package searcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class InvertedIndex implements IndexedFiles {
+    // known terms an unknown query term is expanded to at most, the closest and most frequent ones
+    static final int MAX_EXPANSIONS = 16;
+    // the live index is compacted once it has at least that many deleted documents and more deleted than live ones
+    static final int MIN_DELETED_TO_COMPACT = 1024;
+
+    // token -> term id, shared by documents and queries
+    private final TermDictionary terms;
+    private final Tokenizer tokenizer = new Tokenizer();
+
+    // doc id -> file name, the doc id is just the position in which the document was added, since the last compact
+    private final List<String> fileNames = new ArrayList<>();
+    // file name -> doc id of its live version, updated documents get a new doc id
+    private final Map<String, Integer> docIds = new HashMap<>();
+    // doc ids of removed or replaced documents, their postings are still there but skipped until compact drops them
+    private final BitSet deleted = new BitSet();
+    // doc id -> last modified time in millis and size in bytes when it was indexed, -1 if not from a file
+    private long[] modifiedTimes = new long[16];
+    private long[] fileSizes = new long[16];
+    // doc id -> sorted distinct term ids of the document and the times each one appears in it, off heap
+    private ForwardIndex forward;
+    // doc id -> number of tokens, and the norm of its 1 + ln(tf) vector, see TfIdfScorer
+    private long[] documentLengths = new long[16];
+    // doc id -> number of distinct terms, |B| in the jaccard formula
+    private int[] distinctTermCounts = new int[16];
+    private float[] norms = new float[16];
+    // term id -> doc ids containing the term with their frequencies, ids are appended in order so every posting list
+    // is sorted, compressed and off heap, see PostingLists
+    private PostingLists postings = new PostingLists();
+    // term id -> number of live documents containing it, unlike postings.size deleted documents are not counted
+    private int[] documentFrequencies = new int[16];
+    // sum of documentLengths of the live documents
+    private long totalLength = 0;
+    // bumped on every change of the document set, anything derived from the index (i.e. QueryCache) checks it
+    private long version = 0;
+
+    // signatures and LSH buckets of every doc id for searchSimilar, null until enableMinHash
+    private MinHash minHash = null;
+    // trigrams of every term, unknown query terms are expanded to the close ones, null until enableFuzzy
+    private TermTrigrams trigrams = null;
+
+    // doc ids sorted by file name, then doc id, and doc id -> its position there, for the first nameOrder.length doc
+    // ids, see nameRanks. Queries compute them under the read lock, nameOrderLock keeps them from doing it together
+    private int[] nameOrder = new int[0];
+    private int[] nameRanks = new int[0];
+    private final Object nameOrderLock = new Object();
+
+    // queries hold the read lock, documents are added / removed with the write lock, i.e. by the IndexWatcher
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * An InvertedIndex tokenizes every document only once, when the document is added.
+     * Instead of re-reading and re-splitting the whole corpus per query, we keep a term -> posting list map
+     * and the set of term ids per document, whose size is all the jaccard similarity needs:
+     * |A n B| is counted walking the posting lists of the query terms, |A u B| = |A| + |B| - |A n B|
+     * Documents not sharing a single term with the query are never touched, their score would be 0 anyway.
+     * Everything is stored as int[] indexed by the TermDictionary ids, no boxing and no String per term, posting lists
+     * are compressed off heap, see PostingLists.
+     * Documents can be updated and removed while the index is in use, a replaced document is only marked as
+     * deleted and added again with a new doc id, so posting lists stay append only and sorted. Once more than half
+     * of the doc ids are deleted ones the index compacts itself, see compact.
+     * Term frequencies, document frequencies, lengths and norms are kept as documents come and go, they are
+     * what the TF-IDF and BM25 Scorers need.
+     */
+    public InvertedIndex() {
+        this(new TermDictionary(), new ForwardIndex());
+    }
+
+    private InvertedIndex(TermDictionary terms, ForwardIndex forward) {
+        this.terms = terms;
+        this.forward = forward;
+    }
+
+    /**
+     * Builds an index reading every file once
+     * Files are opened, read and closed one by one, no descriptor nor lock is kept once a file is indexed.
+     * A file that can not be read (deleted since it was listed, locked by someone else...) is skipped,
+     * the IndexWatcher will pick it up again if it changes.
+     *
+     * @param allPathFileNames files to index
+     * @param strategy         how files are read, see InMemoryFileReader.ReadStrategy
+     * @return the index of all the readable files
+     */
+    public static InvertedIndex build(List<String> allPathFileNames, InMemoryFileReader.ReadStrategy strategy) {
+        InvertedIndex index = new InvertedIndex();
+        for (String path : allPathFileNames) {
+            index.indexFileOrSkip(path, strategy);
+        }
+        return index;
+    }
+
+    /**
+     * Same as build(List) indexing every file as soon as the crawler finds it, no need to wait for the whole listing
+     *
+     * @param crawler  decides which files get indexed
+     * @param strategy how files are read, see InMemoryFileReader.ReadStrategy
+     * @return the index of all the readable files, empty if the root directory itself can not be read
+     */
+    public static Optional<InvertedIndex> build(FilesystemCrawler crawler, InMemoryFileReader.ReadStrategy strategy) {
+        InvertedIndex index = new InvertedIndex();
+        if (!crawler.crawl(path -> index.indexFileOrSkip(path, strategy))) {
+            return Optional.empty();
+        }
+        return Optional.of(index);
+    }
+
+    private void indexFileOrSkip(String path, InMemoryFileReader.ReadStrategy strategy) {
+        try {
+            indexNewFile(path, strategy);
+        } catch (IOException | RuntimeException e) {
+            // i.e. OverlappingFileLockException, a single file must not abort the whole build
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Same as indexFile for an index nobody queries yet, the one build() returns: the write lock is never contended,
+     * so the file is tokenized straight into terms() under it, every term is interned once
+     */
+    private void indexNewFile(String path, InMemoryFileReader.ReadStrategy strategy) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+        try (InMemoryFileReader reader = InMemoryFileReader.newInstance(path)
+                .orElseThrow(() -> new IOException("Can not open " + path))) {
+            lock.writeLock().lock();
+            try {
+                TermDictionary.TermCounts counts = terms.countAll(reader, strategy, tokenizer);
+                addDocument(path, counts, attributes.lastModifiedTime().toMillis(), attributes.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds a document to the index, replacing the previous one with the same file name if any
+     *
+     * @param fileName name reported back in the results
+     * @param document raw content, no need to normalize it first, the Tokenizer folds and splits it
+     * @return the doc id assigned to the document
+     */
+    public int addDocument(String fileName, CharSequence document) {
+        lock.writeLock().lock();
+        try {
+            return addDocument(fileName, terms.countAll(document, tokenizer), -1L, -1L);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads and (re)indexes a file, tokenizing it while it is read, the content is never held as a String with MMAP
+     * The file is only open, with its shared lock, while it is being read
+     * The file is read and tokenized into a TermDictionary of its own without holding any lock, queries keep running
+     * meanwhile however big the file, the write lock is only taken to intern its distinct terms and add it.
+     *
+     * @param path     of the file
+     * @param strategy how the file is read
+     * @return the doc id assigned to the document
+     * @throws IOException if the file can not be read, the index is left untouched
+     */
+    public int indexFile(String path, InMemoryFileReader.ReadStrategy strategy) throws IOException {
+        // attributes first, if the file changes while we read it the next check will see a newer one
+        BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+        TermDictionary dictionary = new TermDictionary();
+        TermDictionary.TermCounts counts;
+        try (InMemoryFileReader reader = InMemoryFileReader.newInstance(path)
+                .orElseThrow(() -> new IOException("Can not open " + path))) {
+            counts = dictionary.countAll(reader, strategy, new Tokenizer());
+        }
+
+        lock.writeLock().lock();
+        try {
+            int[] termIds = new int[dictionary.size()];
+            char[] term = new char[32];
+            for (int id = 0; id < termIds.length; id++) {
+                int length = dictionary.length(id);
+                if (length > term.length) {
+                    term = new char[Math.max(term.length * 2, length)];
+                }
+                dictionary.copy(id, term);
+                termIds[id] = terms.intern(term, length);
+            }
+            return addDocument(path, counts.remap(termIds), attributes.lastModifiedTime().toMillis(), attributes.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reindex(String path, InMemoryFileReader.ReadStrategy strategy) throws IOException {
+        indexFile(path, strategy);
+    }
+
+    /**
+     * @return false if there was no such document
+     */
+    @Override
+    public boolean removeDocument(String fileName) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIds.remove(fileName);
+            if (docId == null) {
+                return false;
+            }
+            delete(docId);
+            compactIfMostlyDeleted();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Interns terms found by someone else, i.e. the tokenizer workers of the IndexPipeline, each with its own
+     * TermDictionary, that then add their documents with restoreDocument
+     *
+     * @return id of every term in terms(), same order
+     */
+    int[] internTerms(List<String> newTerms) {
+        lock.writeLock().lock();
+        try {
+            int[] termIds = new int[newTerms.size()];
+            for (int i = 0; i < termIds.length; i++) {
+                char[] term = newTerms.get(i).toCharArray();
+                termIds[i] = terms.intern(term, term.length);
+            }
+            return termIds;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a document already tokenized against terms(), used to load an IndexSnapshotFile and by the IndexPipeline
+     */
+    void restoreDocument(String fileName, TermDictionary.TermCounts counts, long modifiedTime, long fileSize) {
+        lock.writeLock().lock();
+        try {
+            addDocument(fileName, counts, modifiedTime, fileSize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int addDocument(String fileName, TermDictionary.TermCounts counts, long modifiedTime, long fileSize) {
+        compactIfMostlyDeleted();
+        version++;
+        int docId = fileNames.size();
+        fileNames.add(fileName);
+        Integer previous = docIds.put(fileName, docId);
+        if (previous != null) {
+            delete(previous);
+        }
+
+        if (docId == documentLengths.length) {
+            documentLengths = Arrays.copyOf(documentLengths, docId * 2);
+            distinctTermCounts = Arrays.copyOf(distinctTermCounts, docId * 2);
+            norms = Arrays.copyOf(norms, docId * 2);
+            modifiedTimes = Arrays.copyOf(modifiedTimes, docId * 2);
+            fileSizes = Arrays.copyOf(fileSizes, docId * 2);
+        }
+        // the forward index of a compactCopy comes with its documents already
+        if (forward.size() == docId) {
+            forward.add(docId, counts.termIds, counts.frequencies);
+        }
+        documentLengths[docId] = counts.length;
+        distinctTermCounts[docId] = counts.termIds.length;
+        modifiedTimes[docId] = modifiedTime;
+        fileSizes[docId] = fileSize;
+        totalLength += counts.length;
+
+        double norm = 0;
+        for (int i = 0; i < counts.termIds.length; i++) {
+            addPosting(counts.termIds[i], docId, counts.frequencies[i]);
+            float weight = TfIdfScorer.logFrequency(counts.frequencies[i]);
+            norm += weight * weight;
+        }
+        norms[docId] = (float) Math.sqrt(norm);
+        if (minHash != null) {
+            minHash.add(docId, signature(counts.termIds));
+        }
+        if (trigrams != null) {
+            trigrams.add(terms);
+        }
+        return docId;
+    }
+
+    private void addPosting(int termId, int docId, int frequency) {
+        if (termId >= documentFrequencies.length) {
+            documentFrequencies = Arrays.copyOf(documentFrequencies, Math.max(documentFrequencies.length * 2, termId + 1));
+        }
+        postings.add(termId, docId, frequency);
+        documentFrequencies[termId]++;
+    }
+
+    private void delete(int docId) {
+        version++;
+        deleted.set(docId);
+        totalLength -= documentLengths[docId];
+        for (int termId : forward.counts(docId).termIds) {
+            documentFrequencies[termId]--;
+        }
+    }
+
+    /**
+     * A file modified every second would otherwise leave a dead copy of its postings, forward index record and file
+     * name behind every time, forever. Compacting once deleted documents outnumber live ones costs O(postings of the
+     * live documents) every time at least as many documents changed, O(1) per change amortized, and keeps the index
+     * under twice its live size. Called with the write lock held, before the doc id of a new document is given.
+     */
+    private void compactIfMostlyDeleted() {
+        int deletedCount = fileNames.size() - docIds.size();
+        if (deletedCount >= MIN_DELETED_TO_COMPACT && deletedCount > docIds.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Drops the deleted documents in place, doc ids are dense again and follow the file names, term ids stay the same.
+     * Built the same way as compactCopy, sharing terms(), the write lock held by the caller keeps queries out until
+     * every field is swapped. Doc ids are only ever used under the read lock, nobody keeps one across a compact.
+     */
+    private void compact() {
+        // the write lock holder can take the read lock compactCopy takes
+        InvertedIndex copy = compactCopy(false);
+        fileNames.clear();
+        fileNames.addAll(copy.fileNames);
+        docIds.clear();
+        docIds.putAll(copy.docIds);
+        deleted.clear();
+        modifiedTimes = copy.modifiedTimes;
+        fileSizes = copy.fileSizes;
+        forward = copy.forward;
+        documentLengths = copy.documentLengths;
+        distinctTermCounts = copy.distinctTermCounts;
+        norms = copy.norms;
+        postings = copy.postings;
+        documentFrequencies = copy.documentFrequencies;
+        totalLength = copy.totalLength;
+        minHash = copy.minHash;
+        trigrams = copy.trigrams;
+        synchronized (nameOrderLock) {
+            nameOrder = copy.nameOrder;
+            nameRanks = copy.nameRanks;
+        }
+        // same documents and statistics, but anything holding doc ids must not mistake them for the new ones
+        version++;
+    }
+
+    /**
+     * Copies the live documents into a new index, deleted documents are dropped and doc ids are dense again.
+     * Term ids, the term ids of every document and the version are the same as in this index, doc ids follow the
+     * file names, see nameRanks. The copy is never written to, so it can be searched without ever waiting for a
+     * writer, see SearchServer.
+     * The read lock is only held to copy the dictionary arrays and the forward index records, byte for byte, the
+     * postings and statistics of the copy are built after, writers never wait for that.
+     *
+     * @return compacted copy, O(postings) to build
+     */
+    public InvertedIndex compactCopy() {
+        return compactCopy(true);
+    }
+
+    /**
+     * @param copyTerms false to share terms() with the copy, for compact only, the copy is never used on its own then
+     */
+    private InvertedIndex compactCopy(boolean copyTerms) {
+        InvertedIndex copy;
+        int[] liveDocIds;
+        String[] liveFileNames;
+        long[] liveModifiedTimes;
+        long[] liveFileSizes;
+        long copiedVersion;
+        lock.readLock().lock();
+        try {
+            // in file name order, the doc ids of the copy are its ranks
+            liveDocIds = liveDocIdsByName();
+            copy = new InvertedIndex(copyTerms ? terms.copy() : terms, forward.copy(liveDocIds));
+            liveFileNames = new String[liveDocIds.length];
+            liveModifiedTimes = new long[liveDocIds.length];
+            liveFileSizes = new long[liveDocIds.length];
+            for (int i = 0; i < liveDocIds.length; i++) {
+                int docId = liveDocIds[i];
+                liveFileNames[i] = fileNames.get(docId);
+                liveModifiedTimes[i] = modifiedTimes[docId];
+                liveFileSizes[i] = fileSizes[docId];
+            }
+            copiedVersion = version;
+            if (minHash != null) {
+                copy.minHash = new MinHash(minHash.bands, minHash.rows);
+            }
+            if (trigrams != null) {
+                copy.trigrams = new TermTrigrams(trigrams.maxDistance);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // nobody else knows the copy yet, no lock needed
+        if (copy.trigrams != null) {
+            copy.trigrams.add(copy.terms);
+        }
+        for (int i = 0; i < liveDocIds.length; i++) {
+            copy.addDocument(liveFileNames[i], copy.forward.counts(i), liveModifiedTimes[i], liveFileSizes[i]);
+        }
+        copy.nameOrder = new int[liveDocIds.length];
+        Arrays.setAll(copy.nameOrder, docId -> docId);
+        copy.nameRanks = copy.nameOrder;
+        copy.version = copiedVersion;
+        return copy;
+    }
+
+    /**
+     * Keeps a MinHash signature of every document from now on, for searchSimilar, documents already indexed get
+     * theirs right away. Off by default, it costs bands * rows hashes per distinct term at index time.
+     * Calling it again with other bands and rows computes every signature again.
+     *
+     * @param bands see MinHash
+     * @param rows  see MinHash
+     */
+    public void enableMinHash(int bands, int rows) {
+        lock.writeLock().lock();
+        try {
+            minHash = new MinHash(bands, rows);
+            // deleted ones included, signatures are indexed by doc id
+            for (int docId = 0; docId < fileNames.size(); docId++) {
+                minHash.add(docId, signature(forward.counts(docId).termIds));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the MinHash of searchSimilar, empty if enableMinHash was never called
+     */
+    public Optional<MinHash> minHash() {
+        return Optional.ofNullable(minHash);
+    }
+
+    /**
+     * Keeps the trigrams of every term from now on, the terms already known get theirs right away. Query terms the
+     * index does not know are then expanded to the known terms within maxDistance edits and to the known terms they
+     * are the beginning of, see expandedTerms, so "serch" ranks like "search" and "sear" finds it too, with every
+     * scorer. Off by default, it costs ~ 10 ints per distinct term.
+     *
+     * @param maxDistance see TermTrigrams
+     */
+    public void enableFuzzy(int maxDistance) {
+        lock.writeLock().lock();
+        try {
+            trigrams = new TermTrigrams(maxDistance);
+            trigrams.add(terms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the TermTrigrams of the query terms, empty if enableFuzzy was never called
+     */
+    public Optional<TermTrigrams> trigrams() {
+        return Optional.ofNullable(trigrams);
+    }
+
+    /**
+     * Callers must hold the read lock
+     * The terms within the edits TermTrigrams allows and the terms starting with the token are merged, a completion
+     * is as far from the token as the chars it adds, "sear" is 2 from "search". Terms left only in deleted documents
+     * match nothing and are left out, then the closest ones are kept, the ones in the most live documents first.
+     *
+     * @return (distance << 32 | term id) of at most MAX_EXPANSIONS known terms standing for the token, sorted from
+     * the closest, empty if none is close enough or fuzzy queries are off
+     */
+    long[] expandedTerms(char[] buffer, int length) {
+        if (trigrams == null) {
+            return new long[0];
+        }
+        long start = Metrics.start();
+        // term id -> smallest distance, a term can be both a few edits away and a completion
+        Map<Integer, Long> distances = new HashMap<>();
+        for (long[] matches : List.of(trigrams.expand(terms, buffer, length), trigrams.complete(terms, buffer, length))) {
+            for (long match : matches) {
+                if (documentFrequency((int) match) > 0) {
+                    distances.merge((int) match, match >>> 32, Math::min);
+                }
+            }
+        }
+        long[] expanded = distances.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<Integer, Long>>comparingLong(Map.Entry::getValue)
+                        .thenComparing(entry -> -documentFrequency(entry.getKey()))
+                        .thenComparing(Map.Entry::getKey))
+                .limit(MAX_EXPANSIONS)
+                .mapToLong(entry -> entry.getValue() << 32 | entry.getKey())
+                .toArray();
+        Metrics.stop(Metrics.Stage.EXPAND, start);
+        Metrics.add(Metrics.Counter.TERMS_EXPANDED, expanded.length);
+        return expanded;
+    }
+
+    private int[] signature(int[] termIds) {
+        int[] elements = new int[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            elements[i] = terms.hash(termIds[i]);
+        }
+        return minHash.signature(elements, elements.length);
+    }
+
+    /**
+     * @return the posting lists, callers must hold the read lock
+     */
+    PostingLists postings() {
+        return postings;
+    }
+
+    /**
+     * @return number of doc ids given since the last compact, deleted documents included, doc ids are in [0, size())
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return fileNames.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return changes it is the result of, two equal versions mean the same documents and the same statistics
+     */
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of documents not deleted
+     */
+    public int liveSize() {
+        lock.readLock().lock();
+        try {
+            return docIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return doc id of the live document with that file name, -1 if there is none
+     */
+    public int docId(String fileName) {
+        lock.readLock().lock();
+        try {
+            return docIds.getOrDefault(fileName, -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isUpToDate(String fileName, long modifiedTime, long fileSize) {
+        lock.readLock().lock();
+        try {
+            Integer docId = docIds.get(fileName);
+            return docId != null && modifiedTimes[docId] == modifiedTime && fileSizes[docId] == fileSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long modifiedTime(int docId) {
+        return modifiedTimes[docId];
+    }
+
+    public long fileSize(int docId) {
+        return fileSizes[docId];
+    }
+
+    /**
+     * @return a copy of the file names of every live document
+     */
+    @Override
+    public List<String> liveFileNames() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(docIds.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return sorted doc ids of every live document, callers must hold the read lock
+     */
+    int[] liveDocIds() {
+        return docIds.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * @return doc ids of every live document sorted by file name, callers must hold the read lock
+     */
+    int[] liveDocIdsByName() {
+        int[] ranks = nameRanks();
+        return docIds.values().stream().mapToInt(Integer::intValue)
+                .mapToLong(docId -> (long) ranks[docId] << 32 | docId).sorted()
+                .mapToInt(entry -> (int) entry).toArray();
+    }
+
+    /**
+     * Doc ids follow the order documents were indexed in, the one of the parallel crawl and pipeline, it changes from
+     * one build to the next. Ranks are the order of their file names instead, the one results are sorted in, see
+     * Algorithm.Result.compareTo, TopK breaks ties with them so the documents kept on ties do not depend on the build.
+     * Computed again on the first query after documents were added: the order known so far followed by the new doc
+     * ids is sorted, a long sorted run and a short one, merged with ~ size file name comparisons.
+     * Callers must hold the read lock
+     *
+     * @return doc id -> rank of its file name, deleted documents included, must not be modified
+     */
+    int[] nameRanks() {
+        synchronized (nameOrderLock) {
+            int size = fileNames.size();
+            if (nameOrder.length < size) {
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < nameOrder.length; i++) {
+                    order[i] = nameOrder[i];
+                }
+                for (int docId = nameOrder.length; docId < size; docId++) {
+                    order[docId] = docId;
+                }
+                // a document replaced by itself keeps its name, the deleted one is never a result
+                Arrays.sort(order, Comparator.comparing((Integer docId) -> fileNames.get(docId)).thenComparing(docId -> docId));
+                int[] sorted = new int[size];
+                int[] ranks = new int[size];
+                for (int i = 0; i < size; i++) {
+                    sorted[i] = order[i];
+                    ranks[order[i]] = i;
+                }
+                nameOrder = sorted;
+                nameRanks = ranks;
+            }
+            return nameRanks;
+        }
+    }
+
+    /**
+     * Queries hold it for their whole run, the ParallelSearch workers run under the lock of the caller thread
+     */
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    public String fileName(int docId) {
+        return fileNames.get(docId);
+    }
+
+    public TermDictionary terms() {
+        return terms;
+    }
+
+    /**
+     * @return sorted distinct term ids of the document and their frequencies, decoded from the forward index
+     */
+    TermDictionary.TermCounts documentCounts(int docId) {
+        return forward.counts(docId);
+    }
+
+    /**
+     * @return number of distinct terms of the document, |B| in the jaccard formula
+     */
+    int distinctTermCount(int docId) {
+        return distinctTermCounts[docId];
+    }
+
+    /**
+     * @return number of tokens of the document
+     */
+    long documentLength(int docId) {
+        return documentLengths[docId];
+    }
+
+    /**
+     * @return euclidean norm of the 1 + ln(tf) weights of the document terms
+     */
+    float norm(int docId) {
+        return norms[docId];
+    }
+
+    /**
+     * @return number of live documents containing the term, callers must hold the read lock
+     */
+    int documentFrequency(int termId) {
+        return termId < documentFrequencies.length ? documentFrequencies[termId] : 0;
+    }
+
+    /**
+     * @return average number of tokens of the live documents, callers must hold the read lock
+     */
+    float averageDocumentLength() {
+        return docIds.isEmpty() ? 0f : (float) totalLength / docIds.size();
+    }
+
+    /**
+     * A query already tokenized and resolved against the index, with the Scorer it is run with
+     * Terms missing from the index have no posting list, though they still count for |A|
+     */
+    static class Query {
+        public final int termCount;
+        // sorted ids of the query terms the index knows about
+        public final int[] termIds;
+        // times each of termIds appears in the query
+        public final int[] termFrequencies;
+        // how close each of termIds is to what the user typed, 1 for a query term, 1 / (1 + distance) for a term an
+        // unknown query term was expanded to, see expandedTerms. Weights are scaled by it, jaccard ignores it
+        public final float[] similarities;
+        public final Scorer scorer;
+        // scorer.queryWeights, computed once per query
+        public float[] weights;
+
+        Query(int termCount, int[] termIds, int[] termFrequencies, float[] similarities, Scorer scorer) {
+            this.termCount = termCount;
+            this.termIds = termIds;
+            this.termFrequencies = termFrequencies;
+            this.similarities = similarities;
+            this.scorer = scorer;
+        }
+    }
+
+    Query prepare(String textInputByUser) {
+        return prepare(textInputByUser, Scorer.JACCARD);
+    }
+
+    /**
+     * Callers must hold the read lock, the query weights depend on the statistics of the index
+     * With fuzzy queries on an unknown term is replaced by all its expandedTerms, they are query terms like the
+     * others, |A| of jaccard counts them, only their weights are lowered by their distance
+     */
+    Query prepare(String textInputByUser, Scorer scorer) {
+        // queries are tiny, unknown terms are kept as Strings only to count the distinct ones
+        Set<String> unknownTerms = new HashSet<>();
+        List<Integer> knownTerms = new ArrayList<>();
+        // term id -> highest similarity, a term typed and also expanded from another one is a query term
+        Map<Integer, Float> similarities = new HashMap<>();
+        new Tokenizer().tokenize(textInputByUser, (buffer, length) -> {
+            int termId = terms.lookup(buffer, length);
+            if (termId >= 0) {
+                knownTerms.add(termId);
+                similarities.put(termId, 1f);
+                return;
+            }
+            long[] expanded = expandedTerms(buffer, length);
+            if (expanded.length == 0) {
+                unknownTerms.add(new String(buffer, 0, length));
+            }
+            for (long match : expanded) {
+                knownTerms.add((int) match);
+                similarities.merge((int) match, 1f / (1 + (match >>> 32)), Math::max);
+            }
+        });
+
+        TermDictionary.TermCounts counts = TermDictionary.sortedCounts(
+                knownTerms.stream().mapToInt(Integer::intValue).toArray(), knownTerms.size());
+        float[] termSimilarities = new float[counts.termIds.length];
+        for (int i = 0; i < termSimilarities.length; i++) {
+            termSimilarities[i] = similarities.get(counts.termIds[i]);
+        }
+        Query query = new Query(counts.termIds.length + unknownTerms.size(), counts.termIds, counts.frequencies,
+                termSimilarities, scorer);
+        query.weights = scorer.queryWeights(this, query);
+        return query;
+    }
+
+    /**
+     * Exact score of a single document, a merge of two sorted int[] without touching the posting lists
+     */
+    float score(Query query, int docId) {
+        TermDictionary.TermCounts counts = forward.counts(docId);
+        int[] termIds = counts.termIds;
+        int[] frequencies = counts.frequencies;
+        float sum = 0;
+        int matchedTerms = 0;
+        for (int i = 0, j = 0; i < query.termIds.length && j < termIds.length; ) {
+            if (query.termIds[i] < termIds[j]) {
+                i++;
+            } else if (query.termIds[i] > termIds[j]) {
+                j++;
+            } else {
+                sum += query.scorer.termScore(this, query.weights[i], frequencies[j], docId);
+                matchedTerms++;
+                i++;
+                j++;
+            }
+        }
+        return query.scorer.documentScore(this, query, sum, matchedTerms, docId);
+    }
+
+    /**
+     * Runs the jaccard similarity of the query against every document sharing at least one term with it
+     * Same scores as running Algorithm.rankSimilarity against each document, without reading any of them
+     *
+     * @param textInputByUser raw query, it is tokenized the same way documents are
+     * @return a list of algorithm.result, unsorted, only for documents matching at least one term
+     */
+    public List<Algorithm.Result> search(String textInputByUser) {
+        return search(textInputByUser, Scorer.JACCARD);
+    }
+
+    /**
+     * Same as search(String) ranking with the given scorer
+     */
+    public List<Algorithm.Result> search(String textInputByUser, Scorer scorer) {
+        List<Algorithm.Result> results = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Query query = prepare(textInputByUser, scorer);
+            long start = Metrics.start();
+            scoreRange(query, 0, fileNames.size(),
+                    (docId, score) -> results.add(new Algorithm.Result(fileName(docId), score)));
+            Metrics.stop(Metrics.Stage.SCORE, start);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    /**
+     * Approximate jaccard search, only the documents sharing an LSH bucket with the query are scored, see MinHash.
+     * Candidates are ranked with their exact jaccard score, so what is approximate is which documents are found, not
+     * their score: a document similar enough to the query is a candidate with a probability given by the bands and
+     * rows, MinHash.probability, and the rest of the corpus is never touched, whatever the posting lists of the
+     * query terms. Meant for near duplicates, long queries like a whole document, where the exact search walks the
+     * posting lists of hundreds of terms. MinHash.recall against search(String) measures what is missed.
+     *
+     * @param textInputByUser raw query, its signature is computed from all of its terms, known or not
+     * @param limit           number of results
+     * @return the best `limit` candidates sorted from best to worst, empty if enableMinHash was never called
+     */
+    public List<Algorithm.Result> searchSimilar(String textInputByUser, int limit) {
+        lock.readLock().lock();
+        try {
+            if (minHash == null) {
+                return List.of();
+            }
+            long start = Metrics.start();
+            List<Integer> elements = new ArrayList<>();
+            new Tokenizer().tokenize(textInputByUser, (buffer, length) -> elements.add(TermDictionary.hash(buffer, length)));
+            int[] signature = minHash.signature(elements.stream().mapToInt(Integer::intValue).toArray(), elements.size());
+            BitSet candidates = new BitSet(fileNames.size());
+            minHash.candidates(signature, candidates);
+            candidates.andNot(deleted);
+
+            Query query = prepare(textInputByUser, Scorer.JACCARD);
+            TopK topK = new TopK(limit, nameRanks());
+            for (int docId = candidates.nextSetBit(0); docId >= 0; docId = candidates.nextSetBit(docId + 1)) {
+                int intersection = Algorithm.intersectionSize(query.termIds, forward.counts(docId).termIds);
+                // same documents as the exact search, only those sharing a term
+                if (intersection > 0) {
+                    topK.offer(docId, Algorithm.jaccard(intersection, query.termCount, distinctTermCounts[docId]));
+                }
+            }
+            Metrics.add(Metrics.Counter.DOCUMENTS_SCORED, candidates.cardinality());
+            Metrics.stop(Metrics.Stage.SCORE, start);
+
+            start = Metrics.start();
+            List<Algorithm.Result> results = new ArrayList<>(topK.size());
+            for (long entry : topK.sorted()) {
+                results.add(new Algorithm.Result(fileName(TopK.docId(entry)), TopK.score(entry)));
+            }
+            Metrics.stop(Metrics.Stage.SELECT, start);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores only the documents with doc id in [from, to), this is the unit of work of the ParallelSearch workers
+     * Since posting lists are sorted the cursor skips the blocks before the range and we stop as soon as we leave it
+     * Callers must hold the read lock
+     *
+     * @param query  prepared query
+     * @param from   first doc id, inclusive
+     * @param to     last doc id, exclusive
+     * @param output receives the score of every matching document, in no particular order, usually a TopK
+     */
+    void scoreRange(Query query, int from, int to, TopK.ScoreConsumer output) {
+        // doc id - from -> |A n B| and the sum of the term scores, plain arrays since doc ids are dense
+        int[] intersections = new int[to - from];
+        float[] sums = new float[to - from];
+        Scorer scorer = query.scorer;
+        int[] touchedDocuments = new int[16];
+        int touched = 0;
+        PostingLists.Cursor cursor = postings.cursor();
+        for (int i = 0; i < query.termIds.length; i++) {
+            float weight = query.weights[i];
+            cursor.reset(query.termIds[i]);
+            for (int first = cursor.advance(from); first < to; first = cursor.nextBlock()) {
+                int[] docIds = cursor.docIds();
+                int[] frequencies = cursor.frequencies();
+                for (int position = cursor.position(), end = cursor.end(to); position < end; position++) {
+                    int docId = docIds[position];
+                    sums[docId - from] += scorer.termScore(this, weight, frequencies[position], docId);
+                    if (intersections[docId - from]++ == 0) {
+                        if (touched == touchedDocuments.length) {
+                            touchedDocuments = Arrays.copyOf(touchedDocuments, touched * 2);
+                        }
+                        touchedDocuments[touched++] = docId;
+                    }
+                }
+            }
+        }
+
+        Metrics.add(Metrics.Counter.DOCUMENTS_SCORED, touched);
+        for (int i = 0; i < touched; i++) {
+            int docId = touchedDocuments[i];
+            if (deleted.get(docId)) {
+                continue;
+            }
+            output.accept(docId, scorer.documentScore(this, query, sums[docId - from], intersections[docId - from], docId));
+        }
+    }
+
+    /**
+     * Offers to topK the documents of [from, to) that can still make it, the unit of work of the ParallelSearch workers
+     * Same results as scoreRange into the TopK, for jaccard most documents are never scored, see topRangeJaccard
+     * Callers must hold the read lock
+     */
+    void topRange(Query query, int from, int to, TopK topK) {
+        if (query.scorer == Scorer.JACCARD) {
+            topRangeJaccard(query, from, to, topK);
+        } else {
+            scoreRange(query, from, to, topK::offer);
+        }
+    }
+
+    /**
+     * Jaccard only depends on |A n B|, |A| and |B|, so a document has an upper bound before it is fully scored:
+     * matching at most m query terms, its score is at most jaccard(min(m, |B|), |A|, |B|), and a lower bound, the
+     * jaccard of the terms it is already known to match, scores only grow as more terms are found.
+     * Query terms are walked rarest first, like MaxScore, counting |A n B| per document like scoreRange.
+     * Every time the number of documents found doubles, the k best lower bounds among them give a threshold:
+     * - a document first found now does not contain the rarer terms already walked, or it would have been found,
+     *   so with r terms left it matches r of them at most. If its bound with its own |B| (documents are bucketed by
+     *   their number of distinct terms, the bound is the same for a whole bucket) can not beat the threshold it is
+     *   never counted, nor will it be in the next lists, the threshold only grows and r only shrinks
+     * - found documents whose upper bound can not beat it are dropped
+     * - once no new document can beat it, what is left of the posting lists is only needed for the documents found,
+     *   the cursor skips ahead from one of them to the next, only the blocks holding them are decoded
+     * Bounds are checked against the packed entries of the TopK, ties included, so results are exactly those of
+     * scoreRange. Selective queries only count the documents of their rare terms.
+     */
+    private void topRangeJaccard(Query query, int from, int to, TopK topK) {
+        int n = query.termIds.length;
+        // positions in query.termIds, shortest posting list first
+        long[] bySize = new long[n];
+        for (int i = 0; i < n; i++) {
+            bySize[i] = ((long) postings.size(query.termIds[i]) << 32) | i;
+        }
+        Arrays.sort(bySize);
+
+        JaccardCandidates candidates = new JaccardCandidates(query.termCount, from, to, topK);
+        PostingLists.Cursor cursor = postings.cursor();
+        for (int r = 0; r < n; r++) {
+            int remaining = n - r;
+            int termId = query.termIds[(int) bySize[r]];
+            candidates.updateThreshold(remaining);
+
+            // no new document can make it, this list only matters for the documents found
+            boolean onlyFound = candidates.threshold != null
+                    && !candidates.threshold.accepts(Algorithm.jaccard(remaining, query.termCount, remaining));
+            if (onlyFound) {
+                // the cursor skips ahead from one document found to the next, blocks in between are never decoded
+                candidates.sort();
+                cursor.reset(termId);
+                for (int i = 0; i < candidates.size; i++) {
+                    int docId = candidates.docIds[i];
+                    if (cursor.advance(docId) == docId) {
+                        candidates.intersections[docId - from]++;
+                    }
+                }
+                continue;
+            }
+
+            cursor.reset(termId);
+            for (int first = cursor.advance(from); first < to; first = cursor.nextBlock()) {
+                int[] docIds = cursor.docIds();
+                for (int position = cursor.position(), end = cursor.end(to); position < end; position++) {
+                    int docId = docIds[position];
+                    int intersection = candidates.intersections[docId - from];
+                    if (intersection > 0) {
+                        candidates.intersections[docId - from]++;
+                    } else if (intersection == 0) {
+                        candidates.offer(docId, remaining);
+                    }
+                }
+            }
+        }
+
+        Metrics.add(Metrics.Counter.DOCUMENTS_SCORED, candidates.size);
+        for (int i = 0; i < candidates.size; i++) {
+            int docId = candidates.docIds[i];
+            if (!deleted.get(docId)) {
+                topK.offer(docId, Algorithm.jaccard(candidates.intersections[docId - from], query.termCount, distinctTermCounts[docId]));
+            }
+        }
+    }
+
+    /**
+     * Documents of a range found by topRangeJaccard, with the threshold their lower bounds give
+     */
+    private class JaccardCandidates {
+        final int queryTerms;
+        final int from;
+        final TopK topK;
+        // doc id - from -> |A n B| found so far, 0 if not found yet, -1 if left out for good
+        final int[] intersections;
+        int[] docIds = new int[16];
+        int size = 0;
+        // docIds in doc id order, found documents are appended in the order of the posting lists they are found in
+        boolean sorted = true;
+        // best lower bounds, null until enough documents are found
+        TopK threshold = null;
+        // number of documents found at which the threshold is updated again
+        int nextUpdate;
+
+        JaccardCandidates(int queryTerms, int from, int to, TopK topK) {
+            this.queryTerms = queryTerms;
+            this.from = from;
+            this.topK = topK;
+            this.intersections = new int[to - from];
+            this.nextUpdate = topK.capacity();
+        }
+
+        /**
+         * A document found in the posting list of a term, with remaining terms left including this one
+         */
+        void offer(int docId, int remaining) {
+            int distinct = distinctTermCounts[docId];
+            if (threshold != null && !threshold.accepts(docId, Algorithm.jaccard(Math.min(remaining, distinct), queryTerms, distinct))) {
+                intersections[docId - from] = -1;
+                return;
+            }
+            intersections[docId - from] = 1;
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+            }
+            docIds[size++] = docId;
+            sorted = size == 1 || sorted && docIds[size - 2] < docId;
+            // the current term may already be counted, still a valid upper bound
+            updateThreshold(remaining);
+        }
+
+        /**
+         * Sorts the documents found, dropping documents keeps the order
+         */
+        void sort() {
+            if (!sorted) {
+                Arrays.sort(docIds, 0, size);
+                sorted = true;
+            }
+        }
+
+        /**
+         * Recomputes the threshold from the lower bounds and drops the documents whose upper bound can not beat it
+         * Amortized, it only runs again once the number of documents found doubled, recomputing it before every
+         * posting list costs more than it saves on queries where nothing can be skipped
+         */
+        void updateThreshold(int remaining) {
+            if (size < nextUpdate) {
+                return;
+            }
+            threshold = topK.sibling();
+            for (int i = 0; i < size; i++) {
+                int docId = docIds[i];
+                if (!deleted.get(docId)) {
+                    threshold.offer(docId, Algorithm.jaccard(intersections[docId - from], queryTerms, distinctTermCounts[docId]));
+                }
+            }
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int docId = docIds[i];
+                int distinct = distinctTermCounts[docId];
+                int upper = Algorithm.jaccard(Math.min(intersections[docId - from] + remaining, distinct), queryTerms, distinct);
+                // keeps, not accepts, the document may be in the threshold itself
+                if (!deleted.get(docId) && threshold.keeps(docId, upper)) {
+                    docIds[kept++] = docId;
+                } else {
+                    intersections[docId - from] = -1;
+                }
+            }
+            size = kept;
+            nextUpdate = Math.max(topK.capacity(), size * 2);
+        }
+    }
+
+    /**
+     * Queries evaluated together, see BatchSearch
+     * Every distinct term of the batch is listed once with the queries containing it, so its posting list is walked
+     * once for all of them
+     */
+    static class Batch {
+        public final Query[] queries;
+        // distinct term ids of all the queries
+        public final int[] termIds;
+        // termIds[i] -> indexes in queries of the queries containing it, and its position in their termIds
+        public final int[][] queryIndexes;
+        public final int[][] termPositions;
+
+        Batch(Query[] queries, int[] termIds, int[][] queryIndexes, int[][] termPositions) {
+            this.queries = queries;
+            this.termIds = termIds;
+            this.queryIndexes = queryIndexes;
+            this.termPositions = termPositions;
+        }
+    }
+
+    /**
+     * Callers must hold the read lock, same as prepare(String, Scorer)
+     */
+    Batch prepareBatch(List<String> textInputsByUser, Scorer scorer) {
+        Query[] queries = new Query[textInputsByUser.size()];
+        // term id -> (query index, position) pairs
+        Map<Integer, List<int[]>> occurrences = new HashMap<>();
+        for (int q = 0; q < queries.length; q++) {
+            queries[q] = prepare(textInputsByUser.get(q), scorer);
+            for (int position = 0; position < queries[q].termIds.length; position++) {
+                occurrences.computeIfAbsent(queries[q].termIds[position], termId -> new ArrayList<>())
+                        .add(new int[]{q, position});
+            }
+        }
+
+        int[] termIds = occurrences.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        int[][] queryIndexes = new int[termIds.length][];
+        int[][] termPositions = new int[termIds.length][];
+        for (int i = 0; i < termIds.length; i++) {
+            List<int[]> pairs = occurrences.get(termIds[i]);
+            queryIndexes[i] = new int[pairs.size()];
+            termPositions[i] = new int[pairs.size()];
+            for (int j = 0; j < pairs.size(); j++) {
+                queryIndexes[i][j] = pairs.get(j)[0];
+                termPositions[i][j] = pairs.get(j)[1];
+            }
+        }
+        return new Batch(queries, termIds, queryIndexes, termPositions);
+    }
+
+    /**
+     * Same as scoreRange(Query...) for every query of the batch in a single pass over each posting list
+     * Callers must hold the read lock
+     *
+     * @param outputs one per query of the batch, same order
+     */
+    void scoreBatchRange(Batch batch, int from, int to, TopK.ScoreConsumer[] outputs) {
+        int width = to - from;
+        long slots = (long) batch.queries.length * width;
+        if (slots > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(batch.queries.length + " queries over " + width + " doc ids do not fit in a range");
+        }
+        // query index * width + doc id - from -> |A n B| and the sum of the term scores, fits in an int, see above
+        int[] intersections = new int[(int) slots];
+        float[] sums = new float[(int) slots];
+        // query index -> its slots set so far, like scoreRange only those are scored, never the whole range
+        int[][] touchedSlots = new int[batch.queries.length][16];
+        int[] touched = new int[batch.queries.length];
+        PostingLists.Cursor cursor = postings.cursor();
+        for (int i = 0; i < batch.termIds.length; i++) {
+            int[] queryIndexes = batch.queryIndexes[i];
+            int[] termPositions = batch.termPositions[i];
+            cursor.reset(batch.termIds[i]);
+            for (int first = cursor.advance(from); first < to; first = cursor.nextBlock()) {
+                int[] docIds = cursor.docIds();
+                int[] frequencies = cursor.frequencies();
+                for (int position = cursor.position(), end = cursor.end(to); position < end; position++) {
+                    int docId = docIds[position];
+                    for (int j = 0; j < queryIndexes.length; j++) {
+                        int q = queryIndexes[j];
+                        Query query = batch.queries[q];
+                        int slot = q * width + docId - from;
+                        sums[slot] += query.scorer.termScore(this, query.weights[termPositions[j]], frequencies[position], docId);
+                        if (intersections[slot]++ == 0) {
+                            if (touched[q] == touchedSlots[q].length) {
+                                touchedSlots[q] = Arrays.copyOf(touchedSlots[q], touched[q] * 2);
+                            }
+                            touchedSlots[q][touched[q]++] = slot;
+                        }
+                    }
+                }
+            }
+        }
+
+        int scored = 0;
+        for (int q = 0; q < batch.queries.length; q++) {
+            Query query = batch.queries[q];
+            scored += touched[q];
+            for (int i = 0; i < touched[q]; i++) {
+                int slot = touchedSlots[q][i];
+                int docId = from + slot - q * width;
+                if (deleted.get(docId)) {
+                    continue;
+                }
+                outputs[q].accept(docId, query.scorer.documentScore(this, query, sums[slot], intersections[slot], docId));
+            }
+        }
+        Metrics.add(Metrics.Counter.DOCUMENTS_SCORED, scored);
+    }
+}
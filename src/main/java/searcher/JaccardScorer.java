@@ -0,0 +1,33 @@
+package searcher;
+
+/**
+ * The original algorithm, see Algorithm.rankSimilarity, only the number of matched terms matters
+ * Score from 0 to 100, always a whole number
+ */
+public class JaccardScorer implements Scorer {
+
+    @Override
+    public String name() {
+        return "jaccard";
+    }
+
+    @Override
+    public boolean countsRepeatedTerms() {
+        return false;
+    }
+
+    @Override
+    public float[] queryWeights(InvertedIndex index, InvertedIndex.Query query) {
+        return new float[query.termIds.length];
+    }
+
+    @Override
+    public float termScore(InvertedIndex index, float queryWeight, int frequency, int docId) {
+        return 0f;
+    }
+
+    @Override
+    public float documentScore(InvertedIndex index, InvertedIndex.Query query, float sum, int matchedTerms, int docId) {
+        return Algorithm.jaccard(matchedTerms, query.termCount, index.distinctTermCount(docId));
+    }
+}
@@ -0,0 +1,245 @@
+package searcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Json {
+
+    /**
+     * Just enough json writing for what the Searcher outputs, flat objects of strings and numbers,
+     * not worth a dependency. Reading only goes as far as the results lines, what a RemoteShard gets back.
+     */
+    private Json() {
+    }
+
+    /**
+     * @return value as a json string literal, quotes included
+     */
+    public static String quote(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /**
+     * @return {"query":"...","results":[{"fileName":"...","ranking":50,"score":50.0},...]} in a single line
+     */
+    public static String results(String query, List<Algorithm.Result> results) {
+        StringBuilder out = new StringBuilder("{\"query\":").append(quote(query)).append(",\"results\":[");
+        for (int i = 0; i < results.size(); i++) {
+            Algorithm.Result result = results.get(i);
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append("{\"fileName\":").append(quote(result.fileName))
+                    .append(",\"ranking\":").append(result.ranking)
+                    .append(",\"score\":").append(result.score)
+                    .append('}');
+        }
+        return out.append("]}").toString();
+    }
+
+    /**
+     * Reads back what results() writes, fields it does not know are skipped
+     *
+     * @return the results, in the order they were written
+     * @throws IllegalArgumentException if the text is not a results object
+     */
+    public static List<Algorithm.Result> parseResults(String json) {
+        Reader reader = new Reader(json);
+        List<Algorithm.Result> results = new ArrayList<>();
+        reader.expect('{');
+        if (!reader.consume('}')) {
+            do {
+                String field = reader.string();
+                reader.expect(':');
+                if (!field.equals("results")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.expect('[');
+                if (reader.consume(']')) {
+                    continue;
+                }
+                do {
+                    results.add(reader.result());
+                } while (reader.consume(','));
+                reader.expect(']');
+            } while (reader.consume(','));
+            reader.expect('}');
+        }
+        return results;
+    }
+
+    private static class Reader {
+        private final String json;
+        private int position = 0;
+
+        Reader(String json) {
+            this.json = json;
+        }
+
+        Algorithm.Result result() {
+            String fileName = null;
+            float score = 0;
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    String field = string();
+                    expect(':');
+                    if (field.equals("fileName")) {
+                        fileName = string();
+                    } else if (field.equals("score")) {
+                        score = Float.parseFloat(number());
+                    } else {
+                        skipValue();
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+            if (fileName == null) {
+                throw new IllegalArgumentException("Result without fileName at " + position);
+            }
+            return new Algorithm.Result(fileName, score);
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (position >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'n':
+                        out.append('\n');
+                        break;
+                    case 'r':
+                        out.append('\r');
+                        break;
+                    case 't':
+                        out.append('\t');
+                        break;
+                    case 'b':
+                        out.append('\b');
+                        break;
+                    case 'f':
+                        out.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw new IllegalArgumentException("Truncated escape at " + position);
+                        }
+                        out.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        // \" \\ and \/
+                        out.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string");
+        }
+
+        String number() {
+            skipWhitespace();
+            int start = position;
+            while (position < json.length() && "+-0123456789.eE".indexOf(json.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Expected a number at " + position);
+            }
+            return json.substring(start, position);
+        }
+
+        /**
+         * Skips a string, number, literal, object or array, nested ones included
+         */
+        void skipValue() {
+            skipWhitespace();
+            if (position >= json.length()) {
+                throw new IllegalArgumentException("Expected a value at " + position);
+            }
+            char c = json.charAt(position);
+            if (c == '"') {
+                string();
+            } else if (c == '{' || c == '[') {
+                char close = c == '{' ? '}' : ']';
+                position++;
+                if (consume(close)) {
+                    return;
+                }
+                do {
+                    if (c == '{') {
+                        string();
+                        expect(':');
+                    }
+                    skipValue();
+                } while (consume(','));
+                expect(close);
+            } else if (json.startsWith("true", position) || json.startsWith("null", position)) {
+                position += 4;
+            } else if (json.startsWith("false", position)) {
+                position += 5;
+            } else {
+                number();
+            }
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Expected " + c + " at " + position);
+            }
+        }
+
+        boolean consume(char c) {
+            skipWhitespace();
+            if (position < json.length() && json.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package searcher;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Metrics {
+
+    /**
+     * Parts of the pipeline whose latency is recorded
+     */
+    public enum Stage {
+        // getting the bytes of a file, HEAP reads or the pooled buffer read of small files with MMAP
+        READ,
+        // folding and splitting into tokens, interning them, with big MMAP files it includes the page faults
+        TOKENIZE,
+        // walking the posting lists of a query, every worker range of a ParallelSearch included
+        SCORE,
+        // keeping the best results and sorting them
+        SELECT,
+        // a whole query as the user sees it, cache lookup included
+        QUERY,
+        // finding the known term closest to an unknown query term, see TermTrigrams
+        EXPAND;
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+    }
+
+    public enum Counter {
+        BYTES_READ,
+        TOKENS,
+        DOCUMENTS_SCORED,
+        QUERY_CACHE_HITS,
+        QUERY_CACHE_MISSES,
+        DOCUMENT_CACHE_HITS,
+        DOCUMENT_CACHE_MISSES,
+        // known terms added to queries in place of unknown ones, see InvertedIndex.enableFuzzy
+        TERMS_EXPANDED;
+
+        final LongAdder value = new LongAdder();
+    }
+
+    // a plain static field, when disabled every call is a read of it and a branch the jit predicts for free
+    private static boolean enabled = false;
+
+    /**
+     * Metrics is a set of global counters and latency histograms of the hot path, i.e. to tell whether a slow query
+     * is spent reading, tokenizing, scoring or sorting.
+     * Instrumented code calls start() / stop() around a stage and add() for counters, all of them do nothing but
+     * check the flag while metrics are disabled, the default. Enabled, a stage costs two System.nanoTime() and a
+     * few atomic increments, see LatencyHistogram.
+     */
+    private Metrics() {
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * @return start time to give to stop(), 0 if metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(Stage stage, long start) {
+        if (enabled) {
+            stage.histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Same as stop() for a duration measured in several pieces, i.e. reading a file chunk by chunk
+     */
+    public static void record(Stage stage, long nanos) {
+        if (enabled) {
+            stage.histogram.record(nanos);
+        }
+    }
+
+    public static void add(Counter counter, long delta) {
+        if (enabled) {
+            counter.value.add(delta);
+        }
+    }
+
+    public static LatencyHistogram histogram(Stage stage) {
+        return stage.histogram;
+    }
+
+    public static long value(Counter counter) {
+        return counter.value.sum();
+    }
+
+    public static void reset() {
+        for (Stage stage : Stage.values()) {
+            stage.histogram.reset();
+        }
+        for (Counter counter : Counter.values()) {
+            counter.value.reset();
+        }
+    }
+
+    /**
+     * @return a table for the cli, latencies in microseconds
+     */
+    public static String summary() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s %10s  (us)%n",
+                "stage", "count", "mean", "p50", "p90", "p99", "max"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stage.histogram;
+            out.append(String.format(Locale.ROOT, "%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    name(stage), histogram.count(), micros(histogram.mean()),
+                    micros(histogram.percentile(50)), micros(histogram.percentile(90)),
+                    micros(histogram.percentile(99)), micros(histogram.max())));
+        }
+        for (Counter counter : Counter.values()) {
+            out.append(String.format(Locale.ROOT, "%-21s %d%n", name(counter), value(counter)));
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return everything as a single line json object, latencies in nanoseconds
+     */
+    public static String toJson() {
+        StringBuilder out = new StringBuilder("{\"enabled\":").append(enabled).append(",\"stages\":{");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stage.histogram;
+            if (stage.ordinal() > 0) {
+                out.append(',');
+            }
+            out.append('"').append(name(stage)).append("\":{")
+                    .append("\"count\":").append(histogram.count())
+                    .append(",\"mean\":").append(Math.round(histogram.mean()))
+                    .append(",\"p50\":").append(histogram.percentile(50))
+                    .append(",\"p90\":").append(histogram.percentile(90))
+                    .append(",\"p99\":").append(histogram.percentile(99))
+                    .append(",\"p999\":").append(histogram.percentile(99.9))
+                    .append(",\"max\":").append(histogram.max())
+                    .append('}');
+        }
+        out.append("},\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            if (counter.ordinal() > 0) {
+                out.append(',');
+            }
+            out.append('"').append(name(counter)).append("\":").append(value(counter));
+        }
+        return out.append("}}").toString();
+    }
+
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static double micros(double nanos) {
+        return nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,214 @@
+package searcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+public class MinHash {
+    // same seeds on every run, signatures of the same terms are always the same
+    static final long SEED = 0x5EED5EEDL;
+    // values of a signature at most, so the signatures of a chunk fit in an int[]
+    static final int MAX_LENGTH = 1 << 16;
+    // signatures of 2^CHUNK_SHIFT doc ids per array, a single int[] for all of them would overflow its int offsets
+    // past 2^31 / length documents, 16M with the usual 128 values
+    static final int CHUNK_SHIFT = 12;
+
+    public final int bands;
+    public final int rows;
+    // one per hash function, a function is mix(element ^ seed)
+    private final int[] seeds;
+    // doc id >>> CHUNK_SHIFT -> the signatures of its chunk, bands * rows ints one after the other, the last chunk grows
+    private int[][] signatures = new int[16][];
+    // band -> band key -> doc ids whose signature has that key in the band, the first int is the number of ids
+    private final List<Map<Integer, int[]>> buckets;
+
+    /**
+     * A MinHash keeps a fixed size signature of every document and groups the signatures in LSH bands, the approximate
+     * jaccard of InvertedIndex.searchSimilar.
+     * The signature has bands * rows values, the i-th is the minimum of the i-th hash function over the terms of the
+     * document. Two documents get the same i-th value with probability jaccard(A, B), so a signature alone estimates
+     * the similarity of two documents without looking at their terms.
+     * Signatures are split in bands of rows values, documents with the same values in a band land in the same bucket.
+     * Two documents share at least one bucket with probability 1 - (1 - s^rows)^bands for a similarity s, an s curve
+     * that jumps around (1 / bands)^(1 / rows): more rows means fewer and closer candidates, more bands means more
+     * candidates and a better recall, see probability().
+     * Terms are hashed by their chars, not their term ids, so unknown query terms count too, like they do for |A|.
+     * Memory is fixed per document, bands * rows ints for the signature plus a doc id per band, whatever its size.
+     * Not thread safe, the InvertedIndex updates and reads it under its own lock.
+     *
+     * @param bands buckets per document, > 0
+     * @param rows  values of the signature per band, > 0, bands * rows at most MAX_LENGTH
+     */
+    public MinHash(int bands, int rows) {
+        if (bands <= 0 || rows <= 0 || (long) bands * rows > MAX_LENGTH) {
+            throw new IllegalArgumentException("Invalid MinHash of " + bands + " bands of " + rows + " rows");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        SplittableRandom random = new SplittableRandom(SEED);
+        this.seeds = new int[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextInt();
+        }
+        this.buckets = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * @return size of a signature, bands * rows
+     */
+    public int length() {
+        return seeds.length;
+    }
+
+    /**
+     * @param elements hashes of the distinct terms of the document, see TermDictionary.hash
+     * @param count    number of elements
+     * @return the signature, Integer.MAX_VALUE everywhere for a document without terms
+     */
+    public int[] signature(int[] elements, int count) {
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int i = 0; i < count; i++) {
+            int element = elements[i];
+            for (int h = 0; h < seeds.length; h++) {
+                int value = mix(element ^ seeds[h]);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Stores the signature of the document and adds it to the bucket of each band, doc ids must come in order
+     */
+    public void add(int docId, int[] signature) {
+        int chunk = docId >>> CHUNK_SHIFT;
+        if (chunk >= signatures.length) {
+            signatures = Arrays.copyOf(signatures, Math.max(signatures.length * 2, chunk + 1));
+        }
+        int offset = offset(docId);
+        if (signatures[chunk] == null) {
+            signatures[chunk] = new int[Math.max(16 * seeds.length, offset + seeds.length)];
+        } else if (offset + seeds.length > signatures[chunk].length) {
+            int full = (1 << CHUNK_SHIFT) * seeds.length;
+            signatures[chunk] = Arrays.copyOf(signatures[chunk], Math.max(Math.min(signatures[chunk].length * 2, full), offset + seeds.length));
+        }
+        System.arraycopy(signature, 0, signatures[chunk], offset, seeds.length);
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band).merge(bandKey(signature, band), new int[]{1, docId}, MinHash::append);
+        }
+    }
+
+    /**
+     * Sets in candidates the doc ids sharing at least one bucket with the signature, deleted documents included
+     */
+    public void candidates(int[] signature, BitSet candidates) {
+        for (int band = 0; band < bands; band++) {
+            int[] docIds = buckets.get(band).get(bandKey(signature, band));
+            if (docIds == null) {
+                continue;
+            }
+            for (int i = 1; i <= docIds[0]; i++) {
+                candidates.set(docIds[i]);
+            }
+        }
+    }
+
+    /**
+     * @return estimated jaccard of the document and the signature, the fraction of equal values, from 0 to 1
+     */
+    public float similarity(int docId, int[] signature) {
+        int equal = 0;
+        int[] chunk = signatures[docId >>> CHUNK_SHIFT];
+        for (int h = 0, offset = offset(docId); h < seeds.length; h++) {
+            if (chunk[offset + h] == signature[h]) {
+                equal++;
+            }
+        }
+        return (float) equal / seeds.length;
+    }
+
+    /**
+     * @param similarity jaccard of two documents, from 0 to 1
+     * @return probability that they share at least one bucket, that the more similar one is a candidate of the other
+     */
+    public double probability(double similarity) {
+        return 1 - Math.pow(1 - Math.pow(similarity, rows), bands);
+    }
+
+    /**
+     * @return fraction of the exact results also in the approximate ones, by file name, 1 if there are no exact ones
+     */
+    public static double recall(List<Algorithm.Result> exact, List<Algorithm.Result> approximate) {
+        if (exact.isEmpty()) {
+            return 1;
+        }
+        Set<String> found = new HashSet<>();
+        for (Algorithm.Result result : approximate) {
+            found.add(result.fileName);
+        }
+        int hits = 0;
+        for (Algorithm.Result result : exact) {
+            if (found.contains(result.fileName)) {
+                hits++;
+            }
+        }
+        return (double) hits / exact.size();
+    }
+
+    /**
+     * @return position of the signature of the doc id in its chunk, < 2^CHUNK_SHIFT * MAX_LENGTH so no overflow
+     */
+    private int offset(int docId) {
+        return (docId & ((1 << CHUNK_SHIFT) - 1)) * seeds.length;
+    }
+
+    private int bandKey(int[] signature, int band) {
+        int key = band;
+        for (int row = band * rows, end = row + rows; row < end; row++) {
+            key = 31 * key + signature[row];
+        }
+        return mix(key);
+    }
+
+    private static int[] append(int[] docIds, int[] added) {
+        int size = docIds[0];
+        if (size + 1 == docIds.length) {
+            docIds = Arrays.copyOf(docIds, docIds.length * 2);
+        }
+        docIds[size + 1] = added[1];
+        docIds[0] = size + 1;
+        return docIds;
+    }
+
+    /**
+     * murmur3 finalizer, every bit of the input flips half of the output bits
+     */
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "MinHash{" +
+                "bands=" + bands +
+                ", rows=" + rows +
+                '}';
+    }
+}
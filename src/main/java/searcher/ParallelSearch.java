@@ -0,0 +1,100 @@
+package searcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelSearch {
+
+    /**
+     * Runs a query over the InvertedIndex splitting the doc id space among the workers of the pool
+     * Each worker scores its own range of documents straight into its own TopK, heaps are merged while
+     * joining back, so at most workers * limit entries are alive at the same time and Results are only built
+     * for the final `limit` ones.
+     * Results and their order are the same whatever the parallelism is: best score first, file name on ties, like
+     * Searcher.scan and ScatterGather, the documents kept on ties do not depend on doc ids, see InvertedIndex.nameRanks.
+     * Jaccard queries skip the documents that can not make it into the results, see InvertedIndex.topRange, the worst
+     * entry of the full TopKs is shared among the ranges so a range does not have to fill its own first.
+     *
+     * @param index           to query, its read lock is held for the whole query so updates wait for it
+     * @param textInputByUser raw query
+     * @param limit           number of results we are interested in
+     * @param pool            workers, its parallelism is the one given to the cli
+     * @return the best `limit` results sorted from best to worst
+     */
+    public static List<Algorithm.Result> search(InvertedIndex index, String textInputByUser, int limit, ForkJoinPool pool) {
+        return search(index, textInputByUser, Scorer.JACCARD, limit, pool);
+    }
+
+    /**
+     * Same as search(InvertedIndex, String, int, ForkJoinPool) ranking with the given scorer
+     */
+    public static List<Algorithm.Result> search(InvertedIndex index, String textInputByUser, Scorer scorer, int limit, ForkJoinPool pool) {
+        index.readLock().lock();
+        try {
+            InvertedIndex.Query query = index.prepare(textInputByUser, scorer);
+            // a few ranges per worker, so a worker finishing early can steal from the rest
+            int rangeSize = Math.max(1, index.size() / (pool.getParallelism() * 4));
+
+            long start = Metrics.start();
+            TopK topK = pool.invoke(new RangeTask(index, query, 0, index.size(), rangeSize, limit,
+                    new AtomicLong(Long.MIN_VALUE), index.nameRanks()));
+            Metrics.stop(Metrics.Stage.SCORE, start);
+
+            start = Metrics.start();
+            List<Algorithm.Result> results = new ArrayList<>(topK.size());
+            for (long entry : topK.sorted()) {
+                results.add(new Algorithm.Result(index.fileName(TopK.docId(entry)), TopK.score(entry)));
+            }
+            Metrics.stop(Metrics.Stage.SELECT, start);
+            return results;
+        } finally {
+            index.readLock().unlock();
+        }
+    }
+
+    private static class RangeTask extends RecursiveTask<TopK> {
+        private static final long serialVersionUID = 1L;
+
+        private final InvertedIndex index;
+        private final InvertedIndex.Query query;
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+        private final int limit;
+        // shared by the TopKs of every range, see TopK(int, AtomicLong, int[])
+        private final AtomicLong floor;
+        private final int[] ranks;
+
+        RangeTask(InvertedIndex index, InvertedIndex.Query query, int from, int to, int rangeSize, int limit,
+                  AtomicLong floor, int[] ranks) {
+            this.index = index;
+            this.query = query;
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+            this.limit = limit;
+            this.floor = floor;
+            this.ranks = ranks;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= rangeSize) {
+                TopK topK = new TopK(limit, floor, ranks);
+                index.topRange(query, from, to, topK);
+                return topK;
+            }
+
+            int middle = (from + to) >>> 1;
+            RangeTask left = new RangeTask(index, query, from, middle, rangeSize, limit, floor, ranks);
+            RangeTask right = new RangeTask(index, query, middle, to, rangeSize, limit, floor, ranks);
+            left.fork();
+            TopK topK = right.compute();
+            topK.merge(left.join());
+            return topK;
+        }
+    }
+}
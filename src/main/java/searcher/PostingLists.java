@@ -0,0 +1,413 @@
+package searcher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PostingLists {
+    // postings per compressed block, the unit a Cursor decodes and skips
+    static final int BLOCK_SIZE = 128;
+    // a block is its two widths and at most BLOCK_SIZE pairs of 4 bytes values
+    static final int MAX_BLOCK_BYTES = 2 + BLOCK_SIZE * 8;
+    // off heap segments start small, a tiny index does not reserve megabytes, and double up to the max
+    static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    static final int MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+    // doc id of a Cursor past the last posting, bigger than any doc id so `docId < to` loops just stop
+    public static final int END = Integer.MAX_VALUE;
+
+    // term id -> number of postings, blocks and tail
+    private int[] sizes = new int[16];
+    // term id -> last postings not in a block yet, doc ids and frequencies, at most BLOCK_SIZE, on heap
+    private int[][] tailDocIds = new int[16][];
+    private int[][] tailFrequencies = new int[16][];
+    // term id -> block -> where it is off heap, (segment << 48) | (length << 32) | offset
+    private long[][] blockAddresses = new long[16][];
+    // term id -> block -> its last doc id, what the Cursor binary searches to skip blocks
+    private int[][] blockLastDocIds = new int[16][];
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private int segmentEnd = 0;
+    private long bytes = 0;
+    // the block being encoded, copied off heap once its size is known
+    private final byte[] encoded = new byte[MAX_BLOCK_BYTES];
+
+    /**
+     * PostingLists keeps the posting list of every term, its doc ids and term frequencies, mostly off heap.
+     * Postings are appended in doc id order, every BLOCK_SIZE of them are encoded in a block: the gaps between doc ids
+     * followed by the frequencies, each with the fewest bytes that fit the biggest of the block, from 1 to 4. Like a
+     * varint, gaps of a frequent term are tiny and most postings take 2 bytes instead of the 8 of two ints, unlike a
+     * varint every value of a block has the same width, decoding is a branch free loop instead of a branch per byte.
+     * Frequencies are only decoded when asked for, jaccard never needs them.
+     * Blocks go one after the other in direct ByteBuffers, the gc never scans nor moves them, what is left on heap is
+     * a long and an int per block and the tail of every list, the postings not filling a block yet. Tails stay on heap
+     * as int[], they are written to on every add: up to BLOCK_SIZE - 1 postings per term, so the heap taken by
+     * postings depends on the vocabulary, not on the size of the corpus, but a vocabulary of mostly rare terms keeps
+     * most of its postings there.
+     * A Cursor walks a list copying a block at a time, sequential reads of a few hundred bytes, and skips whole
+     * blocks through their last doc id when asked for a doc id further on, without decoding them.
+     * Not thread safe for writes, like the InvertedIndex that holds it, reads are safe while nobody writes.
+     */
+    public PostingLists() {
+    }
+
+    public void add(int termId, int docId, int frequency) {
+        if (termId >= sizes.length) {
+            int capacity = Math.max(sizes.length * 2, termId + 1);
+            sizes = Arrays.copyOf(sizes, capacity);
+            tailDocIds = Arrays.copyOf(tailDocIds, capacity);
+            tailFrequencies = Arrays.copyOf(tailFrequencies, capacity);
+            blockAddresses = Arrays.copyOf(blockAddresses, capacity);
+            blockLastDocIds = Arrays.copyOf(blockLastDocIds, capacity);
+        }
+        int[] docIds = tailDocIds[termId];
+        int tail = sizes[termId] % BLOCK_SIZE;
+        if (docIds == null) {
+            docIds = tailDocIds[termId] = new int[4];
+            tailFrequencies[termId] = new int[4];
+        } else if (tail == docIds.length) {
+            docIds = tailDocIds[termId] = Arrays.copyOf(docIds, docIds.length * 2);
+            tailFrequencies[termId] = Arrays.copyOf(tailFrequencies[termId], docIds.length);
+        }
+        docIds[tail] = docId;
+        tailFrequencies[termId][tail] = frequency;
+        sizes[termId]++;
+        if (tail + 1 == BLOCK_SIZE) {
+            flush(termId);
+        }
+    }
+
+    /**
+     * Moves the full tail of the term to a new off heap block, the tail arrays are reused for the next one
+     */
+    private void flush(int termId) {
+        int block = sizes[termId] / BLOCK_SIZE - 1;
+        int[] docIds = tailDocIds[termId];
+        int[] frequencies = tailFrequencies[termId];
+        int previous = block == 0 ? 0 : blockLastDocIds[termId][block - 1];
+        int length = encode(docIds, frequencies, 0, BLOCK_SIZE, previous, encoded, 0);
+        previous = docIds[BLOCK_SIZE - 1];
+
+        if (segments.isEmpty() || segmentEnd + length > segments.get(segments.size() - 1).capacity()) {
+            int capacity = segments.isEmpty() ? MIN_SEGMENT_SIZE
+                    : Math.min(MAX_SEGMENT_SIZE, segments.get(segments.size() - 1).capacity() * 2);
+            segments.add(ByteBuffer.allocateDirect(capacity));
+            segmentEnd = 0;
+        }
+        ByteBuffer segment = segments.get(segments.size() - 1);
+        for (int i = 0; i < length; i++) {
+            segment.put(segmentEnd + i, encoded[i]);
+        }
+
+        if (blockAddresses[termId] == null) {
+            blockAddresses[termId] = new long[4];
+            blockLastDocIds[termId] = new int[4];
+        } else if (block == blockAddresses[termId].length) {
+            blockAddresses[termId] = Arrays.copyOf(blockAddresses[termId], block * 2);
+            blockLastDocIds[termId] = Arrays.copyOf(blockLastDocIds[termId], block * 2);
+        }
+        blockAddresses[termId][block] = ((long) (segments.size() - 1) << 48) | ((long) length << 32) | segmentEnd;
+        blockLastDocIds[termId][block] = previous;
+        segmentEnd += length;
+        bytes += length;
+    }
+
+    /**
+     * Writes a block: the gaps between the ids, from previous, then the frequencies, each with the fewest bytes that
+     * fit the biggest of the block. The ForwardIndex writes the term ids of documents the same way
+     *
+     * @param ids     increasing, from previous on
+     * @param count   values to write from `from`, BLOCK_SIZE at most
+     * @param encoded written from offset, room for MAX_BLOCK_BYTES
+     * @return end of the block in encoded
+     */
+    static int encode(int[] ids, int[] frequencies, int from, int count, int previous, byte[] encoded, int offset) {
+        int maxGap = 0;
+        int maxFrequency = 0;
+        for (int i = from, last = previous; i < from + count; i++) {
+            maxGap = Math.max(maxGap, ids[i] - last);
+            maxFrequency = Math.max(maxFrequency, frequencies[i]);
+            last = ids[i];
+        }
+        int gapWidth = width(maxGap);
+        int frequencyWidth = width(maxFrequency);
+        encoded[offset] = (byte) gapWidth;
+        encoded[offset + 1] = (byte) frequencyWidth;
+        int length = offset + 2;
+        for (int i = from; i < from + count; i++) {
+            length = write(encoded, length, ids[i] - previous, gapWidth);
+            previous = ids[i];
+        }
+        for (int i = from; i < from + count; i++) {
+            length = write(encoded, length, frequencies[i], frequencyWidth);
+        }
+        return length;
+    }
+
+    /**
+     * Reads a block written by encode, frequencies included
+     *
+     * @param ids         receives the count ids from `from`
+     * @param frequencies same positions as ids
+     * @return end of the block in encoded
+     */
+    static int decode(byte[] encoded, int offset, int count, int previous, int[] ids, int[] frequencies, int from) {
+        int gapWidth = encoded[offset];
+        int frequencyWidth = encoded[offset + 1];
+        int position = offset + 2;
+        for (int i = from; i < from + count; i++, position += gapWidth) {
+            previous += read(encoded, position, gapWidth);
+            ids[i] = previous;
+        }
+        for (int i = from; i < from + count; i++, position += frequencyWidth) {
+            frequencies[i] = read(encoded, position, frequencyWidth);
+        }
+        return position;
+    }
+
+    /**
+     * @return bytes needed by a non negative value, 1 to 4
+     */
+    private static int width(int value) {
+        return Math.max(1, (32 - Integer.numberOfLeadingZeros(value) + 7) / 8);
+    }
+
+    /**
+     * Little endian, the low byte first
+     */
+    private static int write(byte[] buffer, int position, int value, int width) {
+        for (int i = 0; i < width; i++) {
+            buffer[position++] = (byte) (value >>> (8 * i));
+        }
+        return position;
+    }
+
+    private static int read(byte[] buffer, int position, int width) {
+        int value = 0;
+        for (int i = 0; i < width; i++) {
+            value |= (buffer[position + i] & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    /**
+     * @return number of postings of the term, deleted documents included
+     */
+    public int size(int termId) {
+        return termId < sizes.length ? sizes[termId] : 0;
+    }
+
+    /**
+     * @return bytes taken by the blocks off heap, the tails on heap are not counted
+     */
+    public long offHeapBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return a cursor on no list, see Cursor.reset, one cursor can walk every list of a query one after the other
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Walks a posting list in doc id order, decoding one block at a time into a couple of int[BLOCK_SIZE]
+     * A cursor is a couple of KB of scratch arrays, reuse it for every term of a query
+     */
+    public class Cursor {
+        private final int[] docIds = new int[BLOCK_SIZE];
+        private final int[] frequencies = new int[BLOCK_SIZE];
+        private int termId;
+        // block decoded in docIds / frequencies, blockCount is the tail
+        private int block;
+        private int blockCount;
+        private int length;
+        private int position;
+        // the encoded block, and where its frequencies start in it, -1 once they are decoded
+        private final byte[] bytes = new byte[MAX_BLOCK_BYTES];
+        private int frequenciesOffset = -1;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the start of the posting list of the term, before its first posting, call next() or advance()
+         */
+        public Cursor reset(int termId) {
+            this.termId = termId;
+            this.blockCount = size(termId) / BLOCK_SIZE;
+            this.block = -1;
+            this.length = 0;
+            this.position = -1;
+            return this;
+        }
+
+        /**
+         * @return doc id of the next posting, END if there is none
+         */
+        public int next() {
+            if (++position < length) {
+                return docIds[position];
+            }
+            return loadNext();
+        }
+
+        // kept out of next() so next() stays small enough to be inlined in the scoring loops
+        private int loadNext() {
+            if (block >= blockCount) {
+                position = length;
+                return END;
+            }
+            load(block + 1);
+            position = 0;
+            return length > 0 ? docIds[0] : END;
+        }
+
+        /**
+         * Moves forward to the first posting with a doc id >= target, blocks ending before it are not decoded
+         *
+         * @return its doc id, END if there is none
+         */
+        public int advance(int target) {
+            if (block >= 0 && length > 0 && docIds[length - 1] >= target) {
+                return seek(Math.max(position, 0), target);
+            }
+            int first = block + 1;
+            if (first > blockCount) {
+                position = length;
+                return END;
+            }
+            // first block ending at or after the target, the tail if none
+            int found = first == blockCount ? -first - 1 : Arrays.binarySearch(blockLastDocIds[termId], first, blockCount, target);
+            load(found >= 0 ? found : -found - 1);
+            return seek(0, target);
+        }
+
+        /**
+         * Moves to the first posting of the next block, the block at a time loops of the scorers are
+         * {@code for (docId = advance(from); docId < to; docId = nextBlock())} walking docIds() from position() to
+         * end(to), no call per posting
+         *
+         * @return its doc id, END if there is none
+         */
+        public int nextBlock() {
+            position = length - 1;
+            return next();
+        }
+
+        /**
+         * @return doc ids of the current block, valid from position() to the block end, must not be modified
+         */
+        public int[] docIds() {
+            return docIds;
+        }
+
+        /**
+         * @return frequencies of the current block, same positions as docIds(), must not be modified
+         */
+        public int[] frequencies() {
+            if (frequenciesOffset >= 0) {
+                decodeFrequencies();
+            }
+            return frequencies;
+        }
+
+        /**
+         * @return position of the current posting in the current block
+         */
+        public int position() {
+            return position;
+        }
+
+        /**
+         * @return position in the current block of the first doc id >= to, the block length if there is none
+         */
+        public int end(int to) {
+            if (docIds[length - 1] < to) {
+                return length;
+            }
+            int found = Arrays.binarySearch(docIds, position, length, to);
+            return found >= 0 ? found : -found - 1;
+        }
+
+        private int seek(int from, int target) {
+            int found = Arrays.binarySearch(docIds, from, length, target);
+            position = found >= 0 ? found : -found - 1;
+            return position < length ? docIds[position] : END;
+        }
+
+        /**
+         * @return doc id of the current posting
+         */
+        public int docId() {
+            return docIds[position];
+        }
+
+        /**
+         * @return frequency of the term in the current posting
+         */
+        public int frequency() {
+            if (frequenciesOffset >= 0) {
+                decodeFrequencies();
+            }
+            return frequencies[position];
+        }
+
+        private void load(int block) {
+            this.block = block;
+            if (block == blockCount) {
+                frequenciesOffset = -1;
+                length = sizes[termId] % BLOCK_SIZE;
+                if (length > 0) {
+                    System.arraycopy(tailDocIds[termId], 0, docIds, 0, length);
+                    System.arraycopy(tailFrequencies[termId], 0, frequencies, 0, length);
+                }
+                return;
+            }
+            // one bulk copy of the block, decoded from the heap copy, cheaper than reading the buffer byte by byte
+            long address = blockAddresses[termId][block];
+            ByteBuffer segment = segments.get((int) (address >>> 48));
+            segment.get((int) address, bytes, 0, (int) (address >>> 32) & 0xFFFF);
+            int previous = block == 0 ? 0 : blockLastDocIds[termId][block - 1];
+            int gapWidth = bytes[0];
+            if (gapWidth == 1) {
+                // the usual block of a frequent term, kept apart so the loop is as simple as it gets
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    previous += bytes[2 + i] & 0xFF;
+                    docIds[i] = previous;
+                }
+            } else {
+                for (int i = 0, offset = 2; i < BLOCK_SIZE; i++, offset += gapWidth) {
+                    previous += read(bytes, offset, gapWidth);
+                    docIds[i] = previous;
+                }
+            }
+            length = BLOCK_SIZE;
+            frequenciesOffset = 2 + BLOCK_SIZE * gapWidth;
+        }
+
+        private void decodeFrequencies() {
+            int frequencyWidth = bytes[1];
+            if (frequencyWidth == 1) {
+                for (int i = 0, offset = frequenciesOffset; i < BLOCK_SIZE; i++) {
+                    frequencies[i] = bytes[offset + i] & 0xFF;
+                }
+            } else {
+                for (int i = 0, offset = frequenciesOffset; i < BLOCK_SIZE; i++, offset += frequencyWidth) {
+                    frequencies[i] = read(bytes, offset, frequencyWidth);
+                }
+            }
+            frequenciesOffset = -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PostingLists{" +
+                "terms=" + sizes.length +
+                ", segments=" + segments.size() +
+                ", offHeapBytes=" + bytes +
+                '}';
+    }
+}
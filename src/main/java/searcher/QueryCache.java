@@ -0,0 +1,155 @@
+package searcher;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class QueryCache {
+    // rough per object overheads of a 64 bit jvm with compressed oops, good enough to keep the cache in its budget
+    static final int OBJECT_OVERHEAD = 16;
+    static final int ENTRY_OVERHEAD = 64;
+
+    private final long maxBytes;
+    // access ordered, the first entry is the least recently used
+    private final LinkedHashMap<String, List<Algorithm.Result>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    // index version the entries were computed at
+    private long version = -1;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * A QueryCache keeps the results of the last queries, users re-run the same query over and over in the cli.
+     * Queries are keyed by their normalized terms, so "Text to find", "find text to" and "text to find to" are the
+     * same entry as long as the scorer does not care about repeated terms.
+     * The least recently used entries are evicted to stay under the memory budget.
+     * Entries are only valid for the version of the index they were computed at, as soon as a document is
+     * added or removed the whole cache is dropped, a single file change can change the rank of any query.
+     * Thread safe, every method is synchronized, lookups are tiny compared to the search itself.
+     *
+     * @param maxBytes memory budget, estimated, 0 disables the cache
+     */
+    public QueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return cache key of the query, its sorted terms, deduplicated when the scorer ignores repetitions,
+     * followed by the scorer and the number of results
+     */
+    public static String key(String textInputByUser, Scorer scorer, int limit) {
+        List<String> terms = new ArrayList<>();
+        if (scorer.countsRepeatedTerms()) {
+            new Tokenizer().tokenize(Algorithm.normalizeText(textInputByUser),
+                    (buffer, length) -> terms.add(new String(buffer, 0, length)));
+        } else {
+            terms.addAll(Algorithm.distinctTerms(Algorithm.normalizeText(textInputByUser)));
+        }
+        terms.sort(null);
+        return scorer.name() + ' ' + limit + ' ' + String.join(" ", terms);
+    }
+
+    /**
+     * @param key          see key()
+     * @param indexVersion current InvertedIndex.version(), entries of other versions are dropped
+     * @return the cached results, empty on a miss
+     */
+    public synchronized Optional<List<Algorithm.Result>> get(String key, long indexVersion) {
+        invalidateIfChanged(indexVersion);
+        List<Algorithm.Result> results = entries.get(key);
+        if (results == null) {
+            misses++;
+            Metrics.add(Metrics.Counter.QUERY_CACHE_MISSES, 1);
+            return Optional.empty();
+        }
+        hits++;
+        Metrics.add(Metrics.Counter.QUERY_CACHE_HITS, 1);
+        return Optional.of(results);
+    }
+
+    /**
+     * @param indexVersion InvertedIndex.version() read before running the query, if the index changed in the
+     *                     meantime the results are already stale and not cached
+     */
+    public synchronized void put(String key, long indexVersion, List<Algorithm.Result> results) {
+        invalidateIfChanged(indexVersion);
+        if (indexVersion != version) {
+            return;
+        }
+        long size = sizeOf(key, results);
+        if (size > maxBytes) {
+            return;
+        }
+        List<Algorithm.Result> previous = entries.put(key, List.copyOf(results));
+        if (previous != null) {
+            bytes -= sizeOf(key, previous);
+        }
+        bytes += size;
+
+        Iterator<Map.Entry<String, List<Algorithm.Result>>> leastRecentlyUsed = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Map.Entry<String, List<Algorithm.Result>> eldest = leastRecentlyUsed.next();
+            bytes -= sizeOf(eldest.getKey(), eldest.getValue());
+            leastRecentlyUsed.remove();
+            evictions++;
+        }
+    }
+
+    private void invalidateIfChanged(long indexVersion) {
+        // only moves forward, a put of a query that started before the last change must not bring back old entries
+        if (indexVersion > version) {
+            entries.clear();
+            bytes = 0;
+            version = indexVersion;
+        }
+    }
+
+    static long sizeOf(String key, List<Algorithm.Result> results) {
+        long size = ENTRY_OVERHEAD + OBJECT_OVERHEAD + 2L * key.length() + OBJECT_OVERHEAD + 4L * results.size();
+        for (Algorithm.Result result : results) {
+            size += OBJECT_OVERHEAD * 2 + 2L * result.fileName.length();
+        }
+        return size;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "QueryCache{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", entries=" + entries.size() +
+                ", bytes=" + bytes +
+                ", maxBytes=" + maxBytes +
+                '}';
+    }
+}
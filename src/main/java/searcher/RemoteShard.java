@@ -0,0 +1,73 @@
+package searcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class RemoteShard implements Shard {
+    // a shard slower than this is left out of the results instead of holding the whole query
+    static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final InetSocketAddress address;
+    private final HttpClient client;
+
+    /**
+     * A RemoteShard is a shard indexed and searched by another Searcher process, the one started with
+     * --shards=N --shard=i --serve=port, queried through its SearchServer on a local socket.
+     * Each process only holds its part of the tree, so a tree too big for a single heap can be spread over several
+     * jvms of the same machine, and a shard can be restarted or rebuilt without touching the others.
+     * A shard that can not be reached or fails is reported and skipped, the query returns what the other shards found.
+     *
+     * @param address host:port of the SearchServer of the shard
+     */
+    public RemoteShard(InetSocketAddress address) {
+        this.address = address;
+        this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    }
+
+    /**
+     * Blocks the worker while waiting for the shard, the workers have nothing else to do when every shard is remote
+     */
+    @Override
+    public List<Algorithm.Result> search(String textInputByUser, Scorer scorer, int limit, ForkJoinPool pool) {
+        URI uri = URI.create("http://" + address.getHostString() + ":" + address.getPort() + "/search"
+                + "?q=" + URLEncoder.encode(textInputByUser, StandardCharsets.UTF_8)
+                + "&k=" + limit
+                + "&scorer=" + scorer.name());
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            if (response.statusCode() != 200) {
+                throw new IOException("Shard " + this + " answered " + response.statusCode() + " " + response.body());
+            }
+            return Json.parseResults(response.body());
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return List.of();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        }
+    }
+
+    /**
+     * The other process does not tell, results of remote shards are never cached
+     */
+    @Override
+    public long version() {
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return address.getHostString() + ":" + address.getPort();
+    }
+}
@@ -0,0 +1,67 @@
+package searcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ScatterGather implements Shard {
+    private final List<Shard> shards;
+
+    /**
+     * A ScatterGather sends every query to all its shards at once and keeps the best `limit` of their results.
+     * The global top k is always among the union of the top k of every shard, a document scores the same wherever
+     * it lives, so each shard only returns `limit` results and merging them is a sort of shards * limit entries.
+     * Jaccard scores only depend on the query and the document and are the same as with a single index. TF-IDF and
+     * BM25 use the statistics of the shard (document frequencies, average length), like most distributed engines do
+     * by default, with files spread by path hash they are close to the global ones on any tree worth sharding.
+     * Ties are broken by file name, a single index breaks them by doc id.
+     *
+     * @param shards local and / or remote, queried in parallel
+     */
+    public ScatterGather(List<Shard> shards) {
+        this.shards = List.copyOf(shards);
+    }
+
+    /**
+     * Every shard runs on its own task of the pool, local shards split their doc ids among the workers again
+     * through ParallelSearch, so a query uses the whole pool even with fewer shards than workers
+     */
+    @Override
+    public List<Algorithm.Result> search(String textInputByUser, Scorer scorer, int limit, ForkJoinPool pool) {
+        List<ForkJoinTask<List<Algorithm.Result>>> scattered = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            scattered.add(pool.submit(() -> shard.search(textInputByUser, scorer, limit, pool)));
+        }
+
+        List<Algorithm.Result> gathered = new ArrayList<>(shards.size() * limit);
+        for (ForkJoinTask<List<Algorithm.Result>> task : scattered) {
+            gathered.addAll(task.join());
+        }
+        long start = Metrics.start();
+        gathered.sort(null);
+        List<Algorithm.Result> best = new ArrayList<>(gathered.subList(0, Math.min(limit, gathered.size())));
+        Metrics.stop(Metrics.Stage.SELECT, start);
+        return best;
+    }
+
+    /**
+     * @return sum of the versions of the shards, it grows whenever one of them changes, -1 if one is unknown
+     */
+    @Override
+    public long version() {
+        long version = 0;
+        for (Shard shard : shards) {
+            long shardVersion = shard.version();
+            if (shardVersion < 0) {
+                return -1;
+            }
+            version += shardVersion;
+        }
+        return version;
+    }
+
+    public int size() {
+        return shards.size();
+    }
+}
@@ -0,0 +1,55 @@
+package searcher;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Ranking algorithm run by the InvertedIndex, only the posting lists of the query terms are walked:
+ * every (query term, document containing it) pair goes through termScore and the sum, once per matching document,
+ * through documentScore. Everything a scorer needs about the corpus (document frequencies, lengths, norms) is
+ * computed by the index when documents are added, nothing is counted again per query.
+ * Scores must be >= 0, see TopK.
+ */
+public interface Scorer {
+
+    // the default one, same ranking the cli always had
+    Scorer JACCARD = new JaccardScorer();
+    List<Scorer> ALL = List.of(JACCARD, new TfIdfScorer(), new Bm25Scorer());
+
+    /**
+     * @return name used to pick it, from the cli options and the REPL, i.e. :bm25 some text
+     */
+    String name();
+
+    /**
+     * Called once per query, callers hold the read lock of the index
+     *
+     * @return weight of every query term, same order as query.termIds
+     */
+    float[] queryWeights(InvertedIndex index, InvertedIndex.Query query);
+
+    /**
+     * @param queryWeight weight of the query term, see queryWeights
+     * @param frequency   times the term appears in the document
+     * @return contribution of the query term to the score of the document
+     */
+    float termScore(InvertedIndex index, float queryWeight, int frequency, int docId);
+
+    /**
+     * @param sum          of the termScore of the query terms in the document
+     * @param matchedTerms number of query terms in the document, |A n B|
+     * @return final score of the document
+     */
+    float documentScore(InvertedIndex index, InvertedIndex.Query query, float sum, int matchedTerms, int docId);
+
+    /**
+     * @return false if a term repeated in the query scores the same as a single one, jaccard only sees the term set
+     */
+    default boolean countsRepeatedTerms() {
+        return true;
+    }
+
+    static Optional<Scorer> byName(String name) {
+        return ALL.stream().filter(scorer -> scorer.name().equalsIgnoreCase(name)).findFirst();
+    }
+}
@@ -0,0 +1,241 @@
+package searcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SearchServer implements Closeable {
+    // how often the live index is checked for changes to publish
+    static final long PUBLISH_INTERVAL_MILLIS = 1000L;
+    // a publish copies the whole index: changes are published at once when they are 1 / CHANGED_FRACTION of the
+    // documents, fewer ones wait up to MAX_PUBLISH_DELAY_MILLIS so a trickle of edits does not copy it every second
+    static final int CHANGED_FRACTION = 100;
+    static final long MAX_PUBLISH_DELAY_MILLIS = 10_000L;
+    // and never more than 1 / COPY_TIME_FACTOR of the time is spent copying, whatever the changes
+    static final int COPY_TIME_FACTOR = 4;
+    // k is capped, a client asking for a million results gets this many
+    static final int MAX_RESULTS = 1000;
+
+    private final InvertedIndex live;
+    private final AtomicReference<InvertedIndex> published;
+    private final QueryCache cache;
+    private final ForkJoinPool pool;
+    private final Scorer defaultScorer;
+    private final int defaultLimit;
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService publisher;
+    // guarded by this, like publishing: when the first change not published yet was seen, -1 if none, when the last
+    // publish ended and how long it took
+    private long firstPendingMillis = -1;
+    private long lastPublishMillis = 0;
+    private long lastCopyMillis = 0;
+
+    /**
+     * A SearchServer answers queries over http with the jdk built in server, GET /search?q=text&k=10&scorer=bm25
+     * returns a json object like the batch mode lines, GET /stats the Metrics as json.
+     * The index the IndexWatcher updates (live) is never searched directly. Requests search a compacted copy of it,
+     * published through an AtomicReference: a request pins the copy it read for its whole run, so queries never wait
+     * for a refresh nor for each other, and a refresh is seen by the next requests all at once.
+     * Every PUBLISH_INTERVAL_MILLIS a background thread checks the version of the live index and publishes a new
+     * copy if it changed enough to be worth it, see worthPublishing. Copies are only read, the read lock they take
+     * is never contended by a writer.
+     * Memory: the server holds the live index and its copy, nothing is shared, compactCopy copies the dictionary and
+     * the off heap ForwardIndex and PostingLists byte for byte. While a publish runs, and until the requests pinning
+     * the previous copy are done, a third one is alive: the peak is about three times the size of the index, heap and
+     * off heap (-XX:MaxDirectMemorySize) alike, twice when nothing is published.
+     * Each request runs on its own thread, threads are pooled and created on demand, the target jdk has no virtual
+     * threads. Scoring itself runs on the shared ForkJoinPool, see ParallelSearch.
+     *
+     * @param live     index kept up to date by the IndexWatcher
+     * @param address  to bind to, i.e. localhost:8080
+     * @param options  scorer, limit and query cache size of the cli
+     * @param pool     workers scoring the queries
+     * @throws IOException if the address can not be bound
+     */
+    public SearchServer(InvertedIndex live, InetSocketAddress address, SearcherOptions options, ForkJoinPool pool) throws IOException {
+        this.live = live;
+        this.published = new AtomicReference<>(live.compactCopy());
+        this.cache = new QueryCache(options.cacheSize);
+        this.pool = pool;
+        this.defaultScorer = options.scorer;
+        this.defaultLimit = options.limit;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.handlers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "search-server-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-server-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(handlers);
+    }
+
+    public void start() {
+        publisher.scheduleWithFixedDelay(this::publishIfWorthIt, PUBLISH_INTERVAL_MILLIS, PUBLISH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        server.start();
+    }
+
+    /**
+     * @return port the server listens on, useful when bound to port 0
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Publishes a copy of the live index if it changed since the last one
+     */
+    synchronized void publish() {
+        if (live.version() != published.get().version()) {
+            long start = System.currentTimeMillis();
+            published.set(live.compactCopy());
+            lastPublishMillis = System.currentTimeMillis();
+            lastCopyMillis = lastPublishMillis - start;
+            firstPendingMillis = -1;
+        }
+    }
+
+    private synchronized void publishIfWorthIt() {
+        long now = System.currentTimeMillis();
+        InvertedIndex current = published.get();
+        // every add and remove bumps the version, an updated file counts twice
+        long changes = live.version() - current.version();
+        if (changes > 0 && firstPendingMillis < 0) {
+            firstPendingMillis = now;
+        }
+        if (worthPublishing(changes, current.liveSize(), now - firstPendingMillis, now - lastPublishMillis, lastCopyMillis)) {
+            publish();
+        }
+    }
+
+    /**
+     * @param changes          since the published copy
+     * @param documents        of the published copy
+     * @param pendingMillis    since the first of those changes was seen
+     * @param sinceLastMillis  since the last publish ended
+     * @param lastCopyMillis   how long the last copy took
+     * @return whether a copy of the whole index is worth it for those changes
+     */
+    static boolean worthPublishing(long changes, int documents, long pendingMillis, long sinceLastMillis, long lastCopyMillis) {
+        if (changes <= 0 || sinceLastMillis < COPY_TIME_FACTOR * lastCopyMillis) {
+            return false;
+        }
+        return changes * CHANGED_FRACTION >= documents || pendingMillis >= MAX_PUBLISH_DELAY_MILLIS;
+    }
+
+    /**
+     * @return the copy requests are searching right now
+     */
+    InvertedIndex published() {
+        return published.get();
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "{\"error\":\"only GET is supported\"}");
+                return;
+            }
+            Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            String query = parameters.getOrDefault("q", "").strip();
+            if (query.isEmpty()) {
+                respond(exchange, 400, "{\"error\":\"missing q\"}");
+                return;
+            }
+            Optional<Integer> limit = parseLimit(parameters.get("k"));
+            if (limit.isEmpty()) {
+                respond(exchange, 400, "{\"error\":\"k must be a positive number\"}");
+                return;
+            }
+            Optional<Scorer> scorer = parameters.containsKey("scorer")
+                    ? Scorer.byName(parameters.get("scorer")) : Optional.of(defaultScorer);
+            if (scorer.isEmpty()) {
+                respond(exchange, 400, "{\"error\":\"unknown scorer\"}");
+                return;
+            }
+
+            // pinned for the whole request, a publish in the meantime does not affect it
+            InvertedIndex index = published.get();
+            List<Algorithm.Result> results = Searcher.search(index, cache, query, scorer.get(), limit.get(), pool);
+            respond(exchange, 200, Json.results(query, results));
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            respond(exchange, 200, Metrics.toJson());
+        }
+    }
+
+    private Optional<Integer> parseLimit(String value) {
+        if (value == null) {
+            return Optional.of(defaultLimit);
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            return limit > 0 ? Optional.of(Math.min(limit, MAX_RESULTS)) : Optional.empty();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Stops accepting requests, running ones get a second to finish
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        publisher.shutdownNow();
+        handlers.shutdown();
+    }
+}
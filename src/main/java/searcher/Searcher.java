@@ -1,31 +1,88 @@
 package searcher;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
 
 public class Searcher {
 
     public static final int LIMIT_QUERY_RESULT = 10;
 
     public static void main(String[] args) {
-        if (args.length == 0) {
-            throw new IllegalArgumentException("No directory given to index.");
+        var options = SearcherOptions.parse(args);
+        // before indexing, so reading and tokenizing the corpus is measured too
+        Metrics.setEnabled(options.metrics);
+
+        var crawler = new FilesystemCrawler(options.directory, options.crawl);
+
+        var pool = new ForkJoinPool(options.parallelism);
+
+        // from now on the watcher keeps the index up to date, the scan needs neither, files are read per query
+        // searched is what queries run on: the index, the local shards or the shard processes, null for the scan
+        InvertedIndex index = null;
+        ShardedIndex shardedIndex = null;
+        IndexWatcher watcher = null;
+        Shard searched = null;
+        if (!options.remoteShards.isEmpty()) {
+            List<Shard> remoteShards = new ArrayList<>();
+            options.remoteShards.forEach(address -> remoteShards.add(new RemoteShard(address)));
+            searched = new ScatterGather(remoteShards);
+        } else if (options.engine == SearcherOptions.Engine.INDEX && options.shards > 1) {
+            shardedIndex = loadOrBuildShards(options, crawler, pool);
+            watcher = IndexWatcher.start(crawler, shardedIndex, options.readStrategy, options.watch, shardedIndex.restored());
+            // a shard process serves its only shard like a whole index
+            index = options.shard >= 0 ? shardedIndex.shard(options.shard) : null;
+            searched = new ScatterGather(shardedIndex.shards());
+        } else if (options.engine == SearcherOptions.Engine.INDEX) {
+            Optional<InvertedIndex> snapshot = loadSnapshot(options);
+            index = snapshot.isPresent() ? snapshot.get() : buildIndex(options, crawler);
+            if (options.minHashBands > 0) {
+                index.enableMinHash(options.minHashBands, options.minHashRows);
+            }
+            if (options.fuzzy > 0) {
+                index.enableFuzzy(options.fuzzy);
+            }
+            // a snapshot is brought up to date by the watcher, it registers its watches first
+            watcher = IndexWatcher.start(crawler, index, options.readStrategy, options.watch, snapshot.isPresent());
+            searched = Shard.local(index);
         }
-
-        if (args.length != 1) {
-            throw new IllegalArgumentException("Invalid number of arguments provided");
+        final InvertedIndex savedIndex = index;
+        final ShardedIndex savedShards = shardedIndex;
+        Runnable save = () -> {
+            if (savedShards != null) {
+                saveSnapshot(options, savedShards);
+            } else if (savedIndex != null) {
+                saveSnapshot(options, savedIndex);
+            }
+        };
+
+        if (options.batch != null) {
+            runBatch(options, index, pool);
+            watcher.close();
+            pool.shutdown();
+            save.run();
+            return;
         }
-
-        String directory = parseDirectoryFromArg(args[0]);
-
-        var allPathFileNames = FilesystemReader.listAllFilesRecursively(directory);
-
-        // todo validation, what if we cannot read the directory or some exception is thrown, I just unsafely unwrap...
-        var dataStructure = buildInMemoryDataStructure(allPathFileNames.get());
+        if (options.serve != null) {
+            serve(options, index, watcher, pool, save);
+            return;
+        }
+        var cache = new QueryCache(options.cacheSize);
+        var documentCache = new DocumentCache(options.documentCacheSize, options.documentCacheReferences, options.readStrategy);
 
         // If we wanted to add more characteristics to the cli, we could parse the inputByUser and have some sort of ADT
         // For instance Commands = SEARCH_0 | SEARCH_1 | QUIT
@@ -47,19 +104,51 @@ public class Searcher {
                 // if not tagged union with a switch for each command/case
                 if (rawInputByUser.equals(":quit")) {
                     System.out.println("Searcher> Closing the Searcher cli");
-                    closeAllInMemoryFileReader(dataStructure);
+                    if (watcher != null) {
+                        watcher.close();
+                        save.run();
+                    }
+                    pool.shutdown();
                     return;
                 }
 
-                var results = runAlgorithmOnDocuments(rawInputByUser, dataStructure);
+                if (rawInputByUser.equals(":cache")) {
+                    System.out.println("Searcher> " + cache);
+                    System.out.println("Searcher> " + documentCache);
+                    continue;
+                }
 
-                List<List<Algorithm.Result>> sortedResults = results.stream()
-                        .sorted()
-                        .collect(Collectors.toList());
+                if (rawInputByUser.startsWith(":stats")) {
+                    printStats(rawInputByUser.substring(":stats".length()).strip());
+                    continue;
+                }
+
+                if (rawInputByUser.startsWith(":near")) {
+                    near(index, rawInputByUser.substring(":near".length()).strip(), options.limit, pool);
+                    continue;
+                }
+
+                // :name text runs the query with another scorer, i.e. :bm25 text to find
+                Scorer scorer = options.scorer;
+                String query = rawInputByUser;
+                if (rawInputByUser.startsWith(":")) {
+                    int separator = rawInputByUser.indexOf(' ');
+                    String name = separator < 0 ? rawInputByUser.substring(1) : rawInputByUser.substring(1, separator);
+                    Optional<Scorer> selected = Scorer.byName(name);
+                    if (selected.isEmpty() || separator < 0) {
+                        System.out.println("Searcher> Invalid command " + rawInputByUser);
+                        continue;
+                    }
+                    scorer = selected.get();
+                    query = rawInputByUser.substring(separator + 1).strip();
+                }
 
-                sortedResults.stream()
-                        .limit(LIMIT_QUERY_RESULT)
-                        .forEach(System.out::println);
+                if (searched == null) {
+                    // no corpus statistics without an index, the scan only knows jaccard
+                    scan(crawler, documentCache, query, options.limit).forEach(System.out::println);
+                } else {
+                    search(searched, cache, query, scorer, options.limit, pool).forEach(System.out::println);
+                }
             }
 
         }
@@ -69,12 +158,51 @@ public class Searcher {
 
     private static void printOutInfo() {
         System.out.println("Searcher> Enter a text to run the algorithm. :quit to exit");
+        System.out.println("Searcher> :jaccard, :tfidf or :bm25 before the text to rank with another algorithm");
+        System.out.println("Searcher> :near text to find near duplicates of the text, needs --minhash");
+        System.out.println("Searcher> :cache to print the hits and misses of the query and document caches");
+        System.out.println("Searcher> :stats to print latencies and counters, :stats json to dump them, :stats reset");
         System.out.println("Searcher> :quit to exit");
     }
 
-    private static String parseDirectoryFromArg(String arg) {
-        // todo validation, any criteria on parsing the input? assuming sane and valid
-        return arg;
+    private static void printStats(String argument) {
+        if (!Metrics.enabled()) {
+            System.out.println("Searcher> Metrics are disabled, start the cli with --metrics=on");
+        }
+        switch (argument) {
+            case "":
+                System.out.print(Metrics.summary());
+                break;
+            case "json":
+                System.out.println(Metrics.toJson());
+                break;
+            case "reset":
+                Metrics.reset();
+                break;
+            default:
+                System.out.println("Searcher> Invalid command :stats " + argument);
+        }
+    }
+
+    /**
+     * Approximate jaccard through the MinHash buckets, with metrics on the exact search runs too to print the recall
+     */
+    private static void near(InvertedIndex index, String query, int limit, ForkJoinPool pool) {
+        if (index == null || index.minHash().isEmpty()) {
+            System.out.println("Searcher> :near needs the index built with --minhash, i.e. --minhash=16x4");
+            return;
+        }
+        if (query.isEmpty()) {
+            System.out.println("Searcher> Invalid command :near, expected :near text to find");
+            return;
+        }
+        List<Algorithm.Result> results = index.searchSimilar(query, limit);
+        results.forEach(System.out::println);
+        if (Metrics.enabled()) {
+            List<Algorithm.Result> exact = Shard.local(index).search(query, Scorer.JACCARD, limit, pool);
+            System.out.printf(Locale.ROOT, "Searcher> recall %.2f against the exact jaccard, %s%n",
+                    MinHash.recall(exact, results), index.minHash().get());
+        }
     }
 
     private static boolean userInputIsNotQuit(String rawInputByUser) {
@@ -82,63 +210,219 @@ public class Searcher {
     }
 
     /**
-     * From a given list of path file names, builds an InMemoryFileReader for each one
-     * Notice that if we had some sort of LRU and we wanted to keep file contents in memory and delete based
-     * on last access / modifications etc
-     * In this step we could parametrize the behaviour of our instances
+     * Server mode, runs until the jvm is stopped (ctrl-c / SIGTERM), then the snapshot is saved like on :quit
+     */
+    private static void serve(SearcherOptions options, InvertedIndex index, IndexWatcher watcher, ForkJoinPool pool, Runnable save) {
+        SearchServer server;
+        try {
+            server = new SearchServer(index, options.serve, options, pool);
+        } catch (IOException e) {
+            e.printStackTrace();
+            watcher.close();
+            pool.shutdown();
+            return;
+        }
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Searcher> Stopping the server");
+            server.close();
+            watcher.close();
+            pool.shutdown();
+            save.run();
+            stopped.countDown();
+        }));
+        server.start();
+        System.out.println("Searcher> Listening on http://" + options.serve.getHostString() + ":" + server.port() + "/search?q=");
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Batch mode, json lines go to stdout and the throughput to stderr, so the output can be piped as is
+     */
+    private static void runBatch(SearcherOptions options, InvertedIndex index, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        long queries;
+        try (BufferedReader input = options.batch.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(options.batch), StandardCharsets.UTF_8)) {
+            // closing it would close System.out, only flushed
+            Writer output = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+            queries = BatchSearch.run(index, input, output, options.scorer, options.limit, options.batchSize, pool);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf(Locale.ROOT, "Searcher> %d queries in %.3f s, %.1f queries/s%n", queries, seconds, queries / seconds);
+    }
+
+    /**
+     * Runs the query through the cache, the index version is read before searching so results computed while
+     * the index changed are never cached
+     */
+    static List<Algorithm.Result> search(InvertedIndex index, QueryCache cache, String query, Scorer scorer, int limit, ForkJoinPool pool) {
+        return search(Shard.local(index), cache, query, scorer, limit, pool);
+    }
+
+    /**
+     * Same as search(InvertedIndex, ...) on shards, results of shards whose version is unknown are not cached
+     */
+    static List<Algorithm.Result> search(Shard shard, QueryCache cache, String query, Scorer scorer, int limit, ForkJoinPool pool) {
+        long start = Metrics.start();
+        String key = QueryCache.key(query, scorer, limit);
+        long version = shard.version();
+        if (version >= 0) {
+            Optional<List<Algorithm.Result>> cached = cache.get(key, version);
+            if (cached.isPresent()) {
+                Metrics.stop(Metrics.Stage.QUERY, start);
+                return cached.get();
+            }
+        }
+        List<Algorithm.Result> results = shard.search(query, scorer, limit, pool);
+        if (version >= 0) {
+            cache.put(key, version, results);
+        }
+        Metrics.stop(Metrics.Stage.QUERY, start);
+        return results;
+    }
+
+    /**
+     * Full scan, every file the crawler finds is scored against the query, tokenized documents come from the cache
+     * Files are opened one at a time, only while their term ids are looked up
      *
-     * @param allPathFileNames
-     * @return
+     * @return the best `limit` results sorted from best to worst, documents that can not be read are skipped
      */
-    private static List<InMemoryFileReader> buildInMemoryDataStructure(List<String> allPathFileNames) {
-        List<Optional<InMemoryFileReader>> inMemoryFileReaderStructure = allPathFileNames.stream()
-                .map(InMemoryFileReader::newInstance)
-                .collect(Collectors.toList());
+    static List<Algorithm.Result> scan(FilesystemCrawler crawler, DocumentCache documentCache, String query, int limit) {
+        long start = Metrics.start();
+        List<String> paths = Collections.synchronizedList(new ArrayList<>());
+        crawler.crawl(paths::add);
 
-        // todo validation again, what if files have been exclusively been opened previously / by another thread
-        //  or something else fails
-        List<InMemoryFileReader> dataStructure = inMemoryFileReaderStructure.stream()
-                .map(Optional::get)
-                .collect(Collectors.toList());
+        int[] setByUser = documentCache.termIds(query);
+        List<Algorithm.Result> results = new ArrayList<>();
+        for (String path : paths) {
+            Optional<InMemoryFileReader> reader = InMemoryFileReader.newInstance(path);
+            if (reader.isEmpty()) {
+                continue;
+            }
+            try (InMemoryFileReader inMemoryFileReader = reader.get()) {
+                results.add(rank(setByUser, inMemoryFileReader, documentCache));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Metrics.add(Metrics.Counter.DOCUMENTS_SCORED, results.size());
+
+        long selectStart = Metrics.start();
+        results.sort(null);
+        List<Algorithm.Result> best = results.subList(0, Math.min(limit, results.size()));
+        Metrics.stop(Metrics.Stage.SELECT, selectStart);
+        Metrics.stop(Metrics.Stage.QUERY, start);
+        return best;
+    }
 
-        return dataStructure;
+    private static Algorithm.Result rank(int[] setByUser, InMemoryFileReader reader, DocumentCache documentCache) throws IOException {
+        int[] setByDocument = documentCache.termIds(reader);
+        int intersection = Algorithm.intersectionSize(setByUser, setByDocument);
+        return new Algorithm.Result(reader.fileName, Algorithm.jaccard(intersection, setByUser.length, setByDocument.length));
     }
 
     /**
-     * attempts to closes all resources
+     * Loads the index from the snapshot if there is a valid one, it is as old as the snapshot: IndexWatcher.start
+     * re-reads the files whose mtime or size changed since it was taken
      *
-     * @param dataStructure
+     * @param options parsed cli options
+     * @return the index, empty without --snapshot or if it is missing or corrupt
+     */
+    private static Optional<InvertedIndex> loadSnapshot(SearcherOptions options) {
+        return options.snapshot != null ? IndexSnapshotFile.load(options.snapshot) : Optional.empty();
+    }
+
+    /**
+     * Builds the index from scratch, files are indexed as the crawler finds them and only open while they are read,
+     * through the IndexPipeline unless --read-ahead=0 or a single core, and saves it for the next launch.
+     *
+     * @param options   parsed cli options
+     * @param crawler   decides which files get indexed
+     * @return the index, up to date with the directory
+     */
+    private static InvertedIndex buildIndex(SearcherOptions options, FilesystemCrawler crawler) {
+        // todo validation, what if we cannot read the directory or some exception is thrown, I just unsafely unwrap...
+        InvertedIndex index;
+        // a single core has nothing to overlap the reads with but the hand offs between the stages
+        if (options.readAhead > 0 && options.parallelism > 1) {
+            index = new InvertedIndex();
+            var stats = new IndexPipeline(index, options.readStrategy, options.readAhead, options.parallelism).run(crawler).get();
+            System.out.println("Searcher> Indexed " + stats);
+        } else {
+            index = InvertedIndex.build(crawler, options.readStrategy).get();
+        }
+        saveSnapshot(options, index);
+        return index;
+    }
+
+    /**
+     * Same as loadSnapshot and buildIndex, shard by shard, see ShardedIndex.loadOrBuild
      */
-    private static void closeAllInMemoryFileReader(List<InMemoryFileReader> dataStructure) {
+    private static ShardedIndex loadOrBuildShards(SearcherOptions options, FilesystemCrawler crawler, ForkJoinPool pool) {
+        // todo same as buildIndex, unsafely unwrapped if the root can not be read
+        return ShardedIndex.loadOrBuild(crawler, options.readStrategy, options.shards, options.shard, options.snapshot, pool).get();
+    }
+
+    private static void saveSnapshot(SearcherOptions options, ShardedIndex index) {
+        if (options.snapshot != null) {
+            index.save(options.snapshot);
+        }
+    }
+
+    private static void saveSnapshot(SearcherOptions options, InvertedIndex index) {
+        if (options.snapshot == null) {
+            return;
+        }
         try {
-            for (InMemoryFileReader inMemoryFileReader : dataStructure) {
-                inMemoryFileReader.close();
-            }
+            IndexSnapshotFile.save(index, options.snapshot);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-
     /**
      * attempts to run the selected algorithm on all documents in dataStructure
+     * This is the full scan, every document is read and tokenized again per query, the cli queries the
+     * InvertedIndex instead. Kept as the reference implementation the index results are compared against
      *
      * @param textInputByUser base document for all rankings
      * @param dataStructure   list of fileReader contents
      * @return a list of algorithm.result
      */
     public static Optional<List<Algorithm.Result>> runAlgorithmOnDocuments(String textInputByUser, List<InMemoryFileReader> dataStructure) {
-        String normalizedTextInputByUser = Algorithm.normalizeText(textInputByUser);
+        return runAlgorithmOnDocuments(textInputByUser, dataStructure, null);
+    }
+
+    /**
+     * Same as runAlgorithmOnDocuments(String, List) taking the tokenized documents from the cache, a document is only
+     * read again once it is evicted or modified
+     *
+     * @param documentCache null to read every document, the original behaviour
+     */
+    public static Optional<List<Algorithm.Result>> runAlgorithmOnDocuments(String textInputByUser, List<InMemoryFileReader> dataStructure,
+                                                                           DocumentCache documentCache) {
         List<Algorithm.Result> results = new ArrayList<>();
         try {
+            int[] setByUser = documentCache == null ? null : documentCache.termIds(textInputByUser);
             for (InMemoryFileReader inMemoryFileReader : dataStructure) {
+                if (documentCache != null) {
+                    results.add(rank(setByUser, inMemoryFileReader, documentCache));
+                    continue;
+                }
                 String fileContent = inMemoryFileReader.readFileContent();
                 inMemoryFileReader.resetPosition();
 
-                String normalizedFileContent = Algorithm.normalizeText(fileContent);
-
-                Algorithm.Input userInput = new Algorithm.Input("", normalizedTextInputByUser);
-                Algorithm.Input fileInput = new Algorithm.Input(inMemoryFileReader.fileName, normalizedFileContent);
+                Algorithm.Input userInput = new Algorithm.Input("", textInputByUser);
+                Algorithm.Input fileInput = new Algorithm.Input(inMemoryFileReader.fileName, fileContent);
 
                 Algorithm.Result result = Algorithm.rankSimilarity(userInput, fileInput);
                 results.add(result);
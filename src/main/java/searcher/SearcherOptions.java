@@ -0,0 +1,311 @@
+package searcher;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+public class SearcherOptions {
+
+    public enum Engine {
+        INDEX,
+        SCAN
+    }
+
+    public String directory;
+    // number of workers scoring a query, defaults to one per core
+    public int parallelism = Runtime.getRuntime().availableProcessors();
+    // number of results printed per query
+    public int limit = Searcher.LIMIT_QUERY_RESULT;
+    // how documents are read while indexing, heap is the original readFileContent, stream bounds the memory per file
+    public InMemoryFileReader.ReadStrategy readStrategy = InMemoryFileReader.ReadStrategy.HEAP;
+    // files read at once while building the index, see IndexPipeline, 0 reads and indexes them one by one
+    public int readAhead = 32;
+    // how changes to the directory reach the index once it is built
+    public IndexWatcher.Mode watch = IndexWatcher.Mode.NATIVE;
+    // ranking used by queries not picking one, see Scorer
+    public Scorer scorer = Scorer.JACCARD;
+    // memory budget of the QueryCache in bytes, 0 disables it
+    public long cacheSize = 16L * 1024L * 1024L;
+    // INDEX builds the InvertedIndex, SCAN reads the files on every query, through the DocumentCache
+    public Engine engine = Engine.INDEX;
+    // memory budget of the DocumentCache in bytes, 0 disables it, and how it holds the documents
+    public long documentCacheSize = 64L * 1024L * 1024L;
+    public DocumentCache.References documentCacheReferences = DocumentCache.References.STRONG;
+    // records latencies and counters for :stats, off by default
+    public boolean metrics = false;
+    // file with one query per line, - for stdin, runs them all and exits instead of the interactive cli
+    public String batch = null;
+    // queries evaluated together in batch mode
+    public int batchSize = 256;
+    // host:port to serve queries over http on instead of the interactive cli, see SearchServer
+    public InetSocketAddress serve = null;
+    // number of independent InvertedIndexes the tree is split in, see ShardedIndex
+    public int shards = 1;
+    // the only shard held by this process, -1 for all of them, i.e. a shard process started with --serve
+    public int shard = -1;
+    // host:port of the shard processes to query instead of indexing anything here, see RemoteShard
+    public List<InetSocketAddress> remoteShards = new ArrayList<>();
+    // bands and rows of the MinHash signatures for :near, 0 bands keeps the index without signatures, see MinHash
+    public int minHashBands = 0;
+    public int minHashRows = 0;
+    // edits allowed between an unknown query term and the known term replacing it, 0 only matches exact terms
+    public int fuzzy = 0;
+    // where the index is saved on exit and loaded from on startup, null to always build it from scratch
+    public Path snapshot = null;
+    // which files get indexed, crawl.parallelism follows parallelism
+    public FilesystemCrawler.Options crawl = new FilesystemCrawler.Options();
+
+    /**
+     * Parses the cli arguments, the directory is the only positional one and is mandatory
+     * Options follow the --name=value form, i.e. Searcher filesystem --parallelism=4
+     * Same as before, I throw IllegalArgumentException and let the cli die, nothing to recover from here
+     *
+     * @param args raw arguments of main
+     * @return parsed options
+     */
+    public static SearcherOptions parse(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("No directory given to index.");
+        }
+
+        SearcherOptions options = new SearcherOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                if (options.directory != null) {
+                    throw new IllegalArgumentException("Invalid number of arguments provided");
+                }
+                // todo validation, any criteria on parsing the input? assuming sane and valid
+                options.directory = arg;
+                continue;
+            }
+
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid option " + arg + ", expected --name=value");
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "parallelism":
+                    options.parallelism = parsePositiveInt(name, value);
+                    break;
+                case "limit":
+                    options.limit = parsePositiveInt(name, value);
+                    break;
+                case "read":
+                    options.readStrategy = parseEnum(InMemoryFileReader.ReadStrategy.class, name, value);
+                    break;
+                case "read-ahead":
+                    options.readAhead = value.equals("0") ? 0 : parsePositiveInt(name, value);
+                    break;
+                case "include":
+                    options.crawl.includes.addAll(Arrays.asList(value.split(",")));
+                    break;
+                case "exclude":
+                    options.crawl.excludes.addAll(Arrays.asList(value.split(",")));
+                    break;
+                case "max-depth":
+                    options.crawl.maxDepth = parsePositiveInt(name, value);
+                    break;
+                case "max-file-size":
+                    options.crawl.maxFileSize = parseSize(name, value);
+                    break;
+                case "symlinks":
+                    options.crawl.symlinks = parseEnum(FilesystemCrawler.SymlinkPolicy.class, name, value);
+                    break;
+                case "snapshot":
+                    options.snapshot = Paths.get(value);
+                    break;
+                case "scorer":
+                    options.scorer = Scorer.byName(value).orElseThrow(() -> new IllegalArgumentException(
+                            "Option --" + name + " expects one of " + scorerNames() + ", got " + value));
+                    break;
+                case "cache-size":
+                    options.cacheSize = value.equals("0") ? 0L : parseSize(name, value);
+                    break;
+                case "engine":
+                    options.engine = parseEnum(Engine.class, name, value);
+                    break;
+                case "document-cache":
+                    options.documentCacheSize = value.equals("0") ? 0L : parseSize(name, value);
+                    break;
+                case "document-cache-references":
+                    options.documentCacheReferences = parseEnum(DocumentCache.References.class, name, value);
+                    break;
+                case "metrics":
+                    options.metrics = parseSwitch(name, value);
+                    break;
+                case "batch":
+                    options.batch = value;
+                    break;
+                case "batch-size":
+                    options.batchSize = parsePositiveInt(name, value);
+                    if (options.batchSize > BatchSearch.MAX_BATCH_SIZE) {
+                        throw new IllegalArgumentException("Option --batch-size expects at most " + BatchSearch.MAX_BATCH_SIZE
+                                + " queries, got " + value);
+                    }
+                    break;
+                case "serve":
+                    options.serve = parseAddress(name, value);
+                    break;
+                case "shards":
+                    options.shards = parsePositiveInt(name, value);
+                    break;
+                case "shard":
+                    options.shard = value.equals("0") ? 0 : parsePositiveInt(name, value);
+                    break;
+                case "remote-shards":
+                    for (String address : value.split(",")) {
+                        options.remoteShards.add(parseAddress(name, address));
+                    }
+                    break;
+                case "minhash":
+                    int[] minHash = parseBandsByRows(name, value);
+                    options.minHashBands = minHash[0];
+                    options.minHashRows = minHash[1];
+                    break;
+                case "fuzzy":
+                    options.fuzzy = value.equals("0") ? 0 : parsePositiveInt(name, value);
+                    if (options.fuzzy > TermTrigrams.MAX_DISTANCE) {
+                        throw new IllegalArgumentException("Option --fuzzy expects at most " + TermTrigrams.MAX_DISTANCE
+                                + " edits, got " + value);
+                    }
+                    break;
+                case "watch":
+                    options.watch = parseEnum(IndexWatcher.Mode.class, name, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        if (options.directory == null) {
+            throw new IllegalArgumentException("No directory given to index.");
+        }
+        if (options.batch != null && options.engine != Engine.INDEX) {
+            throw new IllegalArgumentException("Option --batch needs --engine=index");
+        }
+        if (options.serve != null && options.engine != Engine.INDEX) {
+            throw new IllegalArgumentException("Option --serve needs --engine=index");
+        }
+        if (options.shard >= options.shards) {
+            throw new IllegalArgumentException("Option --shard expects a number below --shards, got " + options.shard);
+        }
+        boolean sharded = options.shards > 1 || !options.remoteShards.isEmpty();
+        if (sharded && options.engine != Engine.INDEX) {
+            throw new IllegalArgumentException("Options --shards and --remote-shards need --engine=index");
+        }
+        if (sharded && options.batch != null) {
+            throw new IllegalArgumentException("Option --batch runs on a single index, it does not support shards");
+        }
+        if (options.serve != null && (options.shards > 1 && options.shard < 0 || !options.remoteShards.isEmpty())) {
+            throw new IllegalArgumentException("Option --serve serves a single index, with --shards pick one with --shard");
+        }
+        if (options.shards > 1 && !options.remoteShards.isEmpty()) {
+            throw new IllegalArgumentException("Option --remote-shards queries other processes, it does not index, drop --shards");
+        }
+        if (options.minHashBands > 0 && (options.engine != Engine.INDEX || sharded)) {
+            throw new IllegalArgumentException("Option --minhash needs --engine=index on a single index, without shards");
+        }
+        if (options.fuzzy > 0 && (options.engine != Engine.INDEX || sharded)) {
+            throw new IllegalArgumentException("Option --fuzzy needs --engine=index on a single index, without shards");
+        }
+        options.crawl.parallelism = options.parallelism;
+        return options;
+    }
+
+    private static String scorerNames() {
+        return Scorer.ALL.stream().map(Scorer::name).collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    /**
+     * port or host:port, only the port binds to localhost, the server is meant to be local
+     */
+    private static InetSocketAddress parseAddress(String name, String value) {
+        int separator = value.lastIndexOf(':');
+        String host = separator < 0 ? "localhost" : value.substring(0, separator);
+        String port = value.substring(separator + 1);
+        try {
+            int parsed = Integer.parseInt(port);
+            if (parsed >= 0 && parsed <= 65535 && !host.isEmpty()) {
+                return new InetSocketAddress(host, parsed);
+            }
+        } catch (NumberFormatException ignored) {
+            // same message as an out of range port below
+        }
+        throw new IllegalArgumentException("Option --" + name + " expects port or host:port, got " + value);
+    }
+
+    private static boolean parseSwitch(String name, String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "on":
+                return true;
+            case "off":
+                return false;
+            default:
+                throw new IllegalArgumentException("Option --" + name + " expects on or off, got " + value);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects one of "
+                    + Arrays.toString(type.getEnumConstants()).toLowerCase(Locale.ROOT) + ", got " + value);
+        }
+    }
+
+    /**
+     * Bytes, with an optional k / m / g suffix, i.e. 10m
+     */
+    private static long parseSize(String name, String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        long unit = 1L;
+        if (lower.endsWith("k")) {
+            unit = 1024L;
+        } else if (lower.endsWith("m")) {
+            unit = 1024L * 1024L;
+        } else if (lower.endsWith("g")) {
+            unit = 1024L * 1024L * 1024L;
+        }
+        String digits = unit == 1L ? lower : lower.substring(0, lower.length() - 1);
+        try {
+            long parsed = Long.parseLong(digits);
+            if (parsed > 0) {
+                return parsed * unit;
+            }
+        } catch (NumberFormatException ignored) {
+            // same message as a non positive number below
+        }
+        throw new IllegalArgumentException("Option --" + name + " expects a positive size like 512k or 10m, got " + value);
+    }
+
+    /**
+     * bands x rows, i.e. 16x4
+     */
+    private static int[] parseBandsByRows(String name, String value) {
+        int separator = value.toLowerCase(Locale.ROOT).indexOf('x');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Option --" + name + " expects bands x rows like 16x4, got " + value);
+        }
+        return new int[]{parsePositiveInt(name, value.substring(0, separator)), parsePositiveInt(name, value.substring(separator + 1))};
+    }
+
+    private static int parsePositiveInt(String name, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // same message as a non positive number below
+        }
+        throw new IllegalArgumentException("Option --" + name + " expects a positive number, got " + value);
+    }
+}
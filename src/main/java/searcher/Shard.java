@@ -0,0 +1,39 @@
+package searcher;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Part of the corpus a query is sent to, either an InvertedIndex of this process or a shard served by another
+ * process (RemoteShard). ScatterGather runs a query on several of them and merges what they return.
+ */
+public interface Shard {
+
+    /**
+     * @param limit number of results we are interested in, the shard returns at most this many
+     * @return the best `limit` results of the shard, sorted from best to worst
+     */
+    List<Algorithm.Result> search(String textInputByUser, Scorer scorer, int limit, ForkJoinPool pool);
+
+    /**
+     * @return grows on every change of the documents of the shard, -1 if unknown, results are then never cached
+     */
+    long version();
+
+    /**
+     * @return the index searched with ParallelSearch
+     */
+    static Shard local(InvertedIndex index) {
+        return new Shard() {
+            @Override
+            public List<Algorithm.Result> search(String textInputByUser, Scorer scorer, int limit, ForkJoinPool pool) {
+                return ParallelSearch.search(index, textInputByUser, scorer, limit, pool);
+            }
+
+            @Override
+            public long version() {
+                return index.version();
+            }
+        };
+    }
+}
@@ -0,0 +1,218 @@
+package searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class ShardedIndex implements IndexedFiles {
+    // absolute and normalized, the paths of the files are hashed relative to it
+    private final Path root;
+    // shard -> its index, null for the shards other processes hold
+    private final InvertedIndex[] shards;
+    // some shards were loaded from their snapshot by loadOrBuild
+    private boolean restored = false;
+
+    /**
+     * A ShardedIndex splits the tree among `count` independent InvertedIndexes, a file goes to the shard of the hash
+     * of its path relative to root, see shardOf. Each shard has its own dictionary, lock, version and snapshot file: a change only locks the shard
+     * of the file, a shard is rebuilt on its own when its snapshot is missing or corrupt, and shards are built in
+     * parallel. Queries go through a ScatterGather of shards().
+     * A process can hold a single shard (--shard=i), the IndexWatcher then ignores the files of the other ones, and
+     * serve it to the process querying all of them, see RemoteShard.
+     * Every process must agree on the shard of every file, whatever root it was started with: `docs`, `./docs/` and
+     * `/home/me/docs` are the same root, and a file is the same file however the crawler or the watcher spell it.
+     *
+     * @param root  of the tree, the one of the crawler
+     * @param count number of shards the tree is split in, the same in every process
+     * @param owned the only shard this process holds, -1 for all of them
+     */
+    public ShardedIndex(String root, int count, int owned) {
+        if (count <= 0 || owned < -1 || owned >= count) {
+            throw new IllegalArgumentException("Invalid shard " + owned + " of " + count);
+        }
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.shards = new InvertedIndex[count];
+        for (int shard = 0; shard < count; shard++) {
+            if (owned < 0 || shard == owned) {
+                shards[shard] = new InvertedIndex();
+            }
+        }
+    }
+
+    /**
+     * @return shard of the file, the String.hashCode of its normalized path relative to root with / separators, it is
+     * specified so every process agrees on it, whatever the spelling of root and path
+     */
+    public static int shardOf(String root, String path, int count) {
+        return Math.floorMod(relativePath(Paths.get(root).toAbsolutePath().normalize(), path).hashCode(), count);
+    }
+
+    private int shardOf(String path) {
+        return Math.floorMod(relativePath(root, path).hashCode(), shards.length);
+    }
+
+    private static String relativePath(Path root, String path) {
+        Path file = Paths.get(path).toAbsolutePath().normalize();
+        // a file out of root has no relative path, its absolute one is the same for every process of the machine
+        Path relative = file.startsWith(root) ? root.relativize(file) : file;
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Loads every shard of this process from its snapshot, see snapshotOf, and builds the ones that could not be
+     * loaded from the files of the tree, each one on its own worker. Rebuilt shards are saved for the next launch,
+     * loaded ones are as old as their snapshot, see restored().
+     *
+     * @param snapshot null to always build every shard from scratch
+     * @return the index, empty if the root directory itself can not be read
+     */
+    public static Optional<ShardedIndex> loadOrBuild(FilesystemCrawler crawler, InMemoryFileReader.ReadStrategy strategy,
+                                                     int count, int owned, Path snapshot, ForkJoinPool pool) {
+        ShardedIndex index = new ShardedIndex(crawler.root(), count, owned);
+        boolean[] loaded = new boolean[count];
+        if (snapshot != null) {
+            for (int shard : index.ownedShards()) {
+                Optional<InvertedIndex> restored = IndexSnapshotFile.load(snapshotOf(snapshot, shard));
+                if (restored.isPresent()) {
+                    index.shards[shard] = restored.get();
+                    loaded[shard] = true;
+                }
+            }
+        }
+
+        List<List<String>> paths = new ArrayList<>();
+        for (int shard = 0; shard < count; shard++) {
+            paths.add(new ArrayList<>());
+        }
+        // a single listing of the tree, the files of every shard to build are read in parallel afterwards
+        boolean crawled = crawler.crawl(path -> {
+            int shard = index.shardOf(path);
+            if (index.shards[shard] != null && !loaded[shard]) {
+                paths.get(shard).add(path);
+            }
+        });
+        if (!crawled) {
+            return Optional.empty();
+        }
+        pool.submit(() -> IntStream.of(index.ownedShards()).parallel()
+                .filter(shard -> !loaded[shard])
+                .forEach(shard -> index.shards[shard] = InvertedIndex.build(paths.get(shard), strategy))).join();
+
+        index.restored = IntStream.of(index.ownedShards()).anyMatch(shard -> loaded[shard]);
+        if (snapshot != null) {
+            for (int shard : index.ownedShards()) {
+                if (!loaded[shard]) {
+                    index.save(shard, snapshot);
+                }
+            }
+        }
+        return Optional.of(index);
+    }
+
+    /**
+     * Saves every shard of this process to its own snapshot file, a shard failing to save does not stop the others
+     */
+    public void save(Path snapshot) {
+        for (int shard : ownedShards()) {
+            save(shard, snapshot);
+        }
+    }
+
+    private void save(int shard, Path snapshot) {
+        try {
+            IndexSnapshotFile.save(shards[shard], snapshotOf(snapshot, shard));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return snapshot file of the shard, the --snapshot path with the shard number appended, i.e. index.snapshot.3
+     */
+    static Path snapshotOf(Path snapshot, int shard) {
+        return snapshot.resolveSibling(snapshot.getFileName() + "." + shard);
+    }
+
+    /**
+     * @return the shards of this process, to be queried through a ScatterGather
+     */
+    public List<Shard> shards() {
+        List<Shard> local = new ArrayList<>();
+        for (int shard : ownedShards()) {
+            local.add(Shard.local(shards[shard]));
+        }
+        return local;
+    }
+
+    /**
+     * @return index of the shard, null if another process holds it
+     */
+    public InvertedIndex shard(int shard) {
+        return shards[shard];
+    }
+
+    public int count() {
+        return shards.length;
+    }
+
+    /**
+     * @return whether some shards were loaded from a snapshot, they may be behind the tree until the IndexWatcher
+     * compares them with it, see IndexWatcher.start
+     */
+    public boolean restored() {
+        return restored;
+    }
+
+    private int[] ownedShards() {
+        return IntStream.range(0, shards.length).filter(shard -> shards[shard] != null).toArray();
+    }
+
+    /**
+     * @return number of live documents over the shards of this process
+     */
+    public int liveSize() {
+        int size = 0;
+        for (int shard : ownedShards()) {
+            size += shards[shard].liveSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void reindex(String path, InMemoryFileReader.ReadStrategy strategy) throws IOException {
+        InvertedIndex shard = shards[shardOf(path)];
+        if (shard != null) {
+            shard.indexFile(path, strategy);
+        }
+    }
+
+    @Override
+    public boolean removeDocument(String fileName) {
+        InvertedIndex shard = shards[shardOf(fileName)];
+        return shard != null && shard.removeDocument(fileName);
+    }
+
+    @Override
+    public List<String> liveFileNames() {
+        List<String> fileNames = new ArrayList<>();
+        for (int shard : ownedShards()) {
+            fileNames.addAll(shards[shard].liveFileNames());
+        }
+        return fileNames;
+    }
+
+    /**
+     * Files of the shards of other processes are always up to date, so they are never read
+     */
+    @Override
+    public boolean isUpToDate(String fileName, long modifiedTime, long fileSize) {
+        InvertedIndex shard = shards[shardOf(fileName)];
+        return shard == null || shard.isUpToDate(fileName, modifiedTime, fileSize);
+    }
+}
@@ -0,0 +1,369 @@
+package searcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class TermDictionary {
+    // all the terms one after the other, term id -> [offsets[id], offsets[id + 1])
+    private char[] chars = new char[1024];
+    private int[] offsets = new int[]{0};
+    private int[] hashes = new int[0];
+    private int size = 0;
+
+    // open addressing table, slot -> term id + 1, 0 means empty slot
+    private int[] table = new int[64];
+
+    // the document being interned, counted token by token so its size never matters, only its distinct terms do
+    // term id -> occurrences in the document, only the ids in distinct are not 0, reset after every document
+    private int[] counts = new int[64];
+    // distinct term ids of the document, in order of first appearance
+    private int[] distinct = new int[256];
+    private int distinctLength = 0;
+    private long tokens = 0;
+
+    /**
+     * A TermDictionary maps every distinct token to a dense int id, once.
+     * After that documents and queries are just int[] and comparing terms is comparing ints, no boxing,
+     * no String per token and no rehashing of strings on every set operation.
+     * Lookups take the char[] buffer of the Tokenizer directly so resolving a known token allocates nothing.
+     * Not thread safe for writes, it is filled while indexing and only read while querying.
+     */
+    public TermDictionary() {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a dictionary with the same terms and ids, the arrays are copied as they are, nothing is hashed again
+     */
+    public TermDictionary copy() {
+        TermDictionary copy = new TermDictionary();
+        copy.chars = Arrays.copyOf(chars, chars.length);
+        copy.offsets = Arrays.copyOf(offsets, offsets.length);
+        copy.hashes = Arrays.copyOf(hashes, hashes.length);
+        copy.table = Arrays.copyOf(table, table.length);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * @return the id of the token, -1 if the dictionary does not know it
+     */
+    public int lookup(char[] buffer, int length) {
+        int hash = hash(buffer, length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && sameTerm(id, buffer, length)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the id of the token, a new one is assigned if the dictionary did not know it
+     */
+    public int intern(char[] buffer, int length) {
+        int hash = hash(buffer, length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && sameTerm(id, buffer, length)) {
+                return id;
+            }
+        }
+
+        int id = size++;
+        int start = offsets[id];
+        if (start + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, start + length));
+        }
+        System.arraycopy(buffer, 0, chars, start, length);
+        if (id == hashes.length) {
+            int capacity = Math.max(16, hashes.length * 2);
+            hashes = Arrays.copyOf(hashes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+        hashes[id] = hash;
+        offsets[id + 1] = start + length;
+        table[slot] = id + 1;
+
+        // keep the load factor under 1/2, probing stays short
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Tokenizes a document interning all its tokens
+     *
+     * @param text      raw document
+     * @param tokenizer reused between calls, only its buffer matters
+     * @return sorted distinct term ids of the document
+     */
+    public int[] internAll(CharSequence text, Tokenizer tokenizer) {
+        tokenizer.tokenize(text, this::count);
+        return countedTerms();
+    }
+
+    /**
+     * Same as internAll(CharSequence) tokenizing the file as it is read, see InMemoryFileReader.tokenize
+     *
+     * @return sorted distinct term ids of the file
+     * @throws IOException if the file can not be read
+     */
+    public int[] internAll(InMemoryFileReader reader, InMemoryFileReader.ReadStrategy strategy, Tokenizer tokenizer) throws IOException {
+        try {
+            reader.tokenize(strategy, tokenizer, this::count);
+        } catch (IOException | RuntimeException e) {
+            tokenizer.finish((buffer, length) -> {
+            });
+            reset();
+            throw e;
+        }
+        return countedTerms();
+    }
+
+    /**
+     * Same as internAll(CharSequence) keeping how many times each term appears, what TF-IDF and BM25 need
+     *
+     * @return sorted distinct term ids of the document and their frequencies
+     */
+    public TermCounts countAll(CharSequence text, Tokenizer tokenizer) {
+        tokenizer.tokenize(text, this::count);
+        return countedFrequencies();
+    }
+
+    /**
+     * Same as countAll(CharSequence) tokenizing the file as it is read, see InMemoryFileReader.tokenize
+     *
+     * @throws IOException if the file can not be read
+     */
+    public TermCounts countAll(InMemoryFileReader reader, InMemoryFileReader.ReadStrategy strategy, Tokenizer tokenizer) throws IOException {
+        try {
+            reader.tokenize(strategy, tokenizer, this::count);
+        } catch (IOException | RuntimeException e) {
+            // half a document counted, and maybe half a token pending in the tokenizer, both dropped
+            tokenizer.finish((buffer, length) -> {
+            });
+            reset();
+            throw e;
+        }
+        return countedFrequencies();
+    }
+
+    /**
+     * Same as countAll(CharSequence) tokenizing bytes already read, i.e. a whole file read by the IndexPipeline
+     *
+     * @param bytes from its position to its limit, see Tokenizer.feed
+     */
+    public TermCounts countAll(ByteBuffer bytes, Tokenizer tokenizer) {
+        tokenizer.feed(bytes, this::count);
+        tokenizer.finish(this::count);
+        return countedFrequencies();
+    }
+
+    /**
+     * Adds a token of the document being interned, memory only grows with its new distinct terms
+     */
+    private void count(char[] buffer, int length) {
+        int id = intern(buffer, length);
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(counts.length * 2, id + 1));
+        }
+        int count = counts[id];
+        if (count == 0) {
+            if (distinctLength == distinct.length) {
+                distinct = Arrays.copyOf(distinct, distinctLength * 2);
+            }
+            distinct[distinctLength++] = id;
+        }
+        // a term of a multi GB file can appear more than Integer.MAX_VALUE times, its frequency stays at the max
+        if (count != Integer.MAX_VALUE) {
+            counts[id] = count + 1;
+        }
+        tokens++;
+    }
+
+    /**
+     * @return sorted distinct term ids of the document counted so far, the dictionary is then ready for the next one
+     */
+    private int[] countedTerms() {
+        Arrays.sort(distinct, 0, distinctLength);
+        int[] termIds = Arrays.copyOf(distinct, distinctLength);
+        reset();
+        return termIds;
+    }
+
+    /**
+     * Same as countedTerms() with the frequency of every term
+     */
+    private TermCounts countedFrequencies() {
+        Arrays.sort(distinct, 0, distinctLength);
+        int[] termIds = Arrays.copyOf(distinct, distinctLength);
+        int[] frequencies = new int[distinctLength];
+        for (int i = 0; i < distinctLength; i++) {
+            frequencies[i] = counts[termIds[i]];
+        }
+        long length = tokens;
+        reset();
+        return new TermCounts(termIds, frequencies, length);
+    }
+
+    private void reset() {
+        for (int i = 0; i < distinctLength; i++) {
+            counts[distinct[i]] = 0;
+        }
+        distinctLength = 0;
+        Metrics.add(Metrics.Counter.TOKENS, tokens);
+        tokens = 0;
+    }
+
+    /**
+     * Sorts the first length ids in place and returns a copy without duplicates
+     */
+    public static int[] sortedDistinct(int[] ids, int length) {
+        if (length == 0) {
+            return new int[0];
+        }
+        Arrays.sort(ids, 0, length);
+        int distinct = 1;
+        for (int i = 1; i < length; i++) {
+            if (ids[i] != ids[distinct - 1]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    /**
+     * Term ids of a document with the number of times each one appears
+     * termIds are sorted and distinct, frequencies[i] is the count of termIds[i], length the number of tokens
+     * A frequency saturates at Integer.MAX_VALUE, the length is a long and stays exact
+     */
+    public static class TermCounts {
+        public final int[] termIds;
+        public final int[] frequencies;
+        public final long length;
+
+        public TermCounts(int[] termIds, int[] frequencies) {
+            this(termIds, frequencies, Arrays.stream(frequencies).asLongStream().sum());
+        }
+
+        public TermCounts(int[] termIds, int[] frequencies, long length) {
+            this.termIds = termIds;
+            this.frequencies = frequencies;
+            this.length = length;
+        }
+
+        /**
+         * @param ids new id of every term id, i.e. the ids of another TermDictionary for the same terms
+         * @return same counts with every term id replaced by its new id, sorted again, frequencies along
+         */
+        public TermCounts remap(int[] ids) {
+            long[] packed = new long[termIds.length];
+            for (int i = 0; i < packed.length; i++) {
+                packed[i] = ((long) ids[termIds[i]] << 32) | frequencies[i];
+            }
+            Arrays.sort(packed);
+            int[] remappedIds = new int[packed.length];
+            int[] remappedFrequencies = new int[packed.length];
+            for (int i = 0; i < packed.length; i++) {
+                remappedIds[i] = (int) (packed[i] >>> 32);
+                remappedFrequencies[i] = (int) packed[i];
+            }
+            return new TermCounts(remappedIds, remappedFrequencies, length);
+        }
+    }
+
+    /**
+     * Sorts the first length ids in place and counts the runs of equal ids
+     */
+    public static TermCounts sortedCounts(int[] ids, int length) {
+        if (length == 0) {
+            return new TermCounts(new int[0], new int[0]);
+        }
+        Arrays.sort(ids, 0, length);
+        int[] frequencies = new int[length];
+        int distinct = 0;
+        frequencies[0] = 1;
+        for (int i = 1; i < length; i++) {
+            if (ids[i] != ids[distinct]) {
+                ids[++distinct] = ids[i];
+            }
+            frequencies[distinct]++;
+        }
+        return new TermCounts(Arrays.copyOf(ids, distinct + 1), Arrays.copyOf(frequencies, distinct + 1));
+    }
+
+    public int lookup(String term) {
+        return lookup(term.toCharArray(), term.length());
+    }
+
+    public String term(int id) {
+        return new String(chars, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    public int length(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * Copies the chars of the term into target, no String, it must have room for length(id) chars
+     *
+     * @return length of the term
+     */
+    public int copy(int id, char[] target) {
+        int length = offsets[id + 1] - offsets[id];
+        System.arraycopy(chars, offsets[id], target, 0, length);
+        return length;
+    }
+
+    private boolean sameTerm(int id, char[] buffer, int length) {
+        int start = offsets[id];
+        if (offsets[id + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int mask = newTable.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = id + 1;
+        }
+        table = newTable;
+    }
+
+    /**
+     * @return hash of the term, the same hash(char[], int) gives for its chars
+     */
+    int hash(int id) {
+        return hashes[id];
+    }
+
+    static int hash(char[] buffer, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        // spread the bits, we only use the lowest ones to pick a slot
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,361 @@
+package searcher;
+
+import java.util.Arrays;
+
+public class TermTrigrams {
+    // edits allowed at most, whatever the length of the token
+    public static final int MAX_DISTANCE = 3;
+    // a token gets one edit per CHARS_PER_EDIT chars, below that a trigram shared by two terms tells nothing
+    static final int CHARS_PER_EDIT = 3;
+    // token chars are [a-z0-9], 0 is the padding around a term and anything else
+    private static final int ALPHABET = 37;
+    // trigrams are kept by position in the term too, the ones from POSITIONS - 1 on share the last slot
+    static final int POSITIONS = 16;
+    // a candidate has to show up that many times in the shortest lists, or it is not worth the binary searches
+    static final int MIN_SHARED = 2;
+    // postings merged at most to find the candidates, above that the token is expanded with one edit less, see expand
+    static final int MAX_CANDIDATES = 1 << 15;
+
+    public final int maxDistance;
+    // slot of a trigram code and a position -> ids of the terms with that trigram there, in increasing order, null if
+    // none has it
+    private final int[][] lists = new int[ALPHABET * ALPHABET * ALPHABET * POSITIONS][];
+    private final int[] sizes = new int[ALPHABET * ALPHABET * ALPHABET * POSITIONS];
+    // terms indexed so far, every term id below it
+    private int size = 0;
+    private char[] term = new char[32];
+
+    /**
+     * A TermTrigrams finds the terms of the vocabulary close to a token, within a few edits, without comparing the
+     * token to every term: "serch" finds "search", a fragment like "indx" finds "index".
+     * Every term is padded with two blanks at both ends and cut in trigrams, "$$search$$" has length + 2 of them, each
+     * trigram and position keeps the ids of the terms with that trigram there. An edit changes at most 3 trigrams and
+     * shifts the others by one position at most, so two terms within d edits share at least max(length) + 2 - 3 * d
+     * trigrams, each at most d positions away from where it is in the other term. Only terms sharing that many with
+     * the token can match, so they show up at least MIN_SHARED times in the shortest lists of its trigrams, all but
+     * the few longest ones. Those lists are merged, a term found too few times is dropped right away, then its length
+     * is checked and the trigrams it shares in the longest lists are counted by binary search, only the survivors run
+     * the edit distance itself. With one edit it takes ~ 0.1 ms on a million terms, see ExpandBenchmark, with two
+     * edits there are 10 times more candidates and matches.
+     * The distance allowed grows with the token, one edit per 3 chars up to maxDistance: tokens of less than 3 chars
+     * are never expanded, there would be no trigram left to filter on. A swap of two letters counts as two edits.
+     * Every edit allowed widens the trigram windows and lowers the trigrams a match must share, the candidates to
+     * merge grow ~ 10 times per edit, so expand takes one edit less whenever they are more than MAX_CANDIDATES, down
+     * to one edit: on big vocabularies 2 edits only apply to tokens made of rare trigrams, it keeps every expansion
+     * under ~ 0.5 ms on 4 million terms.
+     * A word fragment is a prefix of its terms rather than a few edits away, "sear" is 2 edits from "search", complete
+     * finds the terms starting with a token from the trigrams of its first chars, at their exact positions.
+     * Memory is an int per trigram per term, ~ 10 ints per term on natural vocabularies, plus 6 MB of slots.
+     * Not thread safe for writes, the InvertedIndex adds terms under its write lock, expand only reads.
+     *
+     * @param maxDistance edits allowed for long tokens, from 1 to MAX_DISTANCE
+     */
+    public TermTrigrams(int maxDistance) {
+        if (maxDistance <= 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Invalid edit distance " + maxDistance + ", expected 1 to " + MAX_DISTANCE);
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @return number of terms indexed
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Indexes the terms of the dictionary added since the last call, term ids must never change
+     */
+    public void add(TermDictionary terms) {
+        int[] grams = new int[34];
+        for (; size < terms.size(); size++) {
+            int length = terms.length(size);
+            if (length > term.length) {
+                term = new char[Math.max(term.length * 2, length)];
+            }
+            if (length + 2 > grams.length) {
+                grams = new int[Math.max(grams.length * 2, length + 2)];
+            }
+            terms.copy(size, term);
+            int count = grams(term, length, grams);
+            for (int i = 0; i < count; i++) {
+                append(slot(grams[i], i), size);
+            }
+        }
+    }
+
+    /**
+     * @return edits allowed for a token of that length, 0 if it is too short to be expanded
+     */
+    public int distance(int length) {
+        return Math.min(maxDistance, length / CHARS_PER_EDIT);
+    }
+
+    /**
+     * Callers must hold at least the read lock of the index the dictionary belongs to
+     *
+     * @param terms  the dictionary indexed by add
+     * @param token  chars of the token, [a-z0-9] as the Tokenizer gives them
+     * @param length of the token
+     * @return (distance << 32 | term id) of every indexed term within distance(length) edits of the token, or fewer
+     * if that many edits find more than MAX_CANDIDATES candidates, the token itself included if it is a term, sorted
+     * from the closest
+     */
+    public long[] expand(TermDictionary terms, char[] token, int length) {
+        int distance = distance(length);
+        if (distance == 0) {
+            return new long[0];
+        }
+
+        int count = length + 2;
+        int[] grams = new int[count];
+        grams(token, length, grams);
+        int[] firstSlots = new int[count];
+        int[] lastSlots = new int[count];
+        int[] groupSizes = new int[count];
+        Integer[] order = new Integer[count];
+        int threshold;
+        int chosen;
+        int candidateCount;
+        for (; ; distance--) {
+            // the trigram at position i of a match is at most distance positions away in the term, so position i of
+            // the token only looks at the slots of its trigram from i - distance to i + distance, next to each other
+            for (int i = 0; i < count; i++) {
+                firstSlots[i] = slot(grams[i], Math.max(0, i - distance));
+                lastSlots[i] = slot(grams[i], i + distance);
+                groupSizes[i] = 0;
+                for (int slot = firstSlots[i]; slot <= lastSlots[i]; slot++) {
+                    groupSizes[i] += sizes[slot];
+                }
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(groupSizes[a], groupSizes[b]));
+
+            // a match shares at least threshold positions with the token, so it shows up MIN_SHARED times in the
+            // shortest groups as long as the ones left out are less than threshold - MIN_SHARED + 1
+            threshold = count - CHARS_PER_EDIT * distance;
+            chosen = 0;
+            candidateCount = 0;
+            for (; chosen < count && count - chosen > threshold - MIN_SHARED; chosen++) {
+                candidateCount += groupSizes[order[chosen]];
+            }
+            if (candidateCount <= MAX_CANDIDATES || distance == 1) {
+                break;
+            }
+        }
+        int remaining = count - chosen;
+        int[] candidates = new int[candidateCount];
+        candidateCount = 0;
+        for (int g = 0; g < chosen; g++) {
+            for (int slot = firstSlots[order[g]]; slot <= lastSlots[order[g]]; slot++) {
+                if (sizes[slot] > 0) {
+                    System.arraycopy(lists[slot], 0, candidates, candidateCount, sizes[slot]);
+                    candidateCount += sizes[slot];
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, candidateCount);
+
+        long[] matches = new long[16];
+        int matchCount = 0;
+        char[] candidate = new char[length + distance];
+        int[][] rows = new int[2][length + distance + 1];
+        for (int i = 0, end; i < candidateCount; i = end) {
+            int termId = candidates[i];
+            for (end = i + 1; end < candidateCount && candidates[end] == termId; end++) {
+            }
+            // positions shared with the token, counted in the groups left out only if the shortest ones are not enough
+            int shared = end - i;
+            if (shared + remaining < threshold) {
+                continue;
+            }
+            int candidateLength = terms.length(termId);
+            if (Math.abs(candidateLength - length) > distance) {
+                continue;
+            }
+            int needed = Math.max(length, candidateLength) + 2 - CHARS_PER_EDIT * distance;
+            for (int g = chosen; g < count && shared < needed && shared + count - g >= needed; g++) {
+                if (contains(firstSlots[order[g]], lastSlots[order[g]], termId)) {
+                    shared++;
+                }
+            }
+            if (shared < needed) {
+                continue;
+            }
+            terms.copy(termId, candidate);
+            int edits = editDistance(token, length, candidate, candidateLength, distance, rows);
+            if (edits <= distance) {
+                if (matchCount == matches.length) {
+                    matches = Arrays.copyOf(matches, matchCount * 2);
+                }
+                matches[matchCount++] = (long) edits << 32 | termId;
+            }
+        }
+        long[] sorted = Arrays.copyOf(matches, matchCount);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Callers must hold at least the read lock of the index the dictionary belongs to
+     *
+     * @param terms  the dictionary indexed by add
+     * @param token  chars of the token, a word fragment, [a-z0-9] as the Tokenizer gives them
+     * @param length of the token, tokens of less than 3 chars have no completion
+     * @return (chars added << 32 | term id) of every indexed term starting with the token and longer than it, sorted
+     * from the shortest
+     */
+    public long[] complete(TermDictionary terms, char[] token, int length) {
+        if (length < CHARS_PER_EDIT) {
+            return new long[0];
+        }
+        // the first length trigrams of a term only depend on its first length chars, a completion has the same ones
+        // at the same positions, every candidate comes from the shortest of their slots
+        int[] grams = new int[length + 2];
+        grams(token, length, grams);
+        int[] slots = new int[length];
+        for (int i = 0; i < length; i++) {
+            slots[i] = slot(grams[i], i);
+        }
+        int shortest = 0;
+        for (int i = 1; i < length; i++) {
+            if (sizes[slots[i]] < sizes[slots[shortest]]) {
+                shortest = i;
+            }
+        }
+        if (sizes[slots[shortest]] == 0) {
+            return new long[0];
+        }
+
+        long[] matches = new long[16];
+        int matchCount = 0;
+        char[] candidate = new char[Math.max(32, length)];
+        int[] list = lists[slots[shortest]];
+        for (int c = 0; c < sizes[slots[shortest]]; c++) {
+            int termId = list[c];
+            int candidateLength = terms.length(termId);
+            if (candidateLength <= length || !containedInAll(slots, shortest, termId)) {
+                continue;
+            }
+            if (candidateLength > candidate.length) {
+                candidate = new char[Math.max(candidate.length * 2, candidateLength)];
+            }
+            terms.copy(termId, candidate);
+            // slots from POSITIONS - 1 on are shared, long tokens still need their chars compared
+            if (Arrays.equals(candidate, 0, length, token, 0, length)) {
+                if (matchCount == matches.length) {
+                    matches = Arrays.copyOf(matches, matchCount * 2);
+                }
+                matches[matchCount++] = (long) (candidateLength - length) << 32 | termId;
+            }
+        }
+        long[] sorted = Arrays.copyOf(matches, matchCount);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private boolean containedInAll(int[] slots, int skipped, int termId) {
+        for (int i = 0; i < slots.length; i++) {
+            if (i != skipped && !contains(slots[i], slots[i], termId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(int firstSlot, int lastSlot, int termId) {
+        for (int slot = firstSlot; slot <= lastSlot; slot++) {
+            if (sizes[slot] > 0 && Arrays.binarySearch(lists[slot], 0, sizes[slot], termId) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Levenshtein distance, one row at a time, given up as soon as a whole row is above limit
+     *
+     * @param rows two rows of at least b length + 1 ints, overwritten
+     * @return the distance, limit + 1 if it is above limit
+     */
+    static int editDistance(char[] a, int aLength, char[] b, int bLength, int limit, int[][] rows) {
+        if (Math.abs(aLength - bLength) > limit) {
+            return limit + 1;
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= bLength; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= aLength; i++) {
+            current[0] = i;
+            int best = i;
+            for (int j = 1; j <= bLength; j++) {
+                int substitution = previous[j - 1] + (a[i - 1] == b[j - 1] ? 0 : 1);
+                int value = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = value;
+                best = Math.min(best, value);
+            }
+            if (best > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[bLength], limit + 1);
+    }
+
+    /**
+     * Writes the trigram codes of "$$" + chars + "$$" in grams, in order, duplicates included
+     *
+     * @return number of trigrams, length + 2
+     */
+    private static int grams(char[] chars, int length, int[] grams) {
+        int first = 0;
+        int second = 0;
+        for (int i = 0; i < length + 2; i++) {
+            int third = i < length ? code(chars[i]) : 0;
+            grams[i] = (first * ALPHABET + second) * ALPHABET + third;
+            first = second;
+            second = third;
+        }
+        return length + 2;
+    }
+
+    private static int code(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 1;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 27;
+        }
+        return 0;
+    }
+
+    private static int slot(int code, int position) {
+        return code * POSITIONS + Math.min(position, POSITIONS - 1);
+    }
+
+    private void append(int slot, int termId) {
+        int[] list = lists[slot];
+        if (list == null) {
+            list = lists[slot] = new int[4];
+        } else if (sizes[slot] > 0 && list[sizes[slot] - 1] == termId) {
+            // same trigram twice past the last position, the slot is shared
+            return;
+        } else if (sizes[slot] == list.length) {
+            list = lists[slot] = Arrays.copyOf(list, list.length * 2);
+        }
+        list[sizes[slot]++] = termId;
+    }
+
+    @Override
+    public String toString() {
+        return "TermTrigrams{" +
+                "maxDistance=" + maxDistance +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+package searcher;
+
+/**
+ * Cosine similarity of TF-IDF vectors, the lnc.ltc weighting of the SMART system:
+ * documents weight a term by 1 + ln(tf), queries by (1 + ln(tf)) * ln(N / df), both vectors are normalized.
+ * Leaving idf out of the documents is what lets their norm be computed once, when they are indexed,
+ * instead of changing with every document added to the corpus.
+ * Score from 0 to 100 like jaccard, 100 when the two vectors point the same way, i.e. a single term query against a
+ * document made only of that term
+ */
+public class TfIdfScorer implements Scorer {
+
+    @Override
+    public String name() {
+        return "tfidf";
+    }
+
+    @Override
+    public float[] queryWeights(InvertedIndex index, InvertedIndex.Query query) {
+        float[] weights = new float[query.termIds.length];
+        double norm = 0;
+        for (int i = 0; i < weights.length; i++) {
+            int documentFrequency = index.documentFrequency(query.termIds[i]);
+            if (documentFrequency == 0) {
+                // only in deleted documents
+                continue;
+            }
+            double idf = Math.log((double) index.liveSize() / documentFrequency);
+            weights[i] = (float) (logFrequency(query.termFrequencies[i]) * idf) * query.similarities[i];
+            norm += weights[i] * weights[i];
+        }
+        // terms the index does not know have no idf, they can not match any document so we just leave them out
+        if (norm > 0) {
+            float inverseNorm = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] *= inverseNorm;
+            }
+        }
+        return weights;
+    }
+
+    @Override
+    public float termScore(InvertedIndex index, float queryWeight, int frequency, int docId) {
+        return queryWeight * logFrequency(frequency);
+    }
+
+    @Override
+    public float documentScore(InvertedIndex index, InvertedIndex.Query query, float sum, int matchedTerms, int docId) {
+        return sum / index.norm(docId) * 100;
+    }
+
+    static float logFrequency(int frequency) {
+        return 1 + (float) Math.log(frequency);
+    }
+}
@@ -0,0 +1,101 @@
+package searcher;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class Tokenizer {
+
+    /**
+     * Receives every token found by the Tokenizer
+     * The buffer is owned and reused by the Tokenizer, it is only valid during the call, copy it if you need to keep it
+     */
+    @FunctionalInterface
+    public interface TokenConsumer {
+        void accept(char[] buffer, int length);
+    }
+
+    // current token, grows if we find a token longer than it and it is never shrunk
+    private char[] buffer = new char[32];
+    private int length = 0;
+
+    /**
+     * A Tokenizer does in a single pass what normalizeText + split(" ") did in three:
+     * a token is every maximal run of [a-zA-Z0-9], lower cased while we copy it to the buffer
+     * No regex, no copy of the document and no String per token, the caller decides what to build from the buffer.
+     * Keeps state between calls (the buffer), so an instance must not be shared between threads.
+     *
+     * @param text     document or query, raw or already normalized, both produce the same tokens
+     * @param consumer receives each token in order, duplicates included
+     */
+    public void tokenize(CharSequence text, TokenConsumer consumer) {
+        length = 0;
+        for (int i = 0, size = text.length(); i < size; i++) {
+            char c = text.charAt(i);
+            if (isTokenChar(c)) {
+                append(fold(c));
+            } else if (length > 0) {
+                consumer.accept(buffer, length);
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            consumer.accept(buffer, length);
+            length = 0;
+        }
+    }
+
+    /**
+     * Same as tokenize(CharSequence) reading bytes straight from a buffer, i.e. a MappedByteBuffer, no String at all
+     * Decoding utf-8 is not needed to find the tokens: only ascii can be part of a token and every byte of a
+     * multi byte utf-8 sequence is >= 0x80, so all of them are just separators, same as the decoded char would be.
+     * The buffer can be fed in pieces, a token straddling two pieces is kept in the buffer until the next one,
+     * call finish once the last piece has been fed.
+     *
+     * @param bytes    from its position to its limit, the position is left at the limit
+     * @param consumer receives each token in order, duplicates included
+     */
+    public void feed(ByteBuffer bytes, TokenConsumer consumer) {
+        for (int i = bytes.position(), limit = bytes.limit(); i < limit; i++) {
+            // a byte >= 0x80 is negative, cast to char it is >= 0xff80 so never a token char
+            char c = (char) bytes.get(i);
+            if (isTokenChar(c)) {
+                append(fold(c));
+            } else if (length > 0) {
+                consumer.accept(buffer, length);
+                length = 0;
+            }
+        }
+        bytes.position(bytes.limit());
+    }
+
+    /**
+     * Emits the token pending from the last fed buffer, if any, and resets the tokenizer for the next document
+     */
+    public void finish(TokenConsumer consumer) {
+        if (length > 0) {
+            consumer.accept(buffer, length);
+            length = 0;
+        }
+    }
+
+    private void append(char c) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = c;
+    }
+
+    /**
+     * Same criteria as the [^a-zA-Z0-9] regex normalizeText used to have
+     */
+    public static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Lower cases an ascii letter, only ascii can be part of a token so no Locale is involved
+     */
+    public static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
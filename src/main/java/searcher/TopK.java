@@ -0,0 +1,224 @@
+package searcher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TopK {
+
+    /**
+     * Receives the score of a document, scoring code feeds a TopK directly through it
+     */
+    @FunctionalInterface
+    public interface ScoreConsumer {
+        void accept(int docId, float score);
+    }
+
+    private final int k;
+    // min heap of packed (score, rank) entries, heap[0] is the worst entry kept, the first one to evict
+    private final long[] heap;
+    // doc id of every entry of the heap, same positions
+    private final int[] heapDocIds;
+    private int size = 0;
+    // best worst entry among the full TopKs of the same query, null if not shared, see TopK(int, AtomicLong)
+    private final AtomicLong floor;
+    // doc id -> rank, the lowest wins ties, null to break them by doc id
+    private final int[] ranks;
+
+    /**
+     * A TopK keeps only the best k (docId, score) pairs it is offered, in a bounded min heap of primitives.
+     * Offering is O(log k) in the worst case and O(1) for the usual document that does not make it,
+     * nothing is allocated per document, Results are only built for the k survivors.
+     * Each pair is packed in a long: score bits in the high half, inverted doc id in the low half, so comparing
+     * two longs compares by score and, for the same score, the lowest doc id wins. Ties are deterministic, with ranks
+     * the low half is the inverted rank instead and the doc ids are kept next to the heap.
+     * Scores must be >= 0, the bits of a non negative float sort like the float itself.
+     *
+     * @param k number of entries to keep, > 0
+     */
+    public TopK(int k) {
+        this(k, null, null);
+    }
+
+    /**
+     * Same as TopK(int) breaking ties by rank instead of doc id, ranks are the order of the file names given by
+     * InvertedIndex.nameRanks, so the documents kept on ties are the ones Algorithm.Result.compareTo puts first,
+     * whatever the order they were indexed in: the index, the scan and the shards agree on them
+     *
+     * @param ranks doc id -> rank, distinct, the lowest wins ties
+     */
+    public TopK(int k, int[] ranks) {
+        this(k, null, ranks);
+    }
+
+    /**
+     * Same as TopK(int, int[]) for a TopK that is one of several of the same query, i.e. one per range of doc ids.
+     * Full TopKs publish their worst entry to floor, whichever is the highest: the final k best are all better than
+     * it, so accepts() turns down anything under it even when this TopK alone would still take it.
+     *
+     * @param floor shared by the TopKs of the query, starts at Long.MIN_VALUE
+     * @param ranks same for all the TopKs of the query, null to break ties by doc id
+     */
+    public TopK(int k, AtomicLong floor, int[] ranks) {
+        this.k = k;
+        this.heap = new long[k];
+        this.heapDocIds = new int[k];
+        this.floor = floor;
+        this.ranks = ranks;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return k, the number of entries it keeps at most
+     */
+    public int capacity() {
+        return k;
+    }
+
+    /**
+     * @return an empty TopK of the same k and ranks sharing the same floor, if any
+     */
+    public TopK sibling() {
+        return new TopK(k, floor, ranks);
+    }
+
+    public boolean isFull() {
+        return size == k;
+    }
+
+    /**
+     * @return score of the worst entry kept, the one a new document has to beat once the TopK is full
+     */
+    public float threshold() {
+        return size == 0 ? 0f : score(heap[0]);
+    }
+
+    /**
+     * @return true if offering this entry would keep it, a full TopK only takes entries better than its worst one
+     */
+    public boolean accepts(int docId, float score) {
+        return accepts(pack(rank(docId), score));
+    }
+
+    /**
+     * @return true if a document with that score could be kept, one winning every tie
+     */
+    public boolean accepts(float score) {
+        return accepts(pack(0, score));
+    }
+
+    private boolean accepts(long entry) {
+        return (size < k || entry > heap[0]) && (floor == null || entry > floor.get());
+    }
+
+    /**
+     * Same as accepts() for an entry that may already be in it, or be the worst entry of the TopKs sharing the floor
+     *
+     * @return true if the entry is kept or would be
+     */
+    public boolean keeps(int docId, float score) {
+        long entry = pack(rank(docId), score);
+        return (size < k || entry >= heap[0]) && (floor == null || entry >= floor.get());
+    }
+
+    public void offer(int docId, float score) {
+        offer(pack(rank(docId), score), docId);
+    }
+
+    private void offer(long entry, int docId) {
+        if (size < k) {
+            heap[size] = entry;
+            heapDocIds[size] = docId;
+            siftUp(size++);
+        } else if (entry > heap[0]) {
+            heap[0] = entry;
+            heapDocIds[0] = docId;
+            siftDown(0);
+        } else {
+            return;
+        }
+        if (floor != null && size == k && heap[0] > floor.get()) {
+            floor.accumulateAndGet(heap[0], Math::max);
+        }
+    }
+
+    /**
+     * Offers every entry of other to this one, used to gather the heaps of different workers, both have the same ranks
+     */
+    public void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.heap[i], other.heapDocIds[i]);
+        }
+    }
+
+    /**
+     * @return kept entries from best to worst, use docId() and score() to unpack them
+     */
+    public long[] sorted() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // descending, best first
+        Arrays.sort(order, (a, b) -> Long.compare(heap[b], heap[a]));
+        long[] entries = new long[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = pack(heapDocIds[order[i]], score(heap[order[i]]));
+        }
+        return entries;
+    }
+
+    private int rank(int docId) {
+        return ranks == null ? docId : ranks[docId];
+    }
+
+    static long pack(int docId, float score) {
+        return ((long) Float.floatToIntBits(score) << 32) | (~docId & 0xFFFFFFFFL);
+    }
+
+    public static int docId(long entry) {
+        return ~(int) entry;
+    }
+
+    public static float score(long entry) {
+        return Float.intBitsToFloat((int) (entry >>> 32));
+    }
+
+    private void siftUp(int i) {
+        long entry = heap[i];
+        int docId = heapDocIds[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapDocIds[i] = heapDocIds[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+        heapDocIds[i] = docId;
+    }
+
+    private void siftDown(int i) {
+        long entry = heap[i];
+        int docId = heapDocIds[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (entry <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapDocIds[i] = heapDocIds[child];
+            i = child;
+        }
+        heap[i] = entry;
+        heapDocIds[i] = docId;
+    }
+}
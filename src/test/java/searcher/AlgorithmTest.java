@@ -33,6 +33,16 @@ public class AlgorithmTest {
         assertEquals(result.ranking, 33);
     }
 
+    @Test
+    public void intersectionOfSortedTermIds() {
+        // merge intersection, the union is never built: |A u B| = |A| + |B| - |A n B|
+        int[] a = new int[]{1, 3, 5, 7};
+        int[] b = new int[]{0, 3, 4, 7, 9};
+        assertEquals(Algorithm.intersectionSize(a, b), 2);
+        assertEquals(Algorithm.jaccard(2, a.length, b.length), 28);
+        assertEquals(Algorithm.jaccard(0, 0, 0), 0);
+    }
+
     @Test
     public void normalizeText() {
         // for ml models the input is really important, for big scenarios we should have pre cached / computed
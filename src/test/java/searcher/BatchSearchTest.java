@@ -0,0 +1,72 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchSearchTest {
+
+    private static InvertedIndex indexOf(String... documents) {
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < documents.length; i++) {
+            index.addDocument("doc" + i, documents[i]);
+        }
+        return index;
+    }
+
+    @Test
+    public void sameResultsAsOneQueryAtATime() {
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            documents.add("term" + (i % 7) + " term" + (i % 13) + " term" + (i % 29) + " shared");
+        }
+        InvertedIndex index = indexOf(documents.toArray(new String[0]));
+        index.removeDocument("doc5");
+        List<String> queries = List.of("term1 term2", "shared", "term3 term3 term28", "nothing", "term1 term12 unknown");
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (Scorer scorer : Scorer.ALL) {
+                List<List<Algorithm.Result>> batch = BatchSearch.search(index, queries, scorer, 5, pool);
+                assertEquals(batch.size(), queries.size());
+                for (int i = 0; i < queries.size(); i++) {
+                    assertEquals(scorer.name() + " " + queries.get(i), batch.get(i).toString(),
+                            ParallelSearch.search(index, queries.get(i), scorer, 5, pool).toString());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void runWritesJsonLinesInOrder() throws IOException {
+        InvertedIndex index = indexOf("some text to find", "other \"quoted\" text");
+        StringWriter output = new StringWriter();
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            long queries = BatchSearch.run(index, new BufferedReader(new StringReader("find\n\n  other  \nnothing\n")),
+                    output, Scorer.JACCARD, 10, 2, pool);
+            assertEquals(queries, 3);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(output.toString(),
+                "{\"query\":\"find\",\"results\":[{\"fileName\":\"doc0\",\"ranking\":25,\"score\":25.0}]}\n"
+                        + "{\"query\":\"other\",\"results\":[{\"fileName\":\"doc1\",\"ranking\":33,\"score\":33.0}]}\n"
+                        + "{\"query\":\"nothing\",\"results\":[]}\n");
+    }
+
+    @Test
+    public void jsonEscapes() {
+        assertEquals(Json.quote("a \"b\" \\ \n\u0001"), "\"a \\\"b\\\" \\\\ \\n\\u0001\"");
+    }
+}
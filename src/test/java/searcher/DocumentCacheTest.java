@@ -0,0 +1,111 @@
+package searcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static int[] termIds(DocumentCache cache, File file) throws IOException {
+        try (InMemoryFileReader reader = InMemoryFileReader.newInstance(file.getPath()).get()) {
+            return cache.termIds(reader);
+        }
+    }
+
+    private File fileOf(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.writeString(file.toPath(), content);
+        return file;
+    }
+
+    @Test
+    public void hotDocumentsAreNotReadAgain() throws IOException {
+        File file = fileOf("a.txt", "some text to find, some text");
+        for (DocumentCache.References references : DocumentCache.References.values()) {
+            DocumentCache cache = new DocumentCache(1024 * 1024, references, InMemoryFileReader.ReadStrategy.HEAP);
+            int[] first = termIds(cache, file);
+            assertArrayEquals(termIds(cache, file), first);
+            assertArrayEquals(cache.termIds("text to find some"), first);
+            assertEquals(cache.misses(), 1);
+            assertEquals(cache.hits(), 1);
+        }
+    }
+
+    @Test
+    public void modifiedFilesAreReadAgain() throws IOException {
+        File file = fileOf("a.txt", "hello");
+        DocumentCache cache = new DocumentCache(1024 * 1024, DocumentCache.References.STRONG, InMemoryFileReader.ReadStrategy.MMAP);
+        termIds(cache, file);
+
+        // a different size so the change is noticed even if the mtime resolution is coarse
+        Files.writeString(file.toPath(), "hello world");
+        assertArrayEquals(termIds(cache, file), cache.termIds("world hello"));
+        assertEquals(cache.misses(), 2);
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws IOException {
+        File a = fileOf("a.txt", "one two");
+        File b = fileOf("b.txt", "three four");
+        File c = fileOf("c.txt", "five six");
+        DocumentCache cache = new DocumentCache((DocumentCache.ENTRY_OVERHEAD + 8) * 2, DocumentCache.References.STRONG,
+                InMemoryFileReader.ReadStrategy.HEAP);
+        termIds(cache, a);
+        termIds(cache, b);
+        termIds(cache, a);
+        termIds(cache, c);
+
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.evictions(), 1);
+        termIds(cache, a);
+        assertEquals(cache.hits(), 2);
+        termIds(cache, b);
+        assertEquals(cache.misses(), 4);
+    }
+
+    @Test
+    public void dictionaryOnlyKeepsTheTermsOfCachedDocuments() throws IOException {
+        File file = fileOf("a.txt", "hello cached world");
+        for (long maxBytes : new long[]{0, 1024 * 1024}) {
+            DocumentCache cache = new DocumentCache(maxBytes, DocumentCache.References.STRONG, InMemoryFileReader.ReadStrategy.HEAP);
+            for (int query = 0; query < DocumentCache.MIN_UNUSED_TERMS * 3; query++) {
+                // ids change when the dictionary is rebuilt, only the ones of a same query are compared
+                int[] terms = cache.termIds("hello unique" + query);
+                assertEquals(Algorithm.intersectionSize(terms, termIds(cache, file)), 1);
+                assertTrue(cache.terms() <= DocumentCache.MIN_UNUSED_TERMS + 3 * 2 + 1);
+            }
+            assertEquals(cache.hits(), maxBytes == 0 ? 0 : DocumentCache.MIN_UNUSED_TERMS * 3 - 1);
+        }
+    }
+
+    @Test
+    public void scanRanksLikeTheIndex() throws IOException {
+        fileOf("a.txt", "some text to find and rank.");
+        fileOf("b.json", "{\"some\": \"text to find\", \"and\": \"rank\"}");
+        fileOf("c.txt", "nothing in common");
+        FilesystemCrawler crawler = new FilesystemCrawler(folder.getRoot().getPath(), new FilesystemCrawler.Options());
+        DocumentCache cache = new DocumentCache(1024 * 1024, DocumentCache.References.SOFT, InMemoryFileReader.ReadStrategy.HEAP);
+
+        List<Algorithm.Result> scanned = Searcher.scan(crawler, cache, "text to find", 2);
+        List<Algorithm.Result> indexed = InvertedIndex.build(crawler, InMemoryFileReader.ReadStrategy.HEAP).get()
+                .search("text to find");
+        indexed.sort(null);
+        assertEquals(scanned.toString(), indexed.subList(0, 2).toString());
+
+        Searcher.scan(crawler, cache, "text to find", 2);
+        assertEquals(cache.hits(), 3);
+    }
+}
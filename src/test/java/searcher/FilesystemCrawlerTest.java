@@ -0,0 +1,172 @@
+package searcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilesystemCrawlerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> crawl(FilesystemCrawler.Options options) {
+        List<String> found = new ArrayList<>();
+        new FilesystemCrawler(folder.getRoot().getPath(), options).crawl(found::add);
+        // relative and sorted, crawler threads find files in any order
+        return found.stream()
+                .map(path -> folder.getRoot().toPath().relativize(Path.of(path)).toString())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private void createTree() throws IOException {
+        Files.writeString(folder.newFile("a.txt").toPath(), "a");
+        Files.writeString(folder.newFile("b.json").toPath(), "{}");
+        Files.writeString(folder.newFile("big.log").toPath(), "x".repeat(1000));
+        File subdirectory = folder.newFolder("subdirectory");
+        Files.writeString(new File(subdirectory, "c.txt").toPath(), "c");
+        File deeper = folder.newFolder("subdirectory", "deeper");
+        Files.writeString(new File(deeper, "d.txt").toPath(), "d");
+    }
+
+    @Test
+    public void crawlsEverythingByDefault() throws IOException {
+        createTree();
+        List<String> expected = new ArrayList<>(FilesystemReader.listAllFilesRecursively(folder.getRoot().getPath()).get());
+        expected.replaceAll(path -> folder.getRoot().toPath().relativize(Path.of(path)).toString());
+        Collections.sort(expected);
+        assertEquals(crawl(new FilesystemCrawler.Options()), expected);
+    }
+
+    @Test
+    public void includeAndExcludeGlobs() throws IOException {
+        createTree();
+        FilesystemCrawler.Options options = new FilesystemCrawler.Options();
+        options.includes.add("*.txt");
+        options.excludes.add("subdirectory/deeper");
+        assertEquals(crawl(options), List.of("a.txt", Path.of("subdirectory", "c.txt").toString()));
+    }
+
+    @Test
+    public void maxDepthAndFileSize() throws IOException {
+        createTree();
+        FilesystemCrawler.Options options = new FilesystemCrawler.Options();
+        options.maxDepth = 2;
+        options.maxFileSize = 100;
+        assertEquals(crawl(options), List.of("a.txt", "b.json", Path.of("subdirectory", "c.txt").toString()));
+    }
+
+    @Test
+    public void symlinkPolicies() throws IOException {
+        createTree();
+        Files.createSymbolicLink(folder.getRoot().toPath().resolve("link.txt"), folder.getRoot().toPath().resolve("a.txt"));
+        Files.createSymbolicLink(folder.getRoot().toPath().resolve("loop"), folder.getRoot().toPath());
+
+        FilesystemCrawler.Options options = new FilesystemCrawler.Options();
+        options.includes.add("link.txt");
+        options.symlinks = FilesystemCrawler.SymlinkPolicy.SKIP;
+        assertEquals(crawl(options), List.of());
+        options.symlinks = FilesystemCrawler.SymlinkPolicy.FILES;
+        assertEquals(crawl(options), List.of("link.txt"));
+
+        // following the loop link must not crawl forever, the root is only visited once
+        options.includes.clear();
+        options.symlinks = FilesystemCrawler.SymlinkPolicy.FOLLOW;
+        assertEquals(crawl(options).size(), 6);
+    }
+
+    @Test
+    public void directoriesAreTheOnesACrawlGoesInto() throws IOException {
+        createTree();
+        Path root = folder.getRoot().toPath();
+        // the link is the only way into the excluded tree
+        File linked = folder.newFolder("node_modules", "package");
+        Files.createSymbolicLink(root.resolve("link"), linked.toPath());
+
+        FilesystemCrawler.Options options = new FilesystemCrawler.Options();
+        options.excludes.add("node_modules");
+        options.maxDepth = 2;
+        List<Path> expected = new ArrayList<>(List.of(root, root.resolve("subdirectory")));
+        Collections.sort(expected);
+        assertEquals(directories(root, options), expected);
+
+        options.symlinks = FilesystemCrawler.SymlinkPolicy.FOLLOW;
+        expected.add(root.resolve("link"));
+        Collections.sort(expected);
+        assertEquals(directories(root, options), expected);
+        assertEquals(directories(root.resolve("node_modules"), options), List.of());
+
+        options.maxDepth = Integer.MAX_VALUE;
+        assertEquals(directories(root.resolve("subdirectory"), options),
+                List.of(root.resolve("subdirectory"), root.resolve(Path.of("subdirectory", "deeper"))));
+    }
+
+    private List<Path> directories(Path start, FilesystemCrawler.Options options) {
+        List<Path> directories = new FilesystemCrawler(folder.getRoot().getPath(), options).directories(start);
+        Collections.sort(directories);
+        return directories;
+    }
+
+    @Test
+    public void moreFilesThanTheQueueCapacity() throws IOException {
+        // the crawler threads have to wait for the consumer, nothing must be lost
+        for (int i = 0; i < FilesystemCrawler.QUEUE_CAPACITY * 3; i++) {
+            folder.newFile("file" + i + ".txt");
+        }
+        FilesystemCrawler.Options options = new FilesystemCrawler.Options();
+        options.parallelism = 2;
+        assertEquals(crawl(options).size(), FilesystemCrawler.QUEUE_CAPACITY * 3);
+    }
+
+    /**
+     * @return a crawler that fails to list the directory, as if it was unreadable, tests run as root ignore chmod
+     */
+    static FilesystemCrawler failingToList(Path root, Path unreadable) {
+        return new FilesystemCrawler(root.toString(), new FilesystemCrawler.Options()) {
+            @Override
+            DirectoryStream<Path> list(Path directory) throws IOException {
+                if (directory.equals(unreadable)) {
+                    throw new AccessDeniedException(directory.toString());
+                }
+                return super.list(directory);
+            }
+        };
+    }
+
+    @Test
+    public void directoriesFailingToListAreReported() throws IOException {
+        createTree();
+        Path root = folder.getRoot().toPath();
+        Path subdirectory = root.resolve("subdirectory");
+        List<String> found = new ArrayList<>();
+        List<Path> unlisted = new ArrayList<>();
+        assertTrue(failingToList(root, subdirectory).crawl(found::add, unlisted::add));
+        assertEquals(found.size(), 3);
+        assertEquals(unlisted, List.of(subdirectory));
+
+        unlisted.clear();
+        assertFalse(failingToList(root, root).crawl(found::add, unlisted::add));
+        assertEquals(unlisted, List.of(root));
+    }
+
+    @Test
+    public void invalidRoot() {
+        assertFalse(new FilesystemCrawler("not found", new FilesystemCrawler.Options()).crawl(path -> {
+        }));
+    }
+}
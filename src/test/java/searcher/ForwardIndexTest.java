@@ -0,0 +1,86 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ForwardIndexTest {
+
+    // sorted distinct term ids with random gaps and frequencies, small and huge ones
+    private static TermDictionary.TermCounts counts(Random random, int size) {
+        int[] termIds = new int[size];
+        int[] frequencies = new int[size];
+        int termId = -1;
+        for (int i = 0; i < size; i++) {
+            termId += 1 + random.nextInt(i % 60 == 0 ? 1_000_000 : 20);
+            termIds[i] = termId;
+            frequencies[i] = 1 + random.nextInt(i % 90 == 0 ? 100_000 : 3);
+        }
+        return new TermDictionary.TermCounts(termIds, frequencies);
+    }
+
+    @Test
+    public void decodesWhatWasAdded() {
+        Random random = new Random(42L);
+        ForwardIndex forward = new ForwardIndex();
+        // empty, less than a block, exactly a block, several blocks and a tail
+        int[] sizes = {0, 1, 5, 127, 128, 129, 1000, 3};
+        TermDictionary.TermCounts[] added = new TermDictionary.TermCounts[sizes.length];
+        for (int docId = 0; docId < sizes.length; docId++) {
+            added[docId] = counts(random, sizes[docId]);
+            forward.add(docId, added[docId].termIds, added[docId].frequencies);
+        }
+        assertEquals(forward.size(), sizes.length);
+        for (int docId = 0; docId < sizes.length; docId++) {
+            TermDictionary.TermCounts counts = forward.counts(docId);
+            assertEquals(forward.termCount(docId), sizes[docId]);
+            assertArrayEquals(counts.termIds, added[docId].termIds);
+            assertArrayEquals(counts.frequencies, added[docId].frequencies);
+        }
+    }
+
+    @Test
+    public void copiesRecordsAsTheyAre() {
+        Random random = new Random(7L);
+        ForwardIndex forward = new ForwardIndex();
+        TermDictionary.TermCounts[] added = new TermDictionary.TermCounts[2000];
+        for (int docId = 0; docId < added.length; docId++) {
+            added[docId] = counts(random, random.nextInt(300));
+            forward.add(docId, added[docId].termIds, added[docId].frequencies);
+        }
+        // more than a segment of records, the copy spans several too
+        int[] kept = {3, 10, 11, 1999};
+        ForwardIndex copy = forward.copy(kept);
+        assertEquals(copy.size(), kept.length);
+        for (int i = 0; i < kept.length; i++) {
+            assertArrayEquals(copy.counts(i).termIds, added[kept[i]].termIds);
+            assertArrayEquals(copy.counts(i).frequencies, added[kept[i]].frequencies);
+        }
+        assertEquals(forward.copy(new int[0]).offHeapBytes(), 0L);
+    }
+
+    @Test
+    public void documentBiggerThanASegment() {
+        ForwardIndex forward = new ForwardIndex();
+        int[] termIds = new int[PostingLists.MIN_SEGMENT_SIZE];
+        int[] frequencies = new int[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            termIds[i] = i * 1000;
+            frequencies[i] = 70000;
+        }
+        forward.add(0, new int[]{1}, new int[]{1});
+        forward.add(1, termIds, frequencies);
+        assertArrayEquals(forward.counts(1).termIds, termIds);
+        assertEquals(Arrays.stream(forward.counts(1).frequencies).distinct().count(), 1L);
+        assertArrayEquals(forward.counts(0).termIds, new int[]{1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void documentsAreAddedInOrder() {
+        new ForwardIndex().add(1, new int[0], new int[0]);
+    }
+}
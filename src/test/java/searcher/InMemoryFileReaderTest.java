@@ -1,10 +1,17 @@
 package searcher;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
@@ -15,6 +22,17 @@ public class InMemoryFileReaderTest {
     String INVALID_PATH = "invalid";
     String EXPECTED_TEXT_IN_VALID_PATH = "some text to find and rank.";
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> tokensOf(File file, InMemoryFileReader.ReadStrategy strategy) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (InMemoryFileReader inMemoryFileReader = InMemoryFileReader.newInstance(file.getPath()).get()) {
+            inMemoryFileReader.tokenize(strategy, new Tokenizer(), (buffer, length) -> tokens.add(new String(buffer, 0, length)));
+        }
+        return tokens;
+    }
+
     @Test
     public void newInstance() throws IOException {
         Optional<InMemoryFileReader> inMemoryFileReader = InMemoryFileReader.newInstance(VALID_PATH);
@@ -86,4 +104,59 @@ public class InMemoryFileReaderTest {
         InMemoryFileReader.newInstance(VALID_PATH);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void tokenizeSmallFileWithBothStrategies() throws IOException {
+        // utf-8 multi byte chars are separators in both cases, the mmap path never decodes them
+        File file = folder.newFile("small.txt");
+        Files.writeString(file.toPath(), "Some text, caf\u00e9 na\u00efve \ud83d\ude00ok", StandardCharsets.UTF_8);
+
+        List<String> expected = List.of("some", "text", "caf", "na", "ve", "ok");
+        assertEquals(tokensOf(file, InMemoryFileReader.ReadStrategy.HEAP), expected);
+        assertEquals(tokensOf(file, InMemoryFileReader.ReadStrategy.MMAP), expected);
+    }
+
+    @Test
+    public void tokenizeMappedFile() throws IOException {
+        // bigger than the threshold so it is mapped instead of read into the pooled buffer
+        File file = folder.newFile("big.txt");
+        StringBuilder content = new StringBuilder();
+        while (content.length() <= InMemoryFileReader.MMAP_THRESHOLD * 2) {
+            content.append("Word").append(content.length()).append(" \u00e9 ");
+        }
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+
+        List<String> mapped = tokensOf(file, InMemoryFileReader.ReadStrategy.MMAP);
+        assertEquals(mapped, tokensOf(file, InMemoryFileReader.ReadStrategy.HEAP));
+        assertTrue(mapped.size() > 1000);
+    }
+
+    @Test
+    public void tokenizeEmptyFile() throws IOException {
+        File file = folder.newFile("empty.txt");
+        assertTrue(tokensOf(file, InMemoryFileReader.ReadStrategy.MMAP).isEmpty());
+        assertTrue(tokensOf(file, InMemoryFileReader.ReadStrategy.HEAP).isEmpty());
+        assertTrue(tokensOf(file, InMemoryFileReader.ReadStrategy.STREAM).isEmpty());
+    }
+
+    @Test
+    public void tokenizeStreamedFile() throws IOException {
+        // a token straddles every chunk boundary, it must come out whole and only once
+        File file = folder.newFile("streamed.txt");
+        StringBuilder content = new StringBuilder();
+        for (int chunk = 1; chunk <= 3; chunk++) {
+            while (content.length() < InMemoryFileReader.CHUNK_SIZE * chunk - 3) {
+                content.append("x ");
+            }
+            content.setLength(InMemoryFileReader.CHUNK_SIZE * chunk - 3);
+            content.append(" straddling").append(chunk).append(' ');
+        }
+        content.append("last");
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+
+        List<String> streamed = tokensOf(file, InMemoryFileReader.ReadStrategy.STREAM);
+        assertEquals(streamed, tokensOf(file, InMemoryFileReader.ReadStrategy.HEAP));
+        assertTrue(streamed.contains("straddling2"));
+        assertEquals(streamed.get(streamed.size() - 1), "last");
+    }
+
+}
@@ -0,0 +1,121 @@
+package searcher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File documents;
+    private FilesystemCrawler crawler;
+
+    @Before
+    public void setUp() throws IOException {
+        documents = folder.newFolder("documents");
+        File subdirectory = new File(documents, "subdirectory");
+        assertTrue(subdirectory.mkdir());
+        for (int i = 0; i < 50; i++) {
+            File parent = i % 2 == 0 ? documents : subdirectory;
+            Files.writeString(new File(parent, "file" + i + ".txt").toPath(),
+                    "Common text number" + i + (i % 3 == 0 ? " three three" : "") + (i % 5 == 0 ? " five" : ""));
+        }
+        Files.writeString(new File(documents, "empty.txt").toPath(), "");
+        crawler = new FilesystemCrawler(documents.getPath(), new FilesystemCrawler.Options());
+    }
+
+    private static List<String> sorted(List<Algorithm.Result> results) {
+        return results.stream().map(Algorithm.Result::toString).sorted().collect(Collectors.toList());
+    }
+
+    private void assertSameAsBuild(InvertedIndex index) {
+        InvertedIndex built = InvertedIndex.build(crawler, InMemoryFileReader.ReadStrategy.HEAP).get();
+        assertEquals(index.liveFileNames().stream().sorted().collect(Collectors.toList()),
+                built.liveFileNames().stream().sorted().collect(Collectors.toList()));
+        for (String query : List.of("common text", "three five", "number7 three", "unknown")) {
+            for (Scorer scorer : Scorer.ALL) {
+                assertEquals(sorted(index.search(query, scorer)), sorted(built.search(query, scorer)));
+            }
+        }
+    }
+
+    @Test
+    public void sameIndexAsTheSerialBuild() {
+        for (int readAhead : new int[]{1, 4, 32}) {
+            for (int tokenizers : new int[]{1, 3}) {
+                InvertedIndex index = new InvertedIndex();
+                Optional<IndexPipeline.Stats> stats = new IndexPipeline(index, InMemoryFileReader.ReadStrategy.HEAP,
+                        readAhead, tokenizers).run(crawler);
+                assertEquals(stats.get().documents, 51L);
+                assertSameAsBuild(index);
+            }
+        }
+    }
+
+    @Test
+    public void bigFilesAreStreamed() throws IOException {
+        StringBuilder big = new StringBuilder();
+        while (big.length() <= IndexPipeline.MAX_READ_SIZE) {
+            big.append("big file common text ");
+        }
+        File file = new File(documents, "big.txt");
+        Files.writeString(file.toPath(), big);
+        InvertedIndex index = new InvertedIndex();
+        IndexPipeline.Stats stats = new IndexPipeline(index, InMemoryFileReader.ReadStrategy.HEAP, 4, 2).run(crawler).get();
+        assertEquals(stats.documents, 52L);
+        assertTrue(stats.bytes > IndexPipeline.MAX_READ_SIZE);
+        assertSameAsBuild(index);
+    }
+
+    @Test(timeout = 60_000)
+    public void aFileFailingInTheTokenizerIsSkipped() throws IOException {
+        StringBuilder big = new StringBuilder();
+        while (big.length() <= IndexPipeline.MAX_READ_SIZE) {
+            big.append("locked file text ");
+        }
+        File file = new File(documents, "locked.txt");
+        Files.writeString(file.toPath(), big);
+        // a lock held by this process makes the tokenizer opening the big file throw an OverlappingFileLockException
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            for (int tokenizers : new int[]{1, 3}) {
+                InvertedIndex index = new InvertedIndex();
+                IndexPipeline.Stats stats = new IndexPipeline(index, InMemoryFileReader.ReadStrategy.HEAP, 2, tokenizers)
+                        .run(crawler).get();
+                assertEquals(stats.documents, 51L);
+                assertEquals(index.search("locked").size(), 0);
+                assertEquals(index.search("common").size(), 50);
+            }
+        }
+    }
+
+    @Test
+    public void modifiedTimesAreKept() {
+        InvertedIndex index = new InvertedIndex();
+        new IndexPipeline(index, InMemoryFileReader.ReadStrategy.HEAP, 4, 2).run(crawler).get();
+        File file = new File(documents, "file0.txt");
+        assertTrue(index.isUpToDate(file.getPath(), file.lastModified(), file.length()));
+    }
+
+    @Test
+    public void missingRoot() {
+        FilesystemCrawler missing = new FilesystemCrawler(new File(documents, "missing").getPath(), new FilesystemCrawler.Options());
+        assertEquals(new IndexPipeline(new InvertedIndex(), InMemoryFileReader.ReadStrategy.HEAP, 4, 2).run(missing), Optional.empty());
+    }
+}
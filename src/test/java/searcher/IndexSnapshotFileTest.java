@@ -0,0 +1,116 @@
+package searcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexSnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Algorithm.Result> search(InvertedIndex index, String query) {
+        List<Algorithm.Result> results = index.search(query);
+        results.sort(null);
+        return results;
+    }
+
+    private Path saved(InvertedIndex index) throws IOException {
+        Path snapshot = folder.getRoot().toPath().resolve("index.snapshot");
+        IndexSnapshotFile.save(index, snapshot);
+        return snapshot;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.txt", "some text to find and rank.");
+        index.addDocument("b.json", "{\"some\": \"text to find\", \"and\": \"rank\"}");
+        index.addDocument("deleted.txt", "text");
+        index.removeDocument("deleted.txt");
+
+        InvertedIndex loaded = IndexSnapshotFile.load(saved(index)).get();
+
+        // deleted documents are not written
+        assertEquals(loaded.size(), 2);
+        assertEquals(loaded.terms().size(), index.terms().size());
+        assertEquals(search(loaded, "text to find").toString(), search(index, "text to find").toString());
+        assertEquals(search(loaded, "unknown terms").size(), 0);
+    }
+
+    @Test
+    public void loadedRegionByRegion() throws IOException {
+        // snapshots over 2 GB are mapped in several regions, tiny ones here so regions and reads end anywhere
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < 100; i++) {
+            index.addDocument(i + ".txt", "common text number" + i);
+        }
+        Path snapshot = saved(index);
+        for (long regionSize : new long[]{1, 7, 4096}) {
+            InvertedIndex loaded = IndexSnapshotFile.load(snapshot, regionSize).get();
+            assertEquals(search(loaded, "text number42").toString(), search(index, "text number42").toString());
+        }
+    }
+
+    @Test
+    public void missingSnapshot() {
+        assertTrue(IndexSnapshotFile.load(folder.getRoot().toPath().resolve("missing")).isEmpty());
+    }
+
+    @Test
+    public void corruptSnapshotIsDetected() throws IOException {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.txt", "some text to find and rank.");
+        Path snapshot = saved(index);
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.seek(IndexSnapshotFile.HEADER_SIZE + 6);
+            int original = file.read();
+            file.seek(IndexSnapshotFile.HEADER_SIZE + 6);
+            file.write(original ^ 0xFF);
+        }
+        assertTrue(IndexSnapshotFile.load(snapshot).isEmpty());
+    }
+
+    @Test
+    public void otherVersionIsRebuilt() throws IOException {
+        Path snapshot = saved(new InvertedIndex());
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.seek(4);
+            file.writeInt(IndexSnapshotFile.VERSION + 1);
+        }
+        assertTrue(IndexSnapshotFile.load(snapshot).isEmpty());
+    }
+
+    @Test
+    public void onlyChangedFilesAreReindexed() throws IOException {
+        File documents = folder.newFolder("documents");
+        File unchanged = new File(documents, "unchanged.txt");
+        File changed = new File(documents, "changed.txt");
+        Files.writeString(unchanged.toPath(), "hello world");
+        Files.writeString(changed.toPath(), "hello");
+
+        FilesystemCrawler crawler = new FilesystemCrawler(documents.getPath(), new FilesystemCrawler.Options());
+        Path snapshot = saved(InvertedIndex.build(crawler, InMemoryFileReader.ReadStrategy.HEAP).get());
+        Files.writeString(changed.toPath(), "goodbye world");
+
+        Optional<InvertedIndex> loaded = IndexSnapshotFile.load(snapshot);
+        int unchangedDocId = loaded.get().docId(unchanged.getPath());
+        new IndexWatcher(crawler, loaded.get(), InMemoryFileReader.ReadStrategy.HEAP).rescan();
+
+        assertEquals(loaded.get().docId(unchanged.getPath()), unchangedDocId);
+        assertEquals(search(loaded.get(), "goodbye").get(0).fileName, changed.getPath());
+        assertEquals(loaded.get().liveSize(), 2);
+    }
+}
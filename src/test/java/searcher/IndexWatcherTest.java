@@ -0,0 +1,131 @@
+package searcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InvertedIndex buildIndex() {
+        return InvertedIndex.build(FilesystemReader.listAllFilesRecursively(folder.getRoot().getPath()).get(),
+                InMemoryFileReader.ReadStrategy.HEAP);
+    }
+
+    private IndexWatcher watcherOf(InvertedIndex index) {
+        FilesystemCrawler crawler = new FilesystemCrawler(folder.getRoot().getPath(), new FilesystemCrawler.Options());
+        return new IndexWatcher(crawler, index, InMemoryFileReader.ReadStrategy.HEAP);
+    }
+
+    private static List<Algorithm.Result> search(InvertedIndex index, String query) {
+        List<Algorithm.Result> results = index.search(query);
+        results.sort(null);
+        return results;
+    }
+
+    @Test
+    public void rescanAppliesCreatedModifiedAndDeletedFiles() throws IOException {
+        File kept = folder.newFile("kept.txt");
+        File modified = folder.newFile("modified.txt");
+        File deleted = folder.newFile("deleted.txt");
+        Files.writeString(kept.toPath(), "hello world");
+        Files.writeString(modified.toPath(), "hello");
+        Files.writeString(deleted.toPath(), "hello nope");
+
+        InvertedIndex index = buildIndex();
+        assertEquals(index.liveSize(), 3);
+
+        // a different size so the change is noticed even if the mtime resolution is coarse
+        Files.writeString(modified.toPath(), "something else entirely");
+        Files.delete(deleted.toPath());
+        File created = new File(folder.newFolder("subdirectory"), "created.txt");
+        Files.writeString(created.toPath(), "hello world");
+
+        watcherOf(index).rescan();
+
+        assertEquals(index.liveSize(), 3);
+        List<Algorithm.Result> results = search(index, "hello world");
+        assertEquals(results.size(), 2);
+        assertEquals(results.get(0).fileName, kept.getPath());
+        assertEquals(results.get(1).fileName, created.getPath());
+        assertEquals(search(index, "entirely").get(0).fileName, modified.getPath());
+    }
+
+    @Test
+    public void rescanKeepsFilesUnderADirectoryFailingToList() throws IOException {
+        File subdirectory = folder.newFolder("subdirectory");
+        File hidden = new File(subdirectory, "hidden.txt");
+        File deleted = folder.newFile("deleted.txt");
+        Files.writeString(hidden.toPath(), "hello");
+        Files.writeString(deleted.toPath(), "hello");
+
+        InvertedIndex index = buildIndex();
+        Files.delete(deleted.toPath());
+        FilesystemCrawler crawler = FilesystemCrawlerTest.failingToList(folder.getRoot().toPath(), subdirectory.toPath());
+        new IndexWatcher(crawler, index, InMemoryFileReader.ReadStrategy.HEAP).rescan();
+
+        assertEquals(index.liveFileNames(), List.of(hidden.getPath()));
+
+        // nothing is removed when the root itself fails to list
+        crawler = FilesystemCrawlerTest.failingToList(folder.getRoot().toPath(), folder.getRoot().toPath());
+        Files.delete(hidden.toPath());
+        new IndexWatcher(crawler, index, InMemoryFileReader.ReadStrategy.HEAP).rescan();
+        assertEquals(index.liveFileNames(), List.of(hidden.getPath()));
+    }
+
+    @Test
+    public void staleIndexIsUpToDateOnceStarted() throws IOException {
+        File file = folder.newFile("a.txt");
+        Files.writeString(file.toPath(), "hello");
+        InvertedIndex index = buildIndex();
+        File created = folder.newFile("b.txt");
+        Files.writeString(created.toPath(), "hello");
+
+        FilesystemCrawler crawler = new FilesystemCrawler(folder.getRoot().getPath(), new FilesystemCrawler.Options());
+        IndexWatcher.start(crawler, index, InMemoryFileReader.ReadStrategy.HEAP, IndexWatcher.Mode.OFF, false).close();
+        assertEquals(index.liveSize(), 1);
+        for (IndexWatcher.Mode mode : List.of(IndexWatcher.Mode.OFF, IndexWatcher.Mode.POLL)) {
+            Files.writeString(folder.newFile(mode + ".txt").toPath(), "hello");
+            try (IndexWatcher watcher = IndexWatcher.start(crawler, index, InMemoryFileReader.ReadStrategy.HEAP, mode, true)) {
+                // no wait, the rescan happened before start returned
+                assertEquals(search(index, "hello").size(), mode == IndexWatcher.Mode.OFF ? 3 : 4);
+            }
+        }
+    }
+
+    @Test
+    public void rescanWithoutChangesKeepsDocIds() throws IOException {
+        File file = folder.newFile("a.txt");
+        Files.writeString(file.toPath(), "some text to find and rank.");
+
+        InvertedIndex index = buildIndex();
+        int docId = index.docId(file.getPath());
+        watcherOf(index).rescan();
+
+        assertEquals(index.docId(file.getPath()), docId);
+        assertEquals(index.size(), 1);
+    }
+
+    @Test
+    public void filesAreNotKeptOpen() throws IOException {
+        // files are only open while they are read, we can open them again from the same jvm without
+        // an OverlappingFileLockException
+        File file = folder.newFile("a.txt");
+        Files.writeString(file.toPath(), "some text");
+        buildIndex();
+
+        try (InMemoryFileReader inMemoryFileReader = InMemoryFileReader.newInstance(file.getPath()).get()) {
+            assertTrue(inMemoryFileReader.readFileContent().startsWith("some"));
+        }
+    }
+}
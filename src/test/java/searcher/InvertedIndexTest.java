@@ -0,0 +1,134 @@
+package searcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InvertedIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static InvertedIndex indexOf(String... documents) {
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < documents.length; i++) {
+            index.addDocument("doc" + i, documents[i]);
+        }
+        return index;
+    }
+
+    @Test
+    public void searchOnlyReturnsMatchingDocuments() {
+        InvertedIndex index = indexOf("hello world", "not matching", "hello nope");
+        List<Algorithm.Result> results = index.search("hello world");
+
+        assertEquals(results.size(), 2);
+        assertEquals(results.get(0).fileName, "doc0");
+        assertEquals(results.get(0).ranking, 100);
+        assertEquals(results.get(1).fileName, "doc2");
+        assertEquals(results.get(1).ranking, 33);
+    }
+
+    @Test
+    public void searchScoresLikeRankSimilarity() {
+        // the index is only an optimization, every score must be the one the algorithm would have given
+        String[] documents = new String[]{
+                "some text to find and rank.",
+                "{\"some\": \"text to find\", \"and\": \"rank\"}",
+                "Some other TEXT, repeated text text"
+        };
+        String query = "text to find among files";
+        InvertedIndex index = indexOf(documents);
+
+        for (Algorithm.Result result : index.search(query)) {
+            String document = documents[Integer.parseInt(result.fileName.substring(3))];
+            Algorithm.Result expected = Algorithm.rankSimilarity(
+                    new Algorithm.Input("", query),
+                    new Algorithm.Input(result.fileName, document));
+            assertEquals(result.ranking, expected.ranking);
+            assertEquals((int) index.score(index.prepare(query), Integer.parseInt(result.fileName.substring(3))),
+                    expected.ranking);
+        }
+    }
+
+    @Test
+    public void searchWithoutMatches() {
+        InvertedIndex index = indexOf("hello world");
+        assertTrue(index.search("nothing in common").isEmpty());
+        assertEquals(index.size(), 1);
+    }
+
+    @Test
+    public void replacedAndRemovedDocumentsAreNotReturned() {
+        InvertedIndex index = indexOf("hello world", "hello nope");
+        index.addDocument("doc1", "something else");
+        assertTrue(index.removeDocument("doc0"));
+        assertTrue(!index.removeDocument("doc0"));
+
+        assertTrue(index.search("hello").isEmpty());
+        assertEquals(index.search("else").get(0).fileName, "doc1");
+        assertEquals(index.liveSize(), 1);
+        assertEquals(index.size(), 3);
+    }
+
+    @Test
+    public void deletedDocumentsDoNotPileUp() {
+        // a log file appended to all the time, every version of it used to stay in the index
+        InvertedIndex index = indexOf("hello world", "hello nope", "something else");
+        index.enableFuzzy(1);
+        index.enableMinHash(4, 2);
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 5 * InvertedIndex.MIN_DELETED_TO_COMPACT; i++) {
+            log.append("line ").append(i % 10).append(' ');
+            index.addDocument("log", log);
+            assertTrue(index.size() <= InvertedIndex.MIN_DELETED_TO_COMPACT + index.liveSize());
+        }
+        index.removeDocument("doc1");
+
+        InvertedIndex expected = indexOf("hello world", "hello nope", "something else");
+        expected.removeDocument("doc1");
+        expected.addDocument("log", log);
+        assertEquals(index.liveSize(), 3);
+        for (Scorer scorer : Scorer.ALL) {
+            assertEquals(index.search("hello line 7 else", scorer).toString(), expected.search("hello line 7 else", scorer).toString());
+        }
+        assertEquals(index.search("hellp").get(0).fileName, "doc0");
+        assertEquals(index.searchSimilar("hello world", 1).get(0).fileName, "doc0");
+    }
+
+    @Test
+    public void lockedFilesAreSkipped() throws IOException {
+        File locked = folder.newFile("locked.txt");
+        File free = folder.newFile("free.txt");
+        Files.writeString(locked.toPath(), "hello world");
+        Files.writeString(free.toPath(), "hello nope");
+        // a second lock on the same file from this process throws OverlappingFileLockException
+        try (InMemoryFileReader reader = InMemoryFileReader.newInstance(locked.getPath()).orElseThrow()) {
+            InvertedIndex index = InvertedIndex.build(List.of(locked.getPath(), free.getPath()), InMemoryFileReader.ReadStrategy.HEAP);
+            assertEquals(index.liveFileNames(), List.of(free.getPath()));
+        }
+    }
+
+    @Test
+    public void indexFileMapsItsTermsToTheIndexTerms() throws IOException {
+        File file = folder.newFile("file.txt");
+        Files.writeString(file.toPath(), "zeta gamma beta gamma");
+        for (InMemoryFileReader.ReadStrategy strategy : InMemoryFileReader.ReadStrategy.values()) {
+            InvertedIndex index = indexOf("alpha beta", "gamma delta");
+            index.indexFile(file.getPath(), strategy);
+            InvertedIndex expected = indexOf("alpha beta", "gamma delta");
+            expected.addDocument(file.getPath(), "zeta gamma beta gamma");
+            for (Scorer scorer : Scorer.ALL) {
+                assertEquals(index.search("gamma beta zeta", scorer).toString(), expected.search("gamma beta zeta", scorer).toString());
+            }
+        }
+    }
+}
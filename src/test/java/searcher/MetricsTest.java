@@ -0,0 +1,71 @@
+package searcher;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @After
+    public void disable() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 123456789L, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(bucket < LatencyHistogram.BUCKETS);
+            assertTrue(value <= LatencyHistogram.highestValue(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+        }
+    }
+
+    @Test
+    public void percentilesWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(histogram.count(), 10000);
+        assertEquals(histogram.max(), 10000L * 1000);
+        assertEquals(histogram.percentile(50), 5000L * 1000, 5000L * 1000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(histogram.percentile(99), 9900L * 1000, 9900L * 1000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(histogram.percentile(100), histogram.max());
+        assertEquals(histogram.mean(), 5000.5 * 1000, 0.001);
+    }
+
+    @Test
+    public void disabledRecordsNothing() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.txt", "some text to find");
+        index.search("text");
+
+        assertEquals(Metrics.value(Metrics.Counter.TOKENS), 0);
+        assertEquals(Metrics.histogram(Metrics.Stage.SCORE).count(), 0);
+    }
+
+    @Test
+    public void stagesAndCounters() {
+        Metrics.setEnabled(true);
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.txt", "some text to find");
+        index.addDocument("b.txt", "other text");
+        index.search("text to");
+
+        // tokens of the indexed documents, queries are not counted
+        assertEquals(Metrics.value(Metrics.Counter.TOKENS), 6);
+        assertEquals(Metrics.value(Metrics.Counter.DOCUMENTS_SCORED), 2);
+        assertEquals(Metrics.histogram(Metrics.Stage.SCORE).count(), 1);
+
+        String json = Metrics.toJson();
+        assertTrue(json, json.startsWith("{\"enabled\":true,\"stages\":{\"read\":{\"count\":0,"));
+        assertTrue(json, json.contains("\"score\":{\"count\":1,"));
+        assertTrue(json, json.endsWith("\"documents_scored\":2,\"query_cache_hits\":0,\"query_cache_misses\":0,"
+                + "\"document_cache_hits\":0,\"document_cache_misses\":0,\"terms_expanded\":0}}"));
+        assertTrue(Metrics.summary().contains("tokens"));
+    }
+}
@@ -0,0 +1,151 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MinHashTest {
+
+    // groups of near duplicates: a random original and copies with a tenth of their words replaced
+    private static List<String> nearDuplicates(int groups, int copies, long seed) {
+        Random random = new Random(seed);
+        List<String> documents = new ArrayList<>();
+        for (int group = 0; group < groups; group++) {
+            String[] words = new String[100];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = "w" + random.nextInt(5000);
+            }
+            documents.add(String.join(" ", words));
+            for (int copy = 0; copy < copies; copy++) {
+                String[] changed = words.clone();
+                for (int i = 0; i < changed.length / 10; i++) {
+                    changed[random.nextInt(changed.length)] = "w" + random.nextInt(5000);
+                }
+                documents.add(String.join(" ", changed));
+            }
+        }
+        return documents;
+    }
+
+    private static InvertedIndex index(List<String> documents) {
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < documents.size(); i++) {
+            index.addDocument("doc" + i, documents.get(i));
+        }
+        return index;
+    }
+
+    @Test
+    public void sameTermsSameSignature() {
+        MinHash minHash = new MinHash(4, 2);
+        int[] signature = minHash.signature(new int[]{1, 2, 3}, 3);
+        assertEquals(signature.length, 8);
+        assertEquals(minHash.signature(new int[]{3, 1, 2, 2}, 4)[5], signature[5]);
+        minHash.add(0, signature);
+        assertEquals(minHash.similarity(0, minHash.signature(new int[]{2, 3, 1}, 3)), 1f, 0f);
+    }
+
+    @Test
+    public void similarityEstimatesJaccard() {
+        MinHash minHash = new MinHash(32, 8);
+        int[] a = new int[100];
+        int[] b = new int[100];
+        for (int i = 0; i < 100; i++) {
+            a[i] = i;
+            // 50 shared, jaccard 50 / 150
+            b[i] = i + 50;
+        }
+        minHash.add(0, minHash.signature(a, a.length));
+        assertEquals(minHash.similarity(0, minHash.signature(b, b.length)), 1f / 3, 0.1f);
+    }
+
+    @Test
+    public void probabilityIsAnSCurve() {
+        MinHash minHash = new MinHash(20, 5);
+        assertTrue(minHash.probability(0.2) < 0.01);
+        assertTrue(minHash.probability(0.8) > 0.99);
+        assertEquals(minHash.probability(0), 0, 0);
+        assertEquals(minHash.probability(1), 1, 0);
+    }
+
+    @Test
+    public void findsNearDuplicates() {
+        InvertedIndex index = index(nearDuplicates(50, 4, 42L));
+        index.enableMinHash(20, 5);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            double recall = 0;
+            for (int group = 0; group < 50; group++) {
+                String original = nearDuplicates(50, 4, 42L).get(group * 5);
+                List<Algorithm.Result> approximate = index.searchSimilar(original, 5);
+                List<Algorithm.Result> exact = ParallelSearch.search(index, original, 5, pool);
+                recall += MinHash.recall(exact, approximate);
+                // candidates are ranked with their exact score
+                assertEquals(approximate.get(0).toString(), exact.get(0).toString());
+            }
+            assertTrue(recall / 50 > 0.95);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void onlyCandidatesAreScored() {
+        InvertedIndex index = index(nearDuplicates(200, 4, 7L));
+        index.enableMinHash(20, 5);
+        boolean enabled = Metrics.enabled();
+        Metrics.setEnabled(true);
+        try {
+            Metrics.reset();
+            index.searchSimilar(nearDuplicates(200, 4, 7L).get(0), 10);
+            assertTrue(Metrics.value(Metrics.Counter.DOCUMENTS_SCORED) < 50);
+        } finally {
+            Metrics.setEnabled(enabled);
+        }
+    }
+
+    @Test
+    public void signaturesFollowTheIndex() {
+        InvertedIndex index = new InvertedIndex();
+        assertEquals(index.searchSimilar("some text", 10), List.of());
+        index.addDocument("a", "some text to find");
+        index.enableMinHash(8, 2);
+        index.addDocument("b", "some text to find");
+        index.addDocument("c", "nothing in common");
+        assertEquals(index.searchSimilar("some text to find", 10).size(), 2);
+
+        index.removeDocument("a");
+        InvertedIndex copy = index.compactCopy();
+        assertEquals(copy.searchSimilar("some text to find", 10).toString(), index.searchSimilar("some text to find", 10).toString());
+        assertEquals(copy.searchSimilar("some text to find", 10).get(0).fileName, "b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsBandsAndRows() {
+        new MinHash(0, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void signaturesHaveABoundedLength() {
+        new MinHash(1 << 16, 1 << 16);
+    }
+
+    @Test
+    public void signaturesOfEveryChunkStayApart() {
+        MinHash minHash = new MinHash(4, 2);
+        int documents = 3 << MinHash.CHUNK_SHIFT;
+        for (int docId = 0; docId < documents; docId++) {
+            minHash.add(docId, minHash.signature(new int[]{docId}, 1));
+        }
+        for (int docId = 0; docId < documents; docId += 1000) {
+            assertEquals(minHash.similarity(docId, minHash.signature(new int[]{docId}, 1)), 1f, 0f);
+        }
+        assertEquals(minHash.similarity(documents - 1, minHash.signature(new int[]{documents - 1}, 1)), 1f, 0f);
+    }
+}
@@ -0,0 +1,128 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelSearchTest {
+
+    private static InvertedIndex randomIndex(int documents, int vocabulary, long seed) {
+        // small vocabulary on purpose, we want plenty of ties to check the ordering is deterministic
+        Random random = new Random(seed);
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < documents; i++) {
+            StringBuilder document = new StringBuilder();
+            int length = 1 + random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                document.append("w").append(random.nextInt(vocabulary)).append(' ');
+            }
+            index.addDocument("doc" + i, document);
+        }
+        return index;
+    }
+
+    private static List<String> sequential(InvertedIndex index, String query, int limit) {
+        // best first, on ties the first file name, whatever the doc ids
+        return index.search(query).stream()
+                .sorted()
+                .limit(limit)
+                .map(Algorithm.Result::toString)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> parallel(InvertedIndex index, String query, int limit, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return ParallelSearch.search(index, query, limit, pool).stream()
+                    .map(Algorithm.Result::toString)
+                    .collect(Collectors.toList());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sameResultsAsSequential() {
+        InvertedIndex index = randomIndex(5000, 50, 42L);
+        String query = "w1 w2 w3 w10 w20 unknown";
+        for (int parallelism : new int[]{1, 2, 3, 8}) {
+            assertEquals(parallel(index, query, 10, parallelism), sequential(index, query, 10));
+        }
+    }
+
+    @Test
+    public void limitBiggerThanMatches() {
+        InvertedIndex index = randomIndex(100, 1000, 7L);
+        String query = "w1 w2";
+        assertEquals(parallel(index, query, 1000, 4), sequential(index, query, 1000));
+    }
+
+    @Test
+    public void jaccardBoundsKeepExactResults() {
+        // every query of a skewed corpus, frequent and rare terms mixed, several limits and parallelisms
+        Random random = new Random(3L);
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder document = new StringBuilder();
+            int length = 1 + random.nextInt(random.nextBoolean() ? 5 : 60);
+            for (int j = 0; j < length; j++) {
+                // w0 is everywhere, w999 almost nowhere
+                document.append("w").append((int) Math.pow(random.nextInt(1000), 2) / 1000).append(' ');
+            }
+            index.addDocument("doc" + i, document);
+        }
+        index.removeDocument("doc5");
+        for (int q = 0; q < 50; q++) {
+            String query = "w" + random.nextInt(1000) + " w" + random.nextInt(50) + " w0 w" + random.nextInt(1000);
+            for (int limit : new int[]{1, 10, 100}) {
+                assertEquals(parallel(index, query, limit, 1 + q % 4), sequential(index, query, limit));
+            }
+        }
+    }
+
+    @Test
+    public void selectiveQueriesSkipMostDocuments() {
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < 10000; i++) {
+            // file names sort like doc ids, a full range turns down the later documents of the same score right away
+            index.addDocument(String.format("doc%05d", i), "common words everywhere " + (i % 1000 == 0 ? "rare" : "w" + i));
+        }
+        Metrics.setEnabled(true);
+        Metrics.reset();
+        try {
+            List<String> results = parallel(index, "rare common", 10, 1);
+            // 4 ranges per worker, each only scores a few more documents than it takes to fill its TopK, out of 10000
+            assertEquals(Metrics.value(Metrics.Counter.DOCUMENTS_SCORED) < 100, true);
+            assertEquals(results, sequential(index, "rare common", 10));
+        } finally {
+            Metrics.setEnabled(false);
+            Metrics.reset();
+        }
+    }
+
+    @Test
+    public void tiesGoToTheFirstFileNameWhateverTheIndexingOrder() {
+        InvertedIndex index = new InvertedIndex();
+        for (String fileName : new String[]{"d", "b", "e", "a", "c"}) {
+            index.addDocument(fileName, "same words");
+        }
+        assertEquals(parallel(index, "same", 2, 2), List.of("Result{fileName='a', ranking=50}", "Result{fileName='b', ranking=50}"));
+        // the ranks follow the documents added after a query
+        index.addDocument("0", "same words");
+        assertEquals(parallel(index, "same", 1, 1), List.of("Result{fileName='0', ranking=50}"));
+        assertEquals(BatchSearch.search(index, List.of("same"), Scorer.JACCARD, 1, ForkJoinPool.commonPool()).get(0).get(0).fileName, "0");
+        InvertedIndex copy = index.compactCopy();
+        assertEquals(copy.fileName(0), "0");
+        assertEquals(parallel(copy, "same", 1, 1), List.of("Result{fileName='0', ranking=50}"));
+    }
+
+    @Test
+    public void emptyIndex() {
+        assertEquals(parallel(new InvertedIndex(), "hello", 10, 4).size(), 0);
+    }
+}
@@ -0,0 +1,101 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PostingListsTest {
+
+    // doc ids of term 0 with random gaps, spanning several blocks and a tail
+    private static List<Integer> fill(PostingLists postings, int size, long seed) {
+        Random random = new Random(seed);
+        List<Integer> docIds = new ArrayList<>();
+        int docId = 0;
+        for (int i = 0; i < size; i++) {
+            docId += 1 + random.nextInt(i % 50 == 0 ? 100000 : 10);
+            docIds.add(docId);
+            postings.add(0, docId, 1 + docId % 7);
+            // another term in between, blocks of both lists are interleaved off heap
+            postings.add(1, i, 1);
+        }
+        return docIds;
+    }
+
+    @Test
+    public void walksEveryPosting() {
+        PostingLists postings = new PostingLists();
+        List<Integer> expected = fill(postings, 1000, 42L);
+        assertEquals(postings.size(0), 1000);
+
+        List<Integer> docIds = new ArrayList<>();
+        PostingLists.Cursor cursor = postings.cursor().reset(0);
+        for (int docId = cursor.next(); docId != PostingLists.END; docId = cursor.next()) {
+            docIds.add(docId);
+            assertEquals(cursor.frequency(), 1 + docId % 7);
+        }
+        assertEquals(docIds, expected);
+        assertEquals(cursor.next(), PostingLists.END);
+    }
+
+    @Test
+    public void advanceSkipsToTheFirstDocIdAtOrAfterTheTarget() {
+        PostingLists postings = new PostingLists();
+        List<Integer> expected = fill(postings, 1000, 7L);
+        Random random = new Random(7L);
+        for (int run = 0; run < 100; run++) {
+            PostingLists.Cursor cursor = postings.cursor().reset(0);
+            int target = 0;
+            while (true) {
+                target += random.nextInt(20000);
+                int docId = cursor.advance(target);
+                int next = target;
+                int expectedDocId = expected.stream().filter(id -> id >= next).findFirst().orElse(PostingLists.END);
+                assertEquals(docId, expectedDocId);
+                if (docId == PostingLists.END) {
+                    break;
+                }
+                assertEquals(cursor.docId(), docId);
+                assertEquals(cursor.frequency(), 1 + docId % 7);
+                // advancing backwards stays where it is
+                assertEquals(cursor.advance(target - 1), docId);
+                target = docId;
+            }
+        }
+    }
+
+    @Test
+    public void emptyAndUnknownTerms() {
+        PostingLists postings = new PostingLists();
+        assertEquals(postings.size(3), 0);
+        postings.add(0, 5, 1);
+        assertEquals(postings.cursor().reset(0).advance(6), PostingLists.END);
+        assertEquals(postings.cursor().reset(0).advance(5), 5);
+        assertEquals(postings.offHeapBytes(), 0L);
+    }
+
+    @Test
+    public void denseListsTakeAboutTwoBytesPerPosting() {
+        PostingLists postings = new PostingLists();
+        for (int docId = 0; docId < 100 * PostingLists.BLOCK_SIZE; docId++) {
+            postings.add(0, docId, 1);
+        }
+        // a byte per gap, a byte per frequency and the two widths per block
+        assertEquals(postings.offHeapBytes(), 100L * (2 + 2 * PostingLists.BLOCK_SIZE));
+    }
+
+    @Test
+    public void indexSearchesThroughBlocks() {
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < 5 * PostingLists.BLOCK_SIZE; i++) {
+            index.addDocument("doc" + i, i % 3 == 0 ? "common rare" : "common");
+        }
+        assertTrue(index.postings().offHeapBytes() > 0);
+        assertEquals(index.search("rare").size(), (5 * PostingLists.BLOCK_SIZE + 2) / 3);
+        assertEquals(index.search("common").size(), 5 * PostingLists.BLOCK_SIZE);
+    }
+}
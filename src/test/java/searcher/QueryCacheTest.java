@@ -0,0 +1,86 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryCacheTest {
+
+    private static final List<Algorithm.Result> RESULTS = List.of(new Algorithm.Result("a.txt", 50));
+
+    @Test
+    public void keyIgnoresOrderCaseAndPunctuation() {
+        String key = QueryCache.key("Text to find", Scorer.JACCARD, 10);
+        assertEquals(QueryCache.key("find, TEXT to!", Scorer.JACCARD, 10), key);
+        assertEquals(QueryCache.key("text to find to", Scorer.JACCARD, 10), key);
+        assertNotEquals(QueryCache.key("text to find", Scorer.JACCARD, 5), key);
+        assertNotEquals(QueryCache.key("text to find", Scorer.byName("bm25").get(), 10), key);
+        // bm25 weighs repeated terms, they are not the same query
+        assertNotEquals(QueryCache.key("text to find to", Scorer.byName("bm25").get(), 10),
+                QueryCache.key("text to find", Scorer.byName("bm25").get(), 10));
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        QueryCache cache = new QueryCache(1024 * 1024);
+        assertTrue(cache.get("key", 1).isEmpty());
+        cache.put("key", 1, RESULTS);
+
+        assertEquals(cache.get("key", 1).get().toString(), RESULTS.toString());
+        assertEquals(cache.hits(), 1);
+        assertEquals(cache.misses(), 1);
+    }
+
+    @Test
+    public void indexChangesInvalidate() {
+        QueryCache cache = new QueryCache(1024 * 1024);
+        cache.put("key", 1, RESULTS);
+
+        assertTrue(cache.get("key", 2).isEmpty());
+        assertEquals(cache.size(), 0);
+        // computed before the change, stale
+        cache.put("key", 1, RESULTS);
+        assertTrue(cache.get("key", 2).isEmpty());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        long entrySize = QueryCache.sizeOf("key0", RESULTS);
+        QueryCache cache = new QueryCache(entrySize * 2);
+        cache.put("key0", 1, RESULTS);
+        cache.put("key1", 1, RESULTS);
+        cache.get("key0", 1);
+        cache.put("key2", 1, RESULTS);
+
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.evictions(), 1);
+        assertTrue(cache.bytes() <= cache.maxBytes());
+        assertTrue(cache.get("key0", 1).isPresent());
+        assertTrue(cache.get("key1", 1).isEmpty());
+    }
+
+    @Test
+    public void searchThroughTheCache() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a.txt", "some text to find");
+        QueryCache cache = new QueryCache(1024 * 1024);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            Searcher.search(index, cache, "text to find", Scorer.JACCARD, 10, pool);
+            assertEquals(Searcher.search(index, cache, "find text", Scorer.JACCARD, 10, pool).size(), 1);
+            assertEquals(Searcher.search(index, cache, "Text to find", Scorer.JACCARD, 10, pool).get(0).ranking, 75);
+            assertEquals(cache.hits(), 1);
+
+            index.addDocument("b.txt", "text to find");
+            assertEquals(Searcher.search(index, cache, "text to find", Scorer.JACCARD, 10, pool).get(0).fileName, "b.txt");
+            assertEquals(cache.misses(), 3);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package searcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteShardTest {
+
+    private ForkJoinPool pool;
+    private SearchServer server;
+
+    @Before
+    public void start() throws IOException {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("remote/a.txt", "some \"text\" to find");
+        index.addDocument("remote/b.txt", "other text");
+        pool = new ForkJoinPool(2);
+        server = new SearchServer(index, new InetSocketAddress("localhost", 0),
+                SearcherOptions.parse(new String[]{"filesystem"}), pool);
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.close();
+        pool.shutdown();
+    }
+
+    @Test
+    public void parseResults() {
+        List<Algorithm.Result> results = List.of(new Algorithm.Result("a \"quoted\"\\path\n.txt", 75.5f),
+                new Algorithm.Result("b.txt", 3));
+        assertEquals(Json.parseResults(Json.results("query", results)).toString(), results.toString());
+        assertEquals(Json.parseResults("{\"other\":[1,{\"x\":null}],\"results\":[]}").size(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInvalidResults() {
+        Json.parseResults("{\"results\":[{\"score\":1.0}]}");
+    }
+
+    @Test
+    public void gathersLocalAndRemoteShards() {
+        InvertedIndex local = new InvertedIndex();
+        local.addDocument("local/c.txt", "text to find");
+        ScatterGather shards = new ScatterGather(List.of(Shard.local(local),
+                new RemoteShard(new InetSocketAddress("localhost", server.port()))));
+
+        List<Algorithm.Result> results = shards.search("text to find", Scorer.JACCARD, 10, pool);
+        assertEquals(results.size(), 3);
+        assertEquals(results.get(0).fileName, "local/c.txt");
+        assertEquals(results.get(1).fileName, "remote/a.txt");
+        // nothing tells when a remote shard changes
+        assertEquals(shards.version(), -1);
+    }
+
+    @Test
+    public void unreachableShardIsSkipped() {
+        InvertedIndex local = new InvertedIndex();
+        local.addDocument("local/c.txt", "text to find");
+        int port = server.port();
+        server.close();
+        ScatterGather shards = new ScatterGather(List.of(Shard.local(local),
+                new RemoteShard(new InetSocketAddress("localhost", port))));
+
+        List<Algorithm.Result> results = shards.search("text", Scorer.JACCARD, 10, pool);
+        assertEquals(results.size(), 1);
+        assertTrue(results.get(0).fileName.startsWith("local/"));
+    }
+}
@@ -0,0 +1,98 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScorerTest {
+
+    private static InvertedIndex indexOf(String... documents) {
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < documents.length; i++) {
+            index.addDocument("doc" + i, documents[i]);
+        }
+        return index;
+    }
+
+    private static List<Algorithm.Result> search(InvertedIndex index, String query, String scorer) {
+        List<Algorithm.Result> results = index.search(query, Scorer.byName(scorer).get());
+        results.sort(null);
+        return results;
+    }
+
+    @Test
+    public void byName() {
+        assertEquals(Scorer.byName("BM25").get().name(), "bm25");
+        assertEquals(Scorer.byName("jaccard").get(), Scorer.JACCARD);
+        assertTrue(Scorer.byName("unknown").isEmpty());
+    }
+
+    @Test
+    public void tfIdfIsHundredForTheSameDirection() {
+        InvertedIndex index = indexOf("banana banana", "apple banana", "cherry date");
+
+        List<Algorithm.Result> results = search(index, "banana", "tfidf");
+        assertEquals(results.get(0).fileName, "doc0");
+        assertEquals(results.get(0).score, 100f, 0.01f);
+        assertEquals(results.get(1).fileName, "doc1");
+        assertTrue(results.get(1).score < 100f);
+        assertEquals(results.size(), 2);
+    }
+
+    @Test
+    public void bm25FavoursRareTermsAndRepetitions() {
+        InvertedIndex index = indexOf(
+                "common rare",
+                "common common",
+                "common words only",
+                "common rare rare");
+
+        List<Algorithm.Result> results = search(index, "common rare", "bm25");
+        assertEquals(results.get(0).fileName, "doc3");
+        assertEquals(results.get(1).fileName, "doc0");
+        // only the common term, worth less than a single rare one
+        assertTrue(results.get(2).score < results.get(1).score / 2);
+    }
+
+    @Test
+    public void statisticsFollowUpdates() {
+        InvertedIndex index = indexOf("a b", "a c c c");
+        assertEquals(index.documentFrequency(index.terms().lookup("a")), 2);
+        assertEquals(index.averageDocumentLength(), 3f, 0f);
+
+        index.removeDocument("doc1");
+        index.addDocument("doc0", "b b");
+        assertEquals(index.documentFrequency(index.terms().lookup("a")), 0);
+        assertEquals(index.documentFrequency(index.terms().lookup("b")), 1);
+        assertEquals(index.averageDocumentLength(), 2f, 0f);
+        assertTrue(search(index, "a", "tfidf").isEmpty());
+    }
+
+    @Test
+    public void singleDocumentScoreIsTheSameAsTheSearch() {
+        InvertedIndex index = indexOf("some text to find", "text text text", "other words", "find the text to rank");
+        for (Scorer scorer : Scorer.ALL) {
+            InvertedIndex.Query query = index.prepare("text to find text", scorer);
+            for (Algorithm.Result result : index.search("text to find text", scorer)) {
+                assertEquals(result.fileName + " " + scorer.name(),
+                        index.score(query, index.docId(result.fileName)), result.score, 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void parallelSearchUsesTheScorer() {
+        InvertedIndex index = indexOf("common rare", "common common", "common words only", "common rare rare");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Algorithm.Result> parallel = ParallelSearch.search(index, "common rare", Scorer.byName("bm25").get(), 10, pool);
+            assertEquals(parallel.toString(), search(index, "common rare", "bm25").toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
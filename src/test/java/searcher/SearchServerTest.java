@@ -0,0 +1,108 @@
+package searcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SearchServerTest {
+
+    private InvertedIndex index;
+    private ForkJoinPool pool;
+    private SearchServer server;
+
+    @Before
+    public void start() throws IOException {
+        index = new InvertedIndex();
+        index.addDocument("a.txt", "some text to find");
+        index.addDocument("b.txt", "other text");
+        pool = new ForkJoinPool(2);
+        server = new SearchServer(index, new InetSocketAddress("localhost", 0),
+                SearcherOptions.parse(new String[]{"filesystem"}), pool);
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.close();
+        pool.shutdown();
+    }
+
+    private int status(String pathAndQuery) throws IOException {
+        return connect(pathAndQuery).getResponseCode();
+    }
+
+    private String get(String pathAndQuery) throws IOException {
+        HttpURLConnection connection = connect(pathAndQuery);
+        assertEquals(connection.getResponseCode(), 200);
+        try (InputStream body = connection.getInputStream()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private HttpURLConnection connect(String pathAndQuery) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.port() + pathAndQuery).openConnection();
+    }
+
+    @Test
+    public void search() throws IOException {
+        assertEquals(get("/search?q=text%20to+find&k=1"),
+                "{\"query\":\"text to find\",\"results\":[{\"fileName\":\"a.txt\",\"ranking\":75,\"score\":75.0}]}");
+        assertTrue(get("/search?q=other&scorer=bm25").contains("\"fileName\":\"b.txt\""));
+        assertTrue(get("/stats").startsWith("{\"enabled\":"));
+    }
+
+    @Test
+    public void invalidRequests() throws IOException {
+        assertEquals(status("/search"), 400);
+        assertEquals(status("/search?q=text&k=0"), 400);
+        assertEquals(status("/search?q=text&scorer=unknown"), 400);
+    }
+
+    @Test
+    public void fewChangesInABigIndexWait() {
+        assertFalse(SearchServer.worthPublishing(0, 10, 60_000, 60_000, 0));
+        assertTrue(SearchServer.worthPublishing(1, 10, 0, 1000, 0));
+        // 1 change in 1000 documents waits, 10 do not
+        assertFalse(SearchServer.worthPublishing(1, 1000, 1000, 1000, 0));
+        assertTrue(SearchServer.worthPublishing(10, 1000, 1000, 1000, 0));
+        assertTrue(SearchServer.worthPublishing(1, 1000, SearchServer.MAX_PUBLISH_DELAY_MILLIS, 1000, 0));
+        // a copy taking 500 ms is not done again before 2 s
+        assertFalse(SearchServer.worthPublishing(1000, 1000, 60_000, 1000, 500));
+        assertTrue(SearchServer.worthPublishing(1000, 1000, 60_000, 2000, 500));
+    }
+
+    @Test
+    public void changesArePublishedAtOnce() throws IOException {
+        InvertedIndex pinned = server.published();
+        server.publish();
+        assertSame(server.published(), pinned);
+
+        index.addDocument("c.txt", "text to find");
+        index.removeDocument("a.txt");
+        // not published yet, requests still see the previous copy
+        assertTrue(get("/search?q=find").contains("a.txt"));
+
+        server.publish();
+        assertNotSame(server.published(), pinned);
+        assertEquals(server.published().size(), 2);
+        assertEquals(server.published().version(), index.version());
+        assertEquals(get("/search?q=find"),
+                "{\"query\":\"find\",\"results\":[{\"fileName\":\"c.txt\",\"ranking\":33,\"score\":33.0}]}");
+        // the pinned copy is left as it was
+        assertEquals(pinned.docId("a.txt"), 0);
+    }
+}
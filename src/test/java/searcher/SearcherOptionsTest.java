@@ -0,0 +1,165 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearcherOptionsTest {
+
+    @Test
+    public void directoryOnly() {
+        SearcherOptions options = SearcherOptions.parse(new String[]{"filesystem"});
+        assertEquals(options.directory, "filesystem");
+        assertEquals(options.parallelism, Runtime.getRuntime().availableProcessors());
+        assertEquals(options.limit, Searcher.LIMIT_QUERY_RESULT);
+    }
+
+    @Test
+    public void optionsInAnyPosition() {
+        SearcherOptions options = SearcherOptions.parse(new String[]{"--parallelism=3", "filesystem", "--limit=5"});
+        assertEquals(options.directory, "filesystem");
+        assertEquals(options.parallelism, 3);
+        assertEquals(options.limit, 5);
+    }
+
+    @Test
+    public void readStrategy() {
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem"}).readStrategy, InMemoryFileReader.ReadStrategy.HEAP);
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--read=mmap"}).readStrategy,
+                InMemoryFileReader.ReadStrategy.MMAP);
+    }
+
+    @Test
+    public void readAhead() {
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem"}).readAhead, 32);
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--read-ahead=0"}).readAhead, 0);
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--read-ahead=8"}).readAhead, 8);
+    }
+
+    @Test
+    public void watchMode() {
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem"}).watch, IndexWatcher.Mode.NATIVE);
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--watch=off"}).watch, IndexWatcher.Mode.OFF);
+    }
+
+    @Test
+    public void crawlOptions() {
+        SearcherOptions options = SearcherOptions.parse(new String[]{"filesystem", "--exclude=*.log,build/**",
+                "--max-file-size=10m", "--max-depth=2", "--symlinks=skip", "--parallelism=2"});
+        assertEquals(options.crawl.excludes, List.of("*.log", "build/**"));
+        assertEquals(options.crawl.maxFileSize, 10L * 1024 * 1024);
+        assertEquals(options.crawl.maxDepth, 2);
+        assertEquals(options.crawl.symlinks, FilesystemCrawler.SymlinkPolicy.SKIP);
+        assertEquals(options.crawl.parallelism, 2);
+    }
+
+    @Test
+    public void cacheSize() {
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--cache-size=64k"}).cacheSize, 64L * 1024);
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--cache-size=0"}).cacheSize, 0L);
+    }
+
+    @Test
+    public void scanEngine() {
+        SearcherOptions options = SearcherOptions.parse(new String[]{"filesystem", "--engine=scan",
+                "--document-cache=1m", "--document-cache-references=soft"});
+        assertEquals(options.engine, SearcherOptions.Engine.SCAN);
+        assertEquals(options.documentCacheSize, 1024L * 1024);
+        assertEquals(options.documentCacheReferences, DocumentCache.References.SOFT);
+    }
+
+    @Test
+    public void batch() {
+        SearcherOptions options = SearcherOptions.parse(new String[]{"filesystem", "--batch=-", "--batch-size=10"});
+        assertEquals(options.batch, "-");
+        assertEquals(options.batchSize, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchNeedsTheIndex() {
+        SearcherOptions.parse(new String[]{"filesystem", "--batch=-", "--engine=scan"});
+    }
+
+    @Test
+    public void serve() {
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--serve=8080"}).serve.getPort(), 8080);
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--serve=0.0.0.0:9000"}).serve.getHostString(), "0.0.0.0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPort() {
+        SearcherOptions.parse(new String[]{"filesystem", "--serve=localhost:http"});
+    }
+
+    @Test
+    public void shards() {
+        SearcherOptions options = SearcherOptions.parse(new String[]{"filesystem", "--shards=4", "--shard=0", "--serve=9000"});
+        assertEquals(options.shards, 4);
+        assertEquals(options.shard, 0);
+        options = SearcherOptions.parse(new String[]{"filesystem", "--remote-shards=9000,otherhost:9001"});
+        assertEquals(options.remoteShards.size(), 2);
+        assertEquals(options.remoteShards.get(1).getHostString(), "otherhost");
+        assertEquals(options.remoteShards.get(1).getPort(), 9001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shardOutOfRange() {
+        SearcherOptions.parse(new String[]{"filesystem", "--shards=4", "--shard=4"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void serveNeedsASingleShard() {
+        SearcherOptions.parse(new String[]{"filesystem", "--shards=4", "--serve=9000"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownReadStrategy() {
+        SearcherOptions.parse(new String[]{"filesystem", "--read=carrier-pigeon"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noDirectory() {
+        SearcherOptions.parse(new String[]{"--parallelism=3"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void twoDirectories() {
+        SearcherOptions.parse(new String[]{"filesystem", "other"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidParallelism() {
+        SearcherOptions.parse(new String[]{"filesystem", "--parallelism=0"});
+    }
+
+    @Test
+    public void minHash() {
+        SearcherOptions options = SearcherOptions.parse(new String[]{"filesystem", "--minhash=16x4"});
+        assertEquals(options.minHashBands, 16);
+        assertEquals(options.minHashRows, 4);
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem"}).minHashBands, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minHashNeedsASingleIndex() {
+        SearcherOptions.parse(new String[]{"filesystem", "--minhash=16x4", "--shards=2"});
+    }
+
+    @Test
+    public void fuzzy() {
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem", "--fuzzy=2"}).fuzzy, 2);
+        assertEquals(SearcherOptions.parse(new String[]{"filesystem"}).fuzzy, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeIsBounded() {
+        SearcherOptions.parse(new String[]{"filesystem", "--batch=-", "--batch-size=" + (BatchSearch.MAX_BATCH_SIZE + 1)});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fuzzyDistanceIsBounded() {
+        SearcherOptions.parse(new String[]{"filesystem", "--fuzzy=4"});
+    }
+}
@@ -0,0 +1,141 @@
+package searcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ForkJoinPool pool;
+    private File documents;
+    private FilesystemCrawler crawler;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(4);
+        documents = folder.newFolder("documents");
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(new File(documents, "file" + i + ".txt").toPath(), "common text number" + i + (i % 3 == 0 ? " three" : ""));
+        }
+        crawler = new FilesystemCrawler(documents.getPath(), new FilesystemCrawler.Options());
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private ShardedIndex build(int count, int owned, Path snapshot) {
+        return ShardedIndex.loadOrBuild(crawler, InMemoryFileReader.ReadStrategy.HEAP, count, owned, snapshot, pool).get();
+    }
+
+    @Test
+    public void filesAreSpreadByPathHash() {
+        ShardedIndex index = build(4, -1, null);
+        assertEquals(index.liveSize(), 20);
+        for (int shard = 0; shard < 4; shard++) {
+            for (String fileName : index.shard(shard).liveFileNames()) {
+                assertEquals(ShardedIndex.shardOf(crawler.root(), fileName, 4), shard);
+            }
+        }
+    }
+
+    @Test
+    public void scatterGatherMatchesSingleIndex() {
+        InvertedIndex single = InvertedIndex.build(crawler, InMemoryFileReader.ReadStrategy.HEAP).get();
+        ScatterGather sharded = new ScatterGather(build(3, -1, null).shards());
+
+        List<Algorithm.Result> expected = ParallelSearch.search(single, "text number7 three", 5, pool);
+        List<Algorithm.Result> results = sharded.search("text number7 three", Scorer.JACCARD, 5, pool);
+        assertEquals(results.size(), 5);
+        assertEquals(results.get(0).fileName, expected.get(0).fileName);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).score, expected.get(i).score, 0f);
+        }
+    }
+
+    @Test
+    public void versionGrowsWithAnyShard() throws IOException {
+        ShardedIndex index = build(2, -1, null);
+        ScatterGather sharded = new ScatterGather(index.shards());
+        long version = sharded.version();
+
+        index.reindex(new File(documents, "file1.txt").getPath(), InMemoryFileReader.ReadStrategy.HEAP);
+        assertTrue(sharded.version() > version);
+    }
+
+    @Test
+    public void singleShardIgnoresTheOthers() throws IOException {
+        ShardedIndex index = build(2, 1, null);
+        assertNull(index.shard(0));
+        for (String fileName : index.liveFileNames()) {
+            assertEquals(ShardedIndex.shardOf(crawler.root(), fileName, 2), 1);
+        }
+
+        // the watcher never reads files of shards held by other processes
+        new IndexWatcher(crawler, index, InMemoryFileReader.ReadStrategy.HEAP).rescan();
+        assertEquals(index.liveSize(), index.shard(1).liveSize());
+    }
+
+    @Test
+    public void corruptShardIsRebuiltAlone() throws IOException {
+        Path snapshot = folder.getRoot().toPath().resolve("index.snapshot");
+        build(2, -1, snapshot);
+        assertTrue(Files.exists(ShardedIndex.snapshotOf(snapshot, 0)));
+        assertTrue(Files.exists(ShardedIndex.snapshotOf(snapshot, 1)));
+
+        Path corrupt = ShardedIndex.snapshotOf(snapshot, 0);
+        try (RandomAccessFile file = new RandomAccessFile(corrupt.toFile(), "rw")) {
+            file.seek(IndexSnapshotFile.HEADER_SIZE + 6);
+            int original = file.read();
+            file.seek(IndexSnapshotFile.HEADER_SIZE + 6);
+            file.write(original ^ 0xFF);
+        }
+        long untouched = Files.getLastModifiedTime(ShardedIndex.snapshotOf(snapshot, 1)).toMillis();
+        Files.setLastModifiedTime(ShardedIndex.snapshotOf(snapshot, 1), FileTime.fromMillis(untouched - 10_000));
+
+        ShardedIndex loaded = build(2, -1, snapshot);
+        assertEquals(loaded.liveSize(), 20);
+        assertTrue(IndexSnapshotFile.load(corrupt).isPresent());
+        // the healthy shard was loaded, not saved again
+        assertEquals(Files.getLastModifiedTime(ShardedIndex.snapshotOf(snapshot, 1)).toMillis(), untouched - 10_000);
+    }
+
+    @Test
+    public void everySpellingOfAPathHasTheSameShard() {
+        // i.e. a shard process started from another directory, or with a trailing slash
+        String root = Paths.get("").toAbsolutePath().relativize(documents.toPath()).toString();
+        String file = root + File.separator + "file1.txt";
+        String otherFile = documents.getPath() + File.separator + "." + File.separator + "file1.txt";
+        for (int count = 1; count < 16; count++) {
+            int shard = ShardedIndex.shardOf(root, file, count);
+            assertEquals(ShardedIndex.shardOf(documents.getPath() + File.separator, otherFile, count), shard);
+            assertEquals(ShardedIndex.shardOf(documents.getPath(), file, count), shard);
+            assertEquals(shard, Math.floorMod("file1.txt".hashCode(), count));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shardOutOfRange() {
+        new ShardedIndex(".", 2, 2);
+    }
+}
@@ -0,0 +1,125 @@
+package searcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TermDictionaryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void internAndLookup() {
+        TermDictionary dictionary = new TermDictionary();
+        int hello = dictionary.intern("hello".toCharArray(), 5);
+        int world = dictionary.intern("world".toCharArray(), 5);
+
+        assertEquals(dictionary.intern("hello".toCharArray(), 5), hello);
+        assertEquals(dictionary.lookup("world"), world);
+        assertEquals(dictionary.lookup("nope"), -1);
+        assertEquals(dictionary.term(hello), "hello");
+        assertEquals(dictionary.size(), 2);
+    }
+
+    @Test
+    public void onlyTheGivenLengthOfTheBufferIsUsed() {
+        // the Tokenizer buffer is bigger than the token, leftovers of previous tokens must be ignored
+        TermDictionary dictionary = new TermDictionary();
+        int he = dictionary.intern("hello".toCharArray(), 2);
+        assertEquals(dictionary.term(he), "he");
+        assertEquals(dictionary.lookup("hello"), -1);
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        TermDictionary dictionary = new TermDictionary();
+        for (int i = 0; i < 100_000; i++) {
+            String term = "term" + i;
+            assertEquals(dictionary.intern(term.toCharArray(), term.length()), i);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(dictionary.lookup("term" + i), i);
+            assertEquals(dictionary.term(i), "term" + i);
+        }
+    }
+
+    @Test
+    public void internAllIsSortedAndDistinct() {
+        TermDictionary dictionary = new TermDictionary();
+        Tokenizer tokenizer = new Tokenizer();
+        dictionary.internAll("c b a", tokenizer);
+
+        assertArrayEquals(dictionary.internAll("A a b? B c", tokenizer), new int[]{0, 1, 2});
+        assertArrayEquals(dictionary.internAll("!!", tokenizer), new int[0]);
+    }
+
+    @Test
+    public void countAllKeepsFrequencies() {
+        TermDictionary dictionary = new TermDictionary();
+        Tokenizer tokenizer = new Tokenizer();
+        dictionary.internAll("c b a", tokenizer);
+
+        TermDictionary.TermCounts counts = dictionary.countAll("A a b? a c", tokenizer);
+        assertArrayEquals(counts.termIds, new int[]{0, 1, 2});
+        assertArrayEquals(counts.frequencies, new int[]{1, 1, 3});
+        assertEquals(counts.length, 5);
+    }
+
+    @Test
+    public void countAllOfAFileBiggerThanAChunk() throws IOException {
+        File file = folder.newFile("repeated.txt");
+        StringBuilder content = new StringBuilder();
+        while (content.length() < InMemoryFileReader.CHUNK_SIZE * 3) {
+            content.append("alpha beta alpha ");
+        }
+        Files.writeString(file.toPath(), content);
+        int repetitions = content.length() / "alpha beta alpha ".length();
+
+        TermDictionary dictionary = new TermDictionary();
+        try (InMemoryFileReader reader = InMemoryFileReader.newInstance(file.getPath()).get()) {
+            TermDictionary.TermCounts counts = dictionary.countAll(reader, InMemoryFileReader.ReadStrategy.STREAM, new Tokenizer());
+            assertArrayEquals(counts.termIds, new int[]{0, 1});
+            assertArrayEquals(counts.frequencies, new int[]{2 * repetitions, repetitions});
+        }
+        // nothing of the previous document is left behind
+        assertArrayEquals(dictionary.countAll("beta", new Tokenizer()).frequencies, new int[]{1});
+    }
+
+    @Test
+    public void heapStreamsFilesTooBigToReadWhole() throws IOException {
+        File file = folder.newFile("log.txt");
+        StringBuilder content = new StringBuilder();
+        while (content.length() <= InMemoryFileReader.MAX_HEAP_READ_SIZE) {
+            content.append("error line ");
+        }
+        Files.writeString(file.toPath(), content);
+        int repetitions = content.length() / "error line ".length();
+
+        TermDictionary dictionary = new TermDictionary();
+        try (InMemoryFileReader reader = InMemoryFileReader.newInstance(file.getPath()).get()) {
+            TermDictionary.TermCounts counts = dictionary.countAll(reader, InMemoryFileReader.ReadStrategy.HEAP, new Tokenizer());
+            assertArrayEquals(counts.frequencies, new int[]{repetitions, repetitions});
+            assertEquals(counts.length, 2L * repetitions);
+        }
+    }
+
+    @Test
+    public void lengthSurvivesARemap() {
+        // frequencies saturated at Integer.MAX_VALUE, the length is the real number of tokens
+        TermDictionary.TermCounts counts = new TermDictionary.TermCounts(new int[]{0, 1},
+                new int[]{Integer.MAX_VALUE, 1}, 3L * Integer.MAX_VALUE);
+        TermDictionary.TermCounts remapped = counts.remap(new int[]{1, 0});
+        assertArrayEquals(remapped.frequencies, new int[]{1, Integer.MAX_VALUE});
+        assertEquals(remapped.length, 3L * Integer.MAX_VALUE);
+        assertEquals(new TermDictionary.TermCounts(new int[]{0, 1}, new int[]{Integer.MAX_VALUE, 2}).length,
+                Integer.MAX_VALUE + 2L);
+    }
+}
@@ -0,0 +1,209 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TermTrigramsTest {
+
+    private static TermDictionary dictionary(String... terms) {
+        TermDictionary dictionary = new TermDictionary();
+        for (String term : terms) {
+            dictionary.intern(term.toCharArray(), term.length());
+        }
+        return dictionary;
+    }
+
+    private static List<String> expand(TermTrigrams trigrams, TermDictionary dictionary, String token) {
+        List<String> terms = new ArrayList<>();
+        for (long match : trigrams.expand(dictionary, token.toCharArray(), token.length())) {
+            terms.add(dictionary.term((int) match) + ":" + (match >>> 32));
+        }
+        return terms;
+    }
+
+    @Test
+    public void findsTermsWithinDistance() {
+        TermDictionary dictionary = dictionary("search", "searching", "research", "seat", "index", "indexes");
+        TermTrigrams trigrams = new TermTrigrams(2);
+        trigrams.add(dictionary);
+        assertEquals(trigrams.size(), 6);
+        assertEquals(expand(trigrams, dictionary, "serch"), List.of("search:1"));
+        assertEquals(expand(trigrams, dictionary, "search"), List.of("search:0", "research:2"));
+        assertEquals(expand(trigrams, dictionary, "indx"), List.of("index:1"));
+    }
+
+    @Test
+    public void distanceGrowsWithTheToken() {
+        TermTrigrams trigrams = new TermTrigrams(2);
+        assertEquals(trigrams.distance(2), 0);
+        assertEquals(trigrams.distance(3), 1);
+        assertEquals(trigrams.distance(6), 2);
+        assertEquals(trigrams.distance(30), 2);
+
+        TermDictionary dictionary = dictionary("ab", "abc");
+        trigrams.add(dictionary);
+        assertEquals(expand(trigrams, dictionary, "ac"), List.of());
+        assertEquals(expand(trigrams, dictionary, "abd"), List.of("ab:1", "abc:1"));
+    }
+
+    @Test
+    public void sameMatchesAsComparingEveryTerm() {
+        // a small alphabet, so terms share lots of trigrams and many are a few edits apart
+        Random random = new Random(7);
+        String[] vocabulary = new String[3000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(random, 3 + random.nextInt(8));
+        }
+        TermDictionary dictionary = dictionary(vocabulary);
+        TermTrigrams trigrams = new TermTrigrams(TermTrigrams.MAX_DISTANCE);
+        trigrams.add(dictionary);
+
+        int[][] rows = new int[2][64];
+        char[] term = new char[64];
+        for (int query = 0; query < 300; query++) {
+            String token = word(random, 3 + random.nextInt(10));
+            int distance = trigrams.distance(token.length());
+            List<Long> expected = new ArrayList<>();
+            for (int termId = 0; termId < dictionary.size(); termId++) {
+                int length = dictionary.copy(termId, term);
+                int edits = TermTrigrams.editDistance(token.toCharArray(), token.length(), term, length, distance, rows);
+                if (edits <= distance) {
+                    expected.add((long) edits << 32 | termId);
+                }
+            }
+            expected.sort(null);
+            long[] found = trigrams.expand(dictionary, token.toCharArray(), token.length());
+            assertEquals(token, Arrays.toString(found), expected.toString());
+        }
+    }
+
+    @Test
+    public void editDistance() {
+        int[][] rows = new int[2][16];
+        assertEquals(TermTrigrams.editDistance("kitten".toCharArray(), 6, "sitting".toCharArray(), 7, 5, rows), 3);
+        assertEquals(TermTrigrams.editDistance("kitten".toCharArray(), 6, "sitting".toCharArray(), 7, 2, rows), 3);
+        assertEquals(TermTrigrams.editDistance("abc".toCharArray(), 3, "abc".toCharArray(), 3, 0, rows), 0);
+        assertEquals(TermTrigrams.editDistance("ab".toCharArray(), 2, "ba".toCharArray(), 2, 3, rows), 2);
+    }
+
+    @Test
+    public void termsAddedLaterAreFound() {
+        TermDictionary dictionary = dictionary("alpha");
+        TermTrigrams trigrams = new TermTrigrams(1);
+        trigrams.add(dictionary);
+        dictionary.intern("omega".toCharArray(), 5);
+        assertEquals(expand(trigrams, dictionary, "omegx"), List.of());
+        trigrams.add(dictionary);
+        assertEquals(expand(trigrams, dictionary, "omegx"), List.of("omega:1"));
+        assertEquals(trigrams.size(), 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDistance() {
+        new TermTrigrams(TermTrigrams.MAX_DISTANCE + 1);
+    }
+
+    @Test
+    public void findsTheTermsStartingWithAFragment() {
+        TermDictionary dictionary = dictionary("search", "searching", "seat", "research", "sea", "sear");
+        TermTrigrams trigrams = new TermTrigrams(1);
+        trigrams.add(dictionary);
+        assertEquals(completions(trigrams, dictionary, "sear"), List.of("search:2", "searching:5"));
+        assertEquals(completions(trigrams, dictionary, "sea"), List.of("seat:1", "sear:1", "search:3", "searching:6"));
+        assertEquals(completions(trigrams, dictionary, "se"), List.of());
+        assertEquals(completions(trigrams, dictionary, "xyz"), List.of());
+        // past POSITIONS - 1 trigrams share a slot, chars are still compared
+        TermDictionary longTerms = dictionary("abcdefghijklmnopqrstuvwxyz", "abcdefghijklmnopqrstuvwxzy");
+        TermTrigrams longTrigrams = new TermTrigrams(1);
+        longTrigrams.add(longTerms);
+        assertEquals(completions(longTrigrams, longTerms, "abcdefghijklmnopqrstuvwx"),
+                List.of("abcdefghijklmnopqrstuvwxyz:2", "abcdefghijklmnopqrstuvwxzy:2"));
+        assertEquals(completions(longTrigrams, longTerms, "abcdefghijklmnopqrstuvwxz"),
+                List.of("abcdefghijklmnopqrstuvwxzy:1"));
+    }
+
+    @Test
+    public void editsAreGivenUpWhenTooManyCandidates() {
+        // every term shares most of its trigrams with all the others, two edits find more than MAX_CANDIDATES
+        TermDictionary dictionary = new TermDictionary();
+        for (int bits = 0; bits < TermTrigrams.MAX_CANDIDATES; bits++) {
+            StringBuilder term = new StringBuilder("abcdef");
+            for (int bit = 0; bit < 15; bit++) {
+                term.append((bits >>> bit & 1) == 0 ? 'a' : 'b');
+            }
+            dictionary.intern(term.toString().toCharArray(), term.length());
+        }
+        TermTrigrams trigrams = new TermTrigrams(2);
+        trigrams.add(dictionary);
+        char[] token = "abcdefaaaaaaaaaaaaaac".toCharArray();
+        int[][] rows = new int[2][32];
+        char[] term = new char[32];
+        int twoEdits = 0;
+        for (int termId = 0; termId < dictionary.size(); termId++) {
+            int length = dictionary.copy(termId, term);
+            if (TermTrigrams.editDistance(token, token.length, term, length, 2, rows) == 2) {
+                twoEdits++;
+            }
+        }
+        assertTrue(twoEdits > 0);
+        long[] matches = trigrams.expand(dictionary, token, token.length);
+        assertTrue(matches.length > 0);
+        for (long match : matches) {
+            assertTrue(match >>> 32 <= 1);
+        }
+    }
+
+    private static List<String> completions(TermTrigrams trigrams, TermDictionary dictionary, String token) {
+        List<String> terms = new ArrayList<>();
+        for (long match : trigrams.complete(dictionary, token.toCharArray(), token.length())) {
+            terms.add(dictionary.term((int) match) + ":" + (match >>> 32));
+        }
+        return terms;
+    }
+
+    @Test
+    public void fuzzyQueriesUseTheCloseTerms() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument("a", "search engines search fast");
+        index.addDocument("b", "the search of an index");
+        index.addDocument("c", "seabird");
+        List<Algorithm.Result> exact = index.search("search index");
+        assertEquals(index.search("serch indx").size(), 0);
+
+        index.enableFuzzy(1);
+        assertEquals(index.search("serch indx").toString(), exact.toString());
+        // every candidate one edit away is a query term, not only the closest
+        index.addDocument("d", "seaboard");
+        index.addDocument("e", "seaboard");
+        assertEquals(index.search("seabord").size(), 3);
+        // a fragment finds the terms it starts, 2 edits away or more, not the ones it is only inside of
+        index.addDocument("g", "researching");
+        index.addDocument("h", "searching");
+        List<Algorithm.Result> fragment = index.search("sear", Scorer.byName("bm25").get());
+        fragment.sort(null);
+        assertEquals(fragment.stream().map(result -> result.fileName).sorted().collect(Collectors.toList()),
+                List.of("a", "b", "h"));
+        assertEquals(fragment.get(0).fileName, "a");
+        // documents added after enableFuzzy get their terms indexed too, and the copy keeps the trigrams
+        index.addDocument("f", "trigrams");
+        InvertedIndex copy = index.compactCopy();
+        assertTrue(copy.trigrams().isPresent());
+        assertEquals(copy.search("trigams").get(0).fileName, "f");
+    }
+
+    private static String word(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(4));
+        }
+        return new String(chars);
+    }
+}
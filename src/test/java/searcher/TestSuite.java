@@ -4,6 +4,15 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({FilesystemReaderTest.class, InMemoryFileReaderTest.class, AlgorithmTest.class})
+@Suite.SuiteClasses({FilesystemReaderTest.class, InMemoryFileReaderTest.class, AlgorithmTest.class,
+        InvertedIndexTest.class, ParallelSearchTest.class, SearcherOptionsTest.class,
+        TokenizerTest.class, TermDictionaryTest.class,
+        TopKTest.class, IndexWatcherTest.class,
+        FilesystemCrawlerTest.class, IndexSnapshotFileTest.class,
+        ScorerTest.class, QueryCacheTest.class, DocumentCacheTest.class,
+        MetricsTest.class, BatchSearchTest.class, SearchServerTest.class,
+        ShardedIndexTest.class, RemoteShardTest.class, MinHashTest.class,
+        PostingListsTest.class, IndexPipelineTest.class, TermTrigramsTest.class,
+        ForwardIndexTest.class})
 public class TestSuite {
 }
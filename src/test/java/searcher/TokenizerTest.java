@@ -0,0 +1,48 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenizerTest {
+
+    private static List<String> tokensOf(String text) {
+        List<String> tokens = new ArrayList<>();
+        new Tokenizer().tokenize(text, (buffer, length) -> tokens.add(new String(buffer, 0, length)));
+        return tokens;
+    }
+
+    @Test
+    public void foldsAndSplits() {
+        assertEquals(tokensOf("0nly!alph4numer1C?"), List.of("0nly", "alph4numer1c"));
+    }
+
+    @Test
+    public void consecutiveSeparatorsDoNotProduceEmptyTokens() {
+        assertEquals(tokensOf("  {\"some\": \"text\"}  "), List.of("some", "text"));
+        assertEquals(tokensOf("?!."), List.of());
+    }
+
+    @Test
+    public void nonAsciiIsASeparator() {
+        // same as the old regex, only [a-zA-Z0-9] is kept
+        assertEquals(tokensOf("caf\u00e9 na\u00efve \ud83d\ude00ok"), List.of("caf", "na", "ve", "ok"));
+    }
+
+    @Test
+    public void tokensLongerThanTheInitialBuffer() {
+        String longToken = "a".repeat(100);
+        assertEquals(tokensOf(longToken + " B"), List.of(longToken, "b"));
+    }
+
+    @Test
+    public void sameTermsAsNormalizeText() {
+        // normalizeText is the old pipeline, splitting its output must give the tokenizer terms
+        String raw = "Some other TEXT, \ud83d\ude00 repeated-text text";
+        assertEquals(Algorithm.distinctTerms(raw), Algorithm.distinctTerms(Algorithm.normalizeText(raw)));
+        assertEquals(Algorithm.normalizeText("a\ud83d\ude00b"), "a b");
+    }
+}
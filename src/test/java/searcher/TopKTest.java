@@ -0,0 +1,74 @@
+package searcher;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopKTest {
+
+    @Test
+    public void keepsTheBestK() {
+        TopK topK = new TopK(3);
+        float[] scores = new float[]{10, 50, 20, 90, 0, 70};
+        for (int docId = 0; docId < scores.length; docId++) {
+            topK.offer(docId, scores[docId]);
+        }
+
+        long[] sorted = topK.sorted();
+        assertEquals(sorted.length, 3);
+        assertEquals(TopK.docId(sorted[0]), 3);
+        assertEquals(TopK.docId(sorted[1]), 5);
+        assertEquals(TopK.docId(sorted[2]), 1);
+        assertEquals(TopK.score(sorted[0]), 90f, 0f);
+        assertEquals(topK.threshold(), 50f, 0f);
+    }
+
+    @Test
+    public void tiesKeepTheLowestDocId() {
+        // whatever the order we offer them, the same ones survive
+        TopK forward = new TopK(2);
+        TopK backward = new TopK(2);
+        for (int docId = 0; docId < 10; docId++) {
+            forward.offer(docId, 33);
+            backward.offer(9 - docId, 33);
+        }
+        assertEquals(TopK.docId(forward.sorted()[0]), 0);
+        assertEquals(TopK.docId(forward.sorted()[1]), 1);
+        assertEquals(TopK.docId(backward.sorted()[0]), 0);
+        assertEquals(TopK.docId(backward.sorted()[1]), 1);
+    }
+
+    @Test
+    public void mergeIsTheSameAsOfferingEverything() {
+        Random random = new Random(1L);
+        TopK all = new TopK(10);
+        TopK left = new TopK(10);
+        TopK right = new TopK(10);
+        for (int docId = 0; docId < 1000; docId++) {
+            float score = random.nextInt(100);
+            all.offer(docId, score);
+            (docId % 2 == 0 ? left : right).offer(docId, score);
+        }
+        left.merge(right);
+        assertEquals(Arrays.toString(left.sorted()), Arrays.toString(all.sorted()));
+    }
+
+    @Test
+    public void notFull() {
+        TopK topK = new TopK(5);
+        assertFalse(topK.isFull());
+        topK.offer(Integer.MAX_VALUE, 0.5f);
+        assertEquals(topK.size(), 1);
+        assertEquals(TopK.docId(topK.sorted()[0]), Integer.MAX_VALUE);
+        assertEquals(TopK.score(topK.sorted()[0]), 0.5f, 0f);
+        for (int docId = 0; docId < 4; docId++) {
+            topK.offer(docId, 1);
+        }
+        assertTrue(topK.isFull());
+    }
+}